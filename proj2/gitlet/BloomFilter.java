@@ -0,0 +1,122 @@
+package gitlet;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @description: 布隆过滤器，判断为不存在时一定不存在，判断为存在时需要再精确确认
+ * 使用双重哈希（h1 + i * h2）模拟 k 个哈希函数。
+ * @author: Yhltmxh
+ * @create: 2025-07-21 10:32
+ **/
+public class BloomFilter {
+
+    /**
+     * 每个元素占用的位数，约 1% 的误判率
+     */
+    private static final int BITS_PER_ENTRY = 10;
+
+    private static final int HASH_COUNT = 7;
+
+    private final long[] bits;
+
+    private final long numBits;
+
+    public BloomFilter(int expected) {
+        long n = Math.max(64, (long) Math.max(expected, 1) * BITS_PER_ENTRY);
+        bits = new long[(int) ((n + 63) / 64)];
+        numBits = bits.length * 64L;
+    }
+
+    private BloomFilter(long[] bits) {
+        this.bits = bits;
+        this.numBits = bits.length * 64L;
+    }
+
+
+    /**
+     * 写出过滤器，用于在网络上传输
+     * @param out 输出流
+     */
+    public void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(bits.length);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+
+    /**
+     * 读取 writeTo 写出的过滤器
+     * @param in 输入流
+     * @return 过滤器
+     */
+    public static BloomFilter readFrom(DataInputStream in) throws IOException {
+        int n = in.readInt();
+        if (n <= 0 || n > (1 << 26)) {
+            throw new IOException("invalid bloom filter");
+        }
+        long[] bits = new long[n];
+        for (int i = 0; i < n; i++) {
+            bits[i] = in.readLong();
+        }
+        return new BloomFilter(bits);
+    }
+
+
+    /**
+     * 加入元素
+     * @param key 元素
+     */
+    public void add(String key) {
+        long h1 = hash(key);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, numBits);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+
+    /**
+     * 判断元素是否可能存在
+     * @param key 元素
+     * @return true：可能存在，false：一定不存在
+     */
+    public boolean mightContain(String key) {
+        long h1 = hash(key);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < HASH_COUNT; i++) {
+            long bit = Long.remainderUnsigned(h1 + i * h2, numBits);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * 64 位 FNV-1a 哈希
+     */
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+
+    /**
+     * 64 位混合函数（splitmix64 的最后一步）
+     */
+    private static long mix(long h) {
+        h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+        h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+        return h ^ (h >>> 31);
+    }
+}
@@ -0,0 +1,306 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: bundle 文件，将一次传输的全部对象顺序写入单个文件
+ * 格式："GBDL" | 版本(int) | 是否压缩(byte) | 分支名(UTF) | 分支头提交id(20) |
+ * {类型(1) id(20) 长度(8) 内容}* | 结束标记(0) | 之前所有字节的 SHA-1 校验和(20)。
+ * 压缩时只压缩对象部分（deflate），对象按传输计划的顺序排列，读取时先校验整个文件再写入对象库。
+ * @author: Yhltmxh
+ * @create: 2025-07-22 15:27
+ **/
+public class Bundle {
+
+    private static final byte[] MAGIC = {'G', 'B', 'D', 'L'};
+
+    private static final int VERSION = 1;
+
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    private static final int END = 0;
+
+    /**
+     * 分支名
+     */
+    private final String branch;
+
+    /**
+     * 分支头提交id
+     */
+    private final String head;
+
+    /**
+     * 对象部分是否压缩
+     */
+    private final boolean compressed;
+
+    /**
+     * 读取 bundle 时写入的对象数
+     */
+    private int objectCount;
+
+    /**
+     * 读取 bundle 时写入的提交id
+     */
+    private final List<String> commitIds = new ArrayList<>();
+
+    private Bundle(String branch, String head, boolean compressed) {
+        this.branch = branch;
+        this.head = head;
+        this.compressed = compressed;
+    }
+
+    public String getBranch() {
+        return branch;
+    }
+
+    public String getHead() {
+        return head;
+    }
+
+    public int getObjectCount() {
+        return objectCount;
+    }
+
+    public List<String> getCommitIds() {
+        return commitIds;
+    }
+
+
+    /**
+     * 按传输计划写出 bundle 文件
+     * @param file 目标文件
+     * @param branch 分支名
+     * @param head 分支头提交id
+     * @param plan 传输计划
+     * @param level 压缩级别，0 表示不压缩
+     */
+    public static void write(File file, String branch, String head, TransferPlan plan, int level) {
+        MessageDigest digest = newDigest();
+        try (OutputStream fos = new BufferedOutputStream(Files.newOutputStream(file.toPath()), STREAM_BUFFER_SIZE)) {
+            DigestOutputStream dos = new DigestOutputStream(fos, digest);
+            DataOutputStream header = new DataOutputStream(dos);
+            header.write(MAGIC);
+            header.writeInt(VERSION);
+            header.writeByte(level > 0 ? 1 : 0);
+            header.writeUTF(branch);
+            header.write(hexToBytes(head));
+            header.flush();
+            Deflater deflater = level > 0 ? new Deflater(level) : null;
+            OutputStream body = deflater == null ? dos : new DeflaterOutputStream(dos, deflater, STREAM_BUFFER_SIZE);
+            DataOutputStream out = new DataOutputStream(body);
+            ObjectStore source = plan.getSource();
+            for (TransferPlan.Entry e : plan.getEntries()) {
+                out.writeByte(e.getType().getCode());
+                out.write(hexToBytes(e.getId()));
+                if (e.getData() != null) {
+                    out.writeLong(e.getData().length);
+                    out.write(e.getData());
+                } else {
+                    out.writeLong(source.size(e.getType(), e.getId()));
+                    if (!source.writeTo(e.getType(), e.getId(), out)) {
+                        throw error("Missing object %s.", e.getId());
+                    }
+                }
+            }
+            out.writeByte(END);
+            out.flush();
+            if (deflater != null) {
+                ((DeflaterOutputStream) body).finish();
+                deflater.end();
+            }
+            dos.flush();
+            fos.write(digest.digest());
+        } catch (IOException e) {
+            throw error("Failed to write bundle '%s'.", file.getName());
+        }
+    }
+
+
+    /**
+     * 读取 bundle 文件头
+     * @param file bundle 文件
+     * @return 只包含分支信息的 bundle 对象
+     */
+    public static Bundle readHeader(File file) {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file.toPath())))) {
+            return readHeader(in);
+        } catch (IOException e) {
+            throw error("Not a valid bundle file.");
+        }
+    }
+
+
+    private static Bundle readHeader(DataInputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+            throw error("Not a valid bundle file.");
+        }
+        boolean compressed = in.readByte() != 0;
+        String branch = in.readUTF();
+        byte[] head = new byte[ID_BYTES];
+        in.readFully(head);
+        return new Bundle(branch, bytesToHex(head), compressed);
+    }
+
+
+    /**
+     * 校验 bundle 文件并将其中的对象写入对象库
+     * @param file bundle 文件
+     * @param target 目标对象库
+     * @return bundle 对象
+     */
+    public static Bundle read(File file, ObjectStore target) {
+        verify(file);
+        long bodyEnd = file.length() - ID_BYTES;
+        try (InputStream fis = new BufferedInputStream(Files.newInputStream(file.toPath()), STREAM_BUFFER_SIZE)) {
+            InputStream limited = new BoundedInputStream(fis, bodyEnd);
+            Bundle bundle = readHeader(new DataInputStream(limited));
+            DataInputStream in = new DataInputStream(bundle.compressed
+                    ? new InflaterInputStream(limited, new Inflater(), STREAM_BUFFER_SIZE) : limited);
+            byte[] id = new byte[ID_BYTES];
+            byte[] buf = new byte[STREAM_BUFFER_SIZE];
+            while (true) {
+                int code = in.readByte();
+                if (code == END) {
+                    break;
+                }
+                ObjectType type = ObjectType.findByCode((byte) code);
+                if (type == null) {
+                    throw error("Not a valid bundle file.");
+                }
+                in.readFully(id);
+                long length = in.readLong();
+                String hex = bytesToHex(id);
+                importObject(in, target, type, hex, length, buf);
+                bundle.objectCount++;
+                if (type == ObjectType.COMMIT) {
+                    bundle.commitIds.add(hex);
+                }
+            }
+            if (!target.contains(ObjectType.COMMIT, bundle.head)) {
+                throw error("Bundle '%s' is incomplete.", file.getName());
+            }
+            return bundle;
+        } catch (EOFException e) {
+            throw error("Truncated bundle '%s'.", file.getName());
+        } catch (IOException e) {
+            throw error("Failed to read bundle '%s'.", file.getName());
+        }
+    }
+
+
+    /**
+     * 将一个对象的内容流式写入临时文件，再原子地移入对象库
+     */
+    private static void importObject(DataInputStream in, ObjectStore target, ObjectType type,
+                                     String id, long length, byte[] buf) throws IOException {
+        File tmp = join(target.getObjectsDir(), "tmp-bundle-" + Thread.currentThread().getId() + "-" + System.nanoTime());
+        try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+            long remaining = length;
+            while (remaining > 0) {
+                int n = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                out.write(buf, 0, n);
+                remaining -= n;
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        target.moveInto(type, id, tmp);
+    }
+
+
+    /**
+     * 校验整个文件的校验和
+     * @param file bundle 文件
+     */
+    private static void verify(File file) {
+        long bodyEnd = file.length() - ID_BYTES;
+        if (bodyEnd <= MAGIC.length) {
+            throw error("Not a valid bundle file.");
+        }
+        MessageDigest digest = newDigest();
+        byte[] trailer = new byte[ID_BYTES];
+        try (InputStream fis = Files.newInputStream(file.toPath())) {
+            DigestInputStream in = new DigestInputStream(new BoundedInputStream(fis, bodyEnd), digest);
+            byte[] buf = new byte[STREAM_BUFFER_SIZE];
+            while (in.read(buf) >= 0) {
+                // 读取过程中更新摘要
+            }
+            new DataInputStream(fis).readFully(trailer);
+        } catch (IOException e) {
+            throw error("Failed to read bundle '%s'.", file.getName());
+        }
+        if (!Arrays.equals(trailer, digest.digest())) {
+            throw error("Bundle '%s' is corrupt.", file.getName());
+        }
+    }
+
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        }
+    }
+
+
+    /**
+     * 最多读取指定字节数的输入流，用于在读取时排除末尾的校验和
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long limit) {
+            super(in);
+            this.remaining = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+
+/**
+ * @description: 提交修改路径的布隆过滤器，记录提交相对第一父提交新增、删除或修改的文件
+ * 每个路径约 10 位、7 个哈希函数，误判率约 1%；查询结果为“一定没有修改”时无需读取提交和比较 blobs。
+ * 路径取相对工作目录的形式，与仓库所在的位置无关；修改的文件过多的提交不生成过滤器（视为可能修改）。
+ * @author: Yhltmxh
+ * @create: 2025-07-28 16:40
+ **/
+public class ChangedPathFilter {
+
+    private static final int BITS_PER_ENTRY = 10;
+
+    private static final int HASHES = 7;
+
+    private static final int MIN_BYTES = 8;
+
+    /**
+     * 修改的文件超过该数量时不生成过滤器
+     */
+    public static final int MAX_PATHS = 512;
+
+
+    /**
+     * 生成过滤器
+     * @param paths 修改的文件（相对工作目录的路径）
+     * @return 过滤器，文件过多时为null
+     */
+    public static byte[] create(Collection<String> paths) {
+        if (paths.size() > MAX_PATHS) {
+            return null;
+        }
+        byte[] bits = new byte[Math.max(MIN_BYTES, (paths.size() * BITS_PER_ENTRY + 7) / 8)];
+        for (String path : paths) {
+            long h = hash(path);
+            int h1 = (int) h;
+            int h2 = (int) (h >>> 32) | 1;
+            for (int i = 0; i < HASHES; i++) {
+                int bit = Math.floorMod(h1 + i * h2, bits.length * 8);
+                bits[bit >>> 3] |= (byte) (1 << (bit & 7));
+            }
+        }
+        return bits;
+    }
+
+
+    /**
+     * 判断路径是否可能被修改
+     * @param bits 过滤器，为null时总是返回true
+     * @param path 相对工作目录的路径
+     * @return false：一定没有修改，true：可能修改
+     */
+    public static boolean mightContain(byte[] bits, String path) {
+        if (bits == null) {
+            return true;
+        }
+        long h = hash(path);
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < HASHES; i++) {
+            int bit = Math.floorMod(h1 + i * h2, bits.length * 8);
+            if ((bits[bit >>> 3] & (1 << (bit & 7))) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * 获取过滤器中使用的路径形式：工作目录下的文件取相对路径，分隔符统一为 /
+     * @param workDir 工作目录
+     * @param path 文件的绝对路径
+     */
+    public static String key(File workDir, String path) {
+        Path p = Paths.get(path);
+        Path dir = workDir.toPath();
+        if (p.startsWith(dir)) {
+            p = dir.relativize(p);
+        }
+        return p.toString().replace(File.separatorChar, '/');
+    }
+
+
+    /**
+     * FNV-1a 后再做一次 64 位混合，高低 32 位分别用作双重哈希的两个基础哈希
+     */
+    private static long hash(String path) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
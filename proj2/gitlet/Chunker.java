@@ -0,0 +1,247 @@
+package gitlet;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: 按内容分块（FastCDC），大文件拆分为以内容寻址的块，blob 只保存块清单
+ * <pre>
+ * 清单格式：0x00 'G' 'M' | 总长度(8) | 块数(int) | { 块id(20) | 长度(int) }*
+ * </pre>
+ * 存储时以 {@link StoredFormat} 标记区分块清单与原样内容，魔数只用于识别旧版本写入的对象。
+ * 块边界由滚动的 gear 哈希决定，只取决于附近的内容，文件中间插入或修改几个字节只影响相邻的一两个块，
+ * 其余的块与之前的版本、其他文件中相同内容的块共享同一个对象。
+ * 块长度在 [MIN_SIZE, MAX_SIZE] 之间；未到平均长度前使用更难满足的掩码，之后使用更易满足的掩码，使长度集中在平均值附近。
+ * @author: Yhltmxh
+ * @create: 2025-07-27 10:21
+ **/
+public class Chunker {
+
+    private static final byte[] MAGIC = {0, 'G', 'M'};
+
+    /**
+     * 清单头部长度：魔数 + 总长度 + 块数
+     */
+    public static final int HEADER = MAGIC.length + 8 + 4;
+
+    private static final int ENTRY = UID_LENGTH / 2 + 4;
+
+    public static final int MIN_SIZE = 4 * 1024;
+
+    public static final int AVG_SIZE = 16 * 1024;
+
+    public static final int MAX_SIZE = 64 * 1024;
+
+    /**
+     * 未到平均长度时的掩码（16 位），gear 哈希的高位受更多字节影响，因此取高位
+     */
+    private static final long MASK_S = 0xffffL << 48;
+
+    /**
+     * 超过平均长度后的掩码（12 位）
+     */
+    private static final long MASK_L = 0xfffL << 52;
+
+    /**
+     * 每个字节值对应的随机数，种子固定，保证不同版本切分出相同的块
+     */
+    private static final long[] GEAR = new long[256];
+
+    static {
+        Random random = new Random(0x6769746c6574L);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * 块清单
+     */
+    public static class Manifest {
+
+        /**
+         * 按顺序排列的块id
+         */
+        private final List<String> ids = new ArrayList<>();
+
+        /**
+         * 各块的长度
+         */
+        private final List<Integer> lengths = new ArrayList<>();
+
+        private long size;
+
+        public void add(String id, int length) {
+            ids.add(id);
+            lengths.add(length);
+            size += length;
+        }
+
+        public List<String> getIds() {
+            return ids;
+        }
+
+        public List<Integer> getLengths() {
+            return lengths;
+        }
+
+        public long getSize() {
+            return size;
+        }
+    }
+
+    /**
+     * 接收切分出的块
+     */
+    public interface ChunkConsumer {
+        void accept(byte[] buf, int off, int len);
+    }
+
+
+    /**
+     * 在 [start, end) 中查找块边界
+     * @return 块的结束位置
+     */
+    static int cut(byte[] buf, int start, int end) {
+        int n = end - start;
+        if (n <= MIN_SIZE) {
+            return end;
+        }
+        int limit = start + Math.min(n, MAX_SIZE);
+        int normal = start + Math.min(n, AVG_SIZE);
+        long fp = 0;
+        int i = start + MIN_SIZE;
+        for (; i < normal; i++) {
+            fp = (fp << 1) + GEAR[buf[i] & 0xff];
+            if ((fp & MASK_S) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < limit; i++) {
+            fp = (fp << 1) + GEAR[buf[i] & 0xff];
+            if ((fp & MASK_L) == 0) {
+                return i + 1;
+            }
+        }
+        return limit;
+    }
+
+
+    /**
+     * 流式切分输入
+     * @param in 输入流
+     * @param consumer 按顺序接收每个块
+     */
+    public static void split(InputStream in, ChunkConsumer consumer) throws IOException {
+        byte[] buf = new byte[MAX_SIZE * 4];
+        int start = 0;
+        int end = 0;
+        boolean eof = false;
+        while (true) {
+            if (!eof && end - start < MAX_SIZE) {
+                // 剩余内容移到缓冲区开头，再读满
+                System.arraycopy(buf, start, buf, 0, end - start);
+                end -= start;
+                start = 0;
+                int n = in.readNBytes(buf, end, buf.length - end);
+                end += n;
+                eof = end < buf.length;
+            }
+            if (start == end) {
+                return;
+            }
+            int cut = cut(buf, start, end);
+            consumer.accept(buf, start, cut - start);
+            start = cut;
+        }
+    }
+
+
+    /**
+     * 判断blob的存储内容是否为块清单
+     * @param stored 存储内容，可以只是开头的一部分
+     */
+    public static boolean isManifest(byte[] stored) {
+        if (stored.length < HEADER) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (stored[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * 获取块清单表示的文件长度
+     */
+    public static long contentLength(byte[] stored) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(stored, MAGIC.length, 8));
+            return in.readLong();
+        } catch (IOException e) {
+            throw error("Corrupt chunk manifest.");
+        }
+    }
+
+
+    /**
+     * 由块数计算块清单应有的长度
+     */
+    public static long manifestLength(byte[] stored) {
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(stored, MAGIC.length + 8, 4));
+            return HEADER + (long) in.readInt() * ENTRY;
+        } catch (IOException e) {
+            throw error("Corrupt chunk manifest.");
+        }
+    }
+
+
+    public static byte[] encode(Manifest manifest) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(HEADER + manifest.getIds().size() * ENTRY);
+        try (DataOutputStream out = new DataOutputStream(bos)) {
+            out.write(MAGIC);
+            out.writeLong(manifest.getSize());
+            out.writeInt(manifest.getIds().size());
+            for (int i = 0; i < manifest.getIds().size(); i++) {
+                out.write(hexToBytes(manifest.getIds().get(i)));
+                out.writeInt(manifest.getLengths().get(i));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bos.toByteArray();
+    }
+
+
+    public static Manifest decode(byte[] stored) {
+        try {
+            DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(stored, MAGIC.length, stored.length - MAGIC.length));
+            long size = in.readLong();
+            int count = in.readInt();
+            if (count < 0 || (long) count * ENTRY > stored.length - HEADER) {
+                throw error("Corrupt chunk manifest.");
+            }
+            Manifest manifest = new Manifest();
+            byte[] id = new byte[UID_LENGTH / 2];
+            for (int i = 0; i < count; i++) {
+                in.readFully(id);
+                manifest.add(bytesToHex(id), in.readInt());
+            }
+            if (manifest.getSize() != size) {
+                throw error("Corrupt chunk manifest.");
+            }
+            return manifest;
+        } catch (IOException e) {
+            throw error("Corrupt chunk manifest.");
+        }
+    }
+}
@@ -11,9 +11,9 @@ public enum Command {
     ADD("add", "2"),
     COMMIT("commit", "2"),
     REMOVE("rm", "2"),
-    LOG("log", "1"),
+    LOG("log", "1,3"),
     GLOBAL_LOG("global-log", "1"),
-    FIND("find", "2"),
+    FIND("find", "2,3"),
     STATUS("status", "1"),
     CHECKOUT("checkout", "2,3,4"),
     BRANCH("branch", "2"),
@@ -24,7 +24,18 @@ public enum Command {
     REMOVE_REMOTE("rm-remote", "2"),
     PUSH("push", "3"),
     FETCH("fetch", "3"),
-    PULL("pull", "3");
+    PULL("pull", "3"),
+    REPACK("repack", "1"),
+    COMMIT_GRAPH("commit-graph", "2"),
+    CONFIG("config", "2,3"),
+    MIGRATE("migrate", "1"),
+    BUNDLE("bundle", "3,4"),
+    SERVE("serve", "2"),
+    DAEMON("daemon", "2"),
+    GC("gc", "1,2,3"),
+    COUNT_OBJECTS("count-objects", "1"),
+    DIFF("diff", "1,2,3"),
+    PACK_REFS("pack-refs", "1");
 
 
     private String command;
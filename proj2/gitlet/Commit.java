@@ -12,6 +12,11 @@ import java.util.Map;
  **/
 public class Commit implements Serializable {
 
+    /**
+     * 与加入树对象之前的版本保持一致，旧的提交对象仍可读取
+     */
+    private static final long serialVersionUID = 2710871194495695733L;
+
     /**
      * SHA-1 哈希值
      */
@@ -33,10 +38,20 @@ public class Commit implements Serializable {
     private List<String> parents;
 
     /**
-     * 所提交文件的索引
+     * 所提交文件的索引，从树对象读取的提交在首次使用时展开
      */
     Map<String, String> blobs;
 
+    /**
+     * 根目录的树id，旧格式的提交没有树
+     */
+    private String tree;
+
+    /**
+     * 提交所在的对象库，用于展开树对象，不持久化
+     */
+    private transient ObjectStore store;
+
     public Commit() {
     }
 
@@ -83,6 +98,10 @@ public class Commit implements Serializable {
     }
 
     public Map<String, String> getBlobs() {
+        if (blobs == null && tree != null && store != null) {
+            blobs = store.readTreeBlobs(tree);
+            store.blobsExpanded(this);
+        }
         return blobs;
     }
 
@@ -90,4 +109,15 @@ public class Commit implements Serializable {
         this.blobs = blobs;
     }
 
+    public String getTree() {
+        return tree;
+    }
+
+    public void setTree(String tree) {
+        this.tree = tree;
+    }
+
+    public void setStore(ObjectStore store) {
+        this.store = store;
+    }
 }
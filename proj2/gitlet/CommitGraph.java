@@ -0,0 +1,554 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: 提交图，持久化每个提交的父提交下标与代数（generation number）
+ * <pre>
+ * commit-graph: "GCGR" | 版本 | 提交数 | { id(20) | 父提交1下标 | 父提交2下标 | 代数 }*
+ * </pre>
+ * 记录按拓扑序追加（父提交总在子提交之前），因此新增提交只需在文件末尾追加记录并更新提交数。
+ * 下标为 -1 表示没有该父提交；根提交代数为 1，其余为父提交最大代数加 1。
+ * 附属文件按相同顺序保存每个提交的修改路径过滤器（{@link ChangedPathFilter}），与提交图同步追加：
+ * <pre>
+ * commit-graph-bloom: "GBLM" | 版本 | 提交数 | { 长度 | 过滤器 }*
+ * </pre>
+ * 长度为 -1 表示没有过滤器（修改的文件过多，或文件缺少该记录），查询时视为可能修改。
+ * @author: Yhltmxh
+ * @create: 2025-07-04 15:08
+ **/
+public class CommitGraph {
+
+    private static final byte[] MAGIC = {'G', 'C', 'G', 'R'};
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER = 12;
+
+    private static final int RECORD = UID_LENGTH / 2 + 12;
+
+    private static final byte[] FILTER_MAGIC = {'G', 'B', 'L', 'M'};
+
+    private final File file;
+
+    private final File filterFile;
+
+    /**
+     * 各提交的修改路径过滤器，null 表示没有
+     */
+    private final List<byte[]> filters = new ArrayList<>();
+
+    /**
+     * 附属文件中有效的记录数及其结束位置
+     */
+    private int filterCount;
+
+    private long filterEnd;
+
+    private final List<String> ids = new ArrayList<>();
+
+    private final Map<String, Integer> index = new HashMap<>();
+
+    private int[] parent1 = new int[16];
+
+    private int[] parent2 = new int[16];
+
+    private int[] generation = new int[16];
+
+    private CommitGraph(File file) {
+        this.file = file;
+        this.filterFile = new File(file.getParentFile(), file.getName() + "-bloom");
+    }
+
+
+    /**
+     * 加载提交图，文件不存在时返回空图
+     * @param gitletDir .gitlet目录
+     * @return 提交图对象
+     */
+    public static CommitGraph load(File gitletDir) {
+        CommitGraph graph = new CommitGraph(join(gitletDir, "commit-graph"));
+        if (!graph.file.exists()) {
+            return graph;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(graph.file.toPath())))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+                // 格式不识别时当作空图，由后续写入重建
+                return new CommitGraph(graph.file);
+            }
+            int count = in.readInt();
+            byte[] id = new byte[UID_LENGTH / 2];
+            for (int i = 0; i < count; i++) {
+                in.readFully(id);
+                graph.put(bytesToHex(id), in.readInt(), in.readInt(), in.readInt());
+            }
+        } catch (EOFException e) {
+            // 追加过程中被中断，已读入的记录仍然有效
+        } catch (IOException e) {
+            throw error("Failed to read commit-graph.");
+        }
+        graph.loadFilters();
+        return graph;
+    }
+
+
+    /**
+     * 读取附属文件中的过滤器，只读取与提交图对应的记录，文件不存在或不识别时没有过滤器
+     */
+    private void loadFilters() {
+        if (!filterFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(filterFile.toPath())))) {
+            byte[] magic = new byte[FILTER_MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, FILTER_MAGIC) || in.readInt() != VERSION) {
+                return;
+            }
+            int count = Math.min(in.readInt(), size());
+            long end = HEADER;
+            for (int i = 0; i < count; i++) {
+                int len = in.readInt();
+                byte[] bits = null;
+                if (len >= 0) {
+                    bits = new byte[len];
+                    in.readFully(bits);
+                }
+                filters.set(i, bits);
+                end += 4 + Math.max(len, 0);
+                filterCount = i + 1;
+                filterEnd = end;
+            }
+        } catch (IOException e) {
+            // 记录不完整时已读入的过滤器仍然有效，其余提交视为没有过滤器
+        }
+    }
+
+
+    /**
+     * 根据对象库中的所有提交重新生成提交图
+     * @param gitletDir .gitlet目录
+     * @param store 对象库
+     * @return 提交图对象
+     */
+    public static CommitGraph write(File gitletDir, ObjectStore store) {
+        CommitGraph graph = new CommitGraph(join(gitletDir, "commit-graph"));
+        List<String> order = new ArrayList<>();
+        for (String id : store.listIds(ObjectType.COMMIT)) {
+            graph.collect(store, id, order);
+        }
+        File tmp = join(gitletDir, "commit-graph.lock");
+        File filterTmp = join(gitletDir, "commit-graph-bloom.lock");
+        for (File f : new File[]{tmp, filterTmp}) {
+            if (f.exists()) {
+                deleteFile(f);
+            }
+        }
+        graph.appendRecords(tmp, order);
+        graph.appendFilters(filterTmp, order);
+        try {
+            Files.move(filterTmp.toPath(), graph.filterFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(tmp.toPath(), graph.file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw error("Failed to write commit-graph.");
+        }
+        return graph;
+    }
+
+
+    public int size() {
+        return ids.size();
+    }
+
+    public int indexOf(String id) {
+        Integer i = index.get(id);
+        return i == null ? -1 : i;
+    }
+
+    public String idAt(int pos) {
+        return ids.get(pos);
+    }
+
+    public int generation(int pos) {
+        return generation[pos];
+    }
+
+    public boolean contains(String id) {
+        return index.containsKey(id);
+    }
+
+
+    /**
+     * 根据修改路径过滤器判断提交相对第一父提交是否可能修改了文件
+     * @param id 提交id
+     * @param path 相对工作目录的路径（{@link ChangedPathFilter#key}）
+     * @return false：一定没有修改，true：可能修改（包括提交不在图中或没有过滤器）
+     */
+    public boolean mayChangePath(String id, String path) {
+        int pos = indexOf(id);
+        return pos < 0 || ChangedPathFilter.mightContain(filters.get(pos), path);
+    }
+
+
+    /**
+     * 判断文件是否已被其他进程追加或重写（如其他仓库推送到本仓库），常驻进程据此重新加载
+     * @return true：内存中的记录已过期
+     */
+    public boolean isStale() {
+        long expected = size() == 0 ? 0 : HEADER + (long) size() * RECORD;
+        return (file.exists() ? file.length() : 0) != expected;
+    }
+
+
+    /**
+     * 将提交（及其缺失的祖先）追加进提交图
+     * @param store 提交所在的对象库
+     * @param commit 提交对象
+     */
+    public void add(ObjectStore store, Commit commit) {
+        if (contains(commit.getId())) {
+            return;
+        }
+        List<String> order = new ArrayList<>();
+        Map<String, Commit> known = new HashMap<>();
+        known.put(commit.getId(), commit);
+        collect(store, commit.getId(), order, known);
+        appendRecords(file, order);
+        appendFilters(filterFile, order);
+    }
+
+
+    /**
+     * 后序遍历收集缺失的提交，保证父提交先于子提交加入
+     */
+    private void collect(ObjectStore store, String id, List<String> order) {
+        collect(store, id, order, new HashMap<>());
+    }
+
+
+    private void collect(ObjectStore store, String start, List<String> order,
+                         Map<String, Commit> known) {
+        if (contains(start)) {
+            return;
+        }
+        // 使用显式栈，避免长历史时递归过深
+        Deque<String> stack = new ArrayDeque<>();
+        Set<String> expanded = new HashSet<>();
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            if (contains(id)) {
+                stack.pop();
+                continue;
+            }
+            Commit c = known.containsKey(id) ? known.get(id) : Service.readCommit(store, id);
+            if (c == null) {
+                throw error("Missing commit %s.", id);
+            }
+            if (expanded.add(id)) {
+                for (String p : c.getParents()) {
+                    if (!contains(p)) {
+                        stack.push(p);
+                    }
+                }
+                continue;
+            }
+            stack.pop();
+            List<String> parents = c.getParents();
+            int p1 = parents.size() > 0 ? indexOf(parents.get(0)) : -1;
+            int p2 = parents.size() > 1 ? indexOf(parents.get(1)) : -1;
+            int gen = 1 + Math.max(p1 < 0 ? 0 : generation[p1], p2 < 0 ? 0 : generation[p2]);
+            put(id, p1, p2, gen);
+            filters.set(indexOf(id), ChangedPathFilter.create(changedPaths(store, c)));
+            order.add(id);
+        }
+    }
+
+
+    /**
+     * 获取提交相对第一父提交修改的文件（相对工作目录的路径），两者都有树对象时按树比较
+     */
+    private static List<String> changedPaths(ObjectStore store, Commit c) {
+        Commit parent = c.getParents().isEmpty() ? null : Service.readCommit(store, c.getParents().get(0));
+        Set<String> paths;
+        if (c.getTree() != null && (parent == null || parent.getTree() != null)) {
+            paths = store.diffTrees(parent == null ? null : parent.getTree(), c.getTree());
+        } else {
+            Map<String, String> a = parent == null ? new TreeMap<>() : parent.getBlobs();
+            Map<String, String> b = c.getBlobs();
+            paths = new TreeSet<>();
+            for (String path : a.keySet()) {
+                if (!a.get(path).equals(b.get(path))) {
+                    paths.add(path);
+                }
+            }
+            for (String path : b.keySet()) {
+                if (!a.containsKey(path)) {
+                    paths.add(path);
+                }
+            }
+        }
+        List<String> res = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            res.add(ChangedPathFilter.key(store.getWorkDir(), path));
+        }
+        return res;
+    }
+
+
+    private void put(String id, int p1, int p2, int gen) {
+        int pos = ids.size();
+        if (pos == parent1.length) {
+            parent1 = Arrays.copyOf(parent1, pos * 2);
+            parent2 = Arrays.copyOf(parent2, pos * 2);
+            generation = Arrays.copyOf(generation, pos * 2);
+        }
+        ids.add(id);
+        index.put(id, pos);
+        filters.add(null);
+        parent1[pos] = p1;
+        parent2[pos] = p2;
+        generation[pos] = gen;
+    }
+
+
+    /**
+     * 将新记录追加到文件末尾，最后再更新头部的提交数
+     */
+    private void appendRecords(File target, List<String> order) {
+        if (order.isEmpty() && target.exists()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            int existing = size() - order.size();
+            List<String> records = order;
+            if (existing == 0 || raf.length() < HEADER + (long) existing * RECORD) {
+                // 新文件或文件被截断，按内存中的全部记录重写
+                raf.setLength(0);
+                raf.write(MAGIC);
+                raf.writeInt(VERSION);
+                raf.writeInt(0);
+                existing = 0;
+                records = ids;
+            }
+            ByteBuffer buf = ByteBuffer.allocate(RECORD * records.size());
+            for (String id : records) {
+                int pos = indexOf(id);
+                buf.put(hexToBytes(id));
+                buf.putInt(parent1[pos]);
+                buf.putInt(parent2[pos]);
+                buf.putInt(generation[pos]);
+            }
+            raf.seek(HEADER + (long) existing * RECORD);
+            raf.write(buf.array());
+            raf.seek(8);
+            raf.writeInt(existing + records.size());
+        } catch (IOException e) {
+            throw error("Failed to write commit-graph.");
+        }
+    }
+
+
+    /**
+     * 将新记录的过滤器追加到附属文件末尾，附属文件与提交图不一致时按内存中的全部记录重写
+     */
+    private void appendFilters(File target, List<String> order) {
+        if (order.isEmpty() && target.exists()) {
+            return;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(target, "rw")) {
+            int existing = size() - order.size();
+            List<String> records = order;
+            if (existing == 0 || filterCount != existing || raf.length() < filterEnd) {
+                raf.setLength(0);
+                raf.write(FILTER_MAGIC);
+                raf.writeInt(VERSION);
+                raf.writeInt(0);
+                existing = 0;
+                records = ids;
+                filterEnd = HEADER;
+            }
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bos);
+            for (String id : records) {
+                byte[] bits = filters.get(indexOf(id));
+                out.writeInt(bits == null ? -1 : bits.length);
+                if (bits != null) {
+                    out.write(bits);
+                }
+            }
+            raf.seek(filterEnd);
+            raf.write(bos.toByteArray());
+            filterEnd += bos.size();
+            raf.seek(8);
+            raf.writeInt(existing + records.size());
+            filterCount = existing + records.size();
+        } catch (IOException e) {
+            throw error("Failed to write commit-graph.");
+        }
+    }
+
+
+    /**
+     * 获取父提交下标
+     * @param pos 提交下标
+     * @return 父提交下标数组
+     */
+    public int[] parentsOf(int pos) {
+        if (parent1[pos] < 0) {
+            return new int[0];
+        } else if (parent2[pos] < 0) {
+            return new int[]{parent1[pos]};
+        }
+        return new int[]{parent1[pos], parent2[pos]};
+    }
+
+
+    /**
+     * 找到两提交的最近公共祖先：按到 b 的距离广度优先遍历，返回第一个同时是 a 祖先的提交。
+     * a 的祖先集合按代数从高到低惰性展开，只展开到待判断提交的代数为止。
+     * @param a 当前提交id
+     * @param b 目标提交id
+     * @return 公共祖先id，不存在时返回null
+     */
+    public String mergeBase(String a, String b) {
+        int from = indexOf(a);
+        int to = indexOf(b);
+        if (from < 0 || to < 0) {
+            return null;
+        }
+        BitSet seenA = new BitSet();
+        BitSet reachA = new BitSet();
+        PriorityQueue<Integer> frontier = new PriorityQueue<>(
+                (x, y) -> Integer.compare(generation[y], generation[x]));
+        frontier.add(from);
+        seenA.set(from);
+
+        BitSet visited = new BitSet();
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.offer(to);
+        visited.set(to);
+        while (!queue.isEmpty()) {
+            int c = queue.poll();
+            // 展开 a 的祖先直到代数低于 c，此时 reachA 对 c 的判断是准确的
+            while (!frontier.isEmpty() && generation[frontier.peek()] >= generation[c]) {
+                int x = frontier.poll();
+                reachA.set(x);
+                for (int p : parentsOf(x)) {
+                    if (!seenA.get(p)) {
+                        seenA.set(p);
+                        frontier.add(p);
+                    }
+                }
+            }
+            if (reachA.get(c)) {
+                return idAt(c);
+            }
+            for (int p : parentsOf(c)) {
+                if (!visited.get(p)) {
+                    visited.set(p);
+                    queue.offer(p);
+                }
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * 获取沿第一父提交的历史
+     * @param head 起始提交id
+     * @return id集合，起始提交不在图中时返回null
+     */
+    public List<String> firstParentChain(String head) {
+        int pos = indexOf(head);
+        if (pos < 0) {
+            return null;
+        }
+        List<String> res = new ArrayList<>();
+        while (pos >= 0) {
+            res.add(idAt(pos));
+            pos = parent1[pos];
+        }
+        return res;
+    }
+
+
+    /**
+     * 按广度优先顺序获取 head 可达、但 exclude 不可达的提交
+     * @param head 起始提交id
+     * @param exclude 排除的提交id，为null时返回 head 的全部历史
+     * @return id集合；提交不在图中，或 exclude 不是 head 的祖先时返回null
+     */
+    public List<String> reachable(String head, String exclude) {
+        int from = indexOf(head);
+        if (from < 0) {
+            return null;
+        }
+        BitSet excluded = new BitSet();
+        int stop = -1;
+        if (exclude != null) {
+            stop = indexOf(exclude);
+            if (stop < 0) {
+                return null;
+            }
+            markAncestors(stop, excluded);
+        }
+        List<String> res = new ArrayList<>();
+        BitSet visited = new BitSet();
+        Queue<Integer> queue = new ArrayDeque<>();
+        queue.offer(from);
+        visited.set(from);
+        boolean metExclude = exclude == null;
+        while (!queue.isEmpty()) {
+            int c = queue.poll();
+            if (excluded.get(c)) {
+                // 只遇到 exclude 的祖先说明两者分叉，exclude 本身可达才是祖先
+                metExclude |= c == stop;
+                continue;
+            }
+            res.add(idAt(c));
+            for (int p : parentsOf(c)) {
+                if (!visited.get(p)) {
+                    visited.set(p);
+                    queue.offer(p);
+                }
+            }
+        }
+        return metExclude ? res : null;
+    }
+
+
+    private void markAncestors(int start, BitSet marked) {
+        Deque<Integer> stack = new ArrayDeque<>();
+        stack.push(start);
+        marked.set(start);
+        while (!stack.isEmpty()) {
+            for (int p : parentsOf(stack.pop())) {
+                if (!marked.get(p)) {
+                    marked.set(p);
+                    stack.push(p);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: 对象存储内容的 Deflate 压缩
+ * <pre>
+ * 压缩格式：0x00 'G' 'Z' | 解压后长度(8) | Deflate 数据
+ * </pre>
+ * 提交和树不以 0x00 开头，未压缩时没有头部；blob 和块是否压缩记录在开头的格式标记中（见 {@link StoredFormat}），
+ * 不按内容判断，解压后的内容可能是 {@link Delta} 增量或 {@link Chunker} 块清单。
+ * 读取时经 InflaterInputStream 流式解压，大文件不必整体读入内存。
+ * @author: Yhltmxh
+ * @create: 2025-07-26 15:08
+ **/
+public class Compression {
+
+    private static final byte[] MAGIC = {0, 'G', 'Z'};
+
+    /**
+     * 压缩头部长度
+     */
+    public static final int HEADER = MAGIC.length + 8;
+
+
+    /**
+     * 判断存储内容是否经过压缩
+     * @param stored 存储内容，可以只是开头的一部分
+     * @return true：压缩，false：未压缩
+     */
+    public static boolean isCompressed(byte[] stored) {
+        if (stored.length < HEADER) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (stored[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * 获取压缩内容解压后的长度
+     */
+    public static long contentLength(byte[] stored) {
+        return ByteBuffer.wrap(stored, MAGIC.length, 8).getLong();
+    }
+
+
+    /**
+     * 压缩内容
+     * @param data 原内容
+     * @param level 压缩级别（1-9）
+     * @return 带头部的压缩内容
+     */
+    public static byte[] compress(byte[] data, int level) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(data.length / 2 + HEADER);
+        try (OutputStream out = open(bos, data.length, level)) {
+            out.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bos.toByteArray();
+    }
+
+
+    /**
+     * 流式压缩文件
+     * @param source 源文件
+     * @param target 目标文件
+     * @param level 压缩级别（1-9）
+     */
+    public static void compress(File source, File target, int level) {
+        try (InputStream in = Files.newInputStream(source.toPath())) {
+            compress(in, source.length(), new BufferedOutputStream(Files.newOutputStream(target.toPath()),
+                    STREAM_BUFFER_SIZE), level);
+        } catch (IOException e) {
+            throw error("Failed to compress '%s'.", source.getName());
+        }
+    }
+
+
+    /**
+     * 流式压缩输入流中的内容，结束后关闭输出流
+     * @param in 输入流
+     * @param length 输入内容的长度
+     * @param out 输出流，之前可以已写入其他内容（如格式标记）
+     * @param level 压缩级别（1-9）
+     */
+    public static void compress(InputStream in, long length, OutputStream out, int level) throws IOException {
+        try (OutputStream z = open(out, length, level)) {
+            in.transferTo(z);
+        }
+    }
+
+
+    /**
+     * 写入头部并返回压缩输出流，关闭时结束压缩并关闭底层输出流
+     */
+    private static OutputStream open(OutputStream out, long length, int level) throws IOException {
+        out.write(MAGIC);
+        out.write(ByteBuffer.allocate(8).putLong(length).array());
+        Deflater deflater = new Deflater(level);
+        return new DeflaterOutputStream(out, deflater, STREAM_BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    deflater.end();
+                }
+            }
+        };
+    }
+
+
+    /**
+     * 解压存储内容，未压缩的内容原样返回
+     * @param stored 存储内容
+     * @return 解压后的内容
+     */
+    public static byte[] decode(byte[] stored) {
+        if (!isCompressed(stored)) {
+            return stored;
+        }
+        try (InputStream in = new InflaterInputStream(
+                new ByteArrayInputStream(stored, HEADER, stored.length - HEADER))) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw error("Corrupt compressed object.");
+        }
+    }
+
+
+    /**
+     * 包装存储内容的输入流，压缩的内容经流式解压
+     * @param stored 存储内容的输入流
+     * @return 解压后内容的输入流
+     */
+    public static InputStream open(InputStream stored) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(stored, STREAM_BUFFER_SIZE);
+        in.mark(HEADER);
+        if (isCompressed(in.readNBytes(HEADER))) {
+            return new InflaterInputStream(in);
+        }
+        in.reset();
+        return in;
+    }
+
+
+    /**
+     * 跳过压缩头部并返回解压后内容的输入流，用于已知经过压缩的内容
+     * @param stored 从压缩头部开始的输入流
+     * @return 解压后内容的输入流
+     */
+    public static InputStream inflate(InputStream stored) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(stored, STREAM_BUFFER_SIZE);
+        if (!isCompressed(in.readNBytes(HEADER))) {
+            throw new IOException("missing compression header");
+        }
+        return new InflaterInputStream(in);
+    }
+}
@@ -2,6 +2,7 @@ package gitlet;
 
 import java.io.Serializable;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * @description: 配置类
@@ -10,11 +11,56 @@ import java.util.Map;
  **/
 public class Config implements Serializable {
 
+    /**
+     * 与加入通用配置项之前的版本保持一致，旧的config文件仍可读取
+     */
+    private static final long serialVersionUID = 2532911302148087578L;
+
+    /**
+     * 工作目录扫描及哈希计算的并行度
+     */
+    public static final String PARALLELISM = "core.parallelism";
+
+    /**
+     * bundle 文件的压缩级别（0-9），0 表示不压缩
+     */
+    public static final String BUNDLE_COMPRESSION = "bundle.compression";
+
+    /**
+     * push/fetch 是否经由 bundle 文件传输（0 或 1）
+     */
+    public static final String TRANSFER_BUNDLE = "transfer.bundle";
+
+    /**
+     * blob 增量链的最大深度（0-50），0 表示不做增量
+     */
+    public static final String DELTA_DEPTH = "core.deltaDepth";
+
+    /**
+     * 增量链最大深度的默认值
+     */
+    public static final int DEFAULT_DELTA_DEPTH = 10;
+
+    /**
+     * 松散对象的压缩级别（0-9），0 表示不压缩，只影响之后写入的对象
+     */
+    public static final String COMPRESSION = "core.compression";
+
+    /**
+     * 按内容分块存储的blob长度下限（字节），0 表示不分块
+     */
+    public static final String CHUNK_THRESHOLD = "core.chunkThreshold";
+
     /**
      * 远程配置
      */
     private Map<String, String> remoteConfig;
 
+    /**
+     * 通用配置项（key：配置名，如core.parallelism）
+     */
+    private Map<String, String> settings;
+
     public Map<String, String> getRemoteConfig() {
         return remoteConfig;
     }
@@ -23,7 +69,39 @@ public class Config implements Serializable {
         this.remoteConfig = remoteConfig;
     }
 
+    public Map<String, String> getSettings() {
+        if (settings == null) {
+            // 旧版本的config没有通用配置项
+            settings = new TreeMap<>();
+        }
+        return settings;
+    }
+
+    public void setSettings(Map<String, String> settings) {
+        this.settings = settings;
+    }
+
     public Config(Map<String, String> remoteConfig) {
         this.remoteConfig = remoteConfig;
+        this.settings = new TreeMap<>();
+    }
+
+
+    /**
+     * 获取整数配置项
+     * @param key 配置名
+     * @param defaultValue 未配置时的默认值
+     * @return 配置值
+     */
+    public int getInt(String key, int defaultValue) {
+        String value = getSettings().get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
     }
 }
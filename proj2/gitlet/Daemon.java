@@ -0,0 +1,261 @@
+package gitlet;
+
+import java.io.*;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import static gitlet.Service.*;
+import static gitlet.Utils.*;
+
+/**
+ * @description: 常驻进程，避免每条命令都启动 JVM 并重新加载仓库状态
+ * 在仓库中执行 `daemon run` 后监听 .gitlet/daemon.sock（Unix 域套接字），之后同一目录下的命令由 Main 转发给它执行，
+ * 提交图、对象缓存、打包文件索引和扫描线程池在命令之间保持加载，JIT 编译的结果也得以复用。
+ * 请求：参数个数(int) | 参数(UTF)*；响应：{通道(byte，1 标准输出，2 标准错误) | 长度(int) | 内容}* | 0 | 退出码(int)。
+ * 命令按到达顺序逐个执行，exitWithError 在执行命令的线程上抛出异常代替退出。
+ * serve 和 daemon run 会一直运行，不转发，在本进程执行。
+ * @author: Yhltmxh
+ * @create: 2025-07-24 09:48
+ **/
+public class Daemon {
+
+    /**
+     * 不经由 Service 计算路径，转发命令时不必初始化对象库等状态，客户端启动更快
+     */
+    public static final File SOCKET_FILE = join(System.getProperty("user.dir"), ".gitlet", "daemon.sock");
+
+    private static final byte STDOUT = 1;
+
+    private static final byte STDERR = 2;
+
+    private static final byte EXIT = 0;
+
+    /**
+     * 是否在常驻进程中执行命令
+     */
+    private static volatile boolean serving;
+
+    /**
+     * 逐个执行命令的线程
+     */
+    private static volatile Thread requestThread;
+
+    /**
+     * 收到 stop 请求后置位，当前请求结束后退出
+     */
+    private static boolean stopRequested;
+
+    /**
+     * 代替 System.exit，结束当前命令
+     */
+    static class Exit extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        Exit() {
+            super(null, null, false, false);
+        }
+    }
+
+    public static boolean isServing() {
+        return serving;
+    }
+
+
+    /**
+     * 当前线程是否为常驻进程中执行命令的线程，只有该线程上抛出的 Exit 会被捕获
+     */
+    public static boolean isRequestThread() {
+        return serving && Thread.currentThread() == requestThread;
+    }
+
+
+    /**
+     * 将命令转发给常驻进程执行
+     * @param args 命令参数
+     * @return 常驻进程的退出码，没有常驻进程时为-1，由调用方在本进程执行
+     */
+    public static int forward(String[] args) {
+        if (args.length == 0 || !isForwardable(args) || !SOCKET_FILE.exists()) {
+            return -1;
+        }
+        SocketChannel ch;
+        try {
+            ch = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET_FILE.toPath()));
+        } catch (IOException e) {
+            // 常驻进程已退出，遗留的套接字文件由下一个常驻进程清理
+            return -1;
+        }
+        try (ch) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(ch)));
+            out.writeInt(args.length);
+            for (String arg : args) {
+                out.writeUTF(arg);
+            }
+            out.flush();
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch)));
+            byte[] buf = new byte[STREAM_BUFFER_SIZE];
+            while (true) {
+                byte channel = in.readByte();
+                if (channel == EXIT) {
+                    return in.readInt();
+                }
+                int len = in.readInt();
+                PrintStream target = channel == STDERR ? System.err : System.out;
+                while (len > 0) {
+                    int n = in.read(buf, 0, Math.min(buf.length, len));
+                    if (n < 0) {
+                        throw new EOFException();
+                    }
+                    target.write(buf, 0, n);
+                    len -= n;
+                }
+                target.flush();
+            }
+        } catch (IOException e) {
+            // 命令可能已经执行，不能再在本进程重试
+            System.err.println("Lost connection to gitlet daemon.");
+            return 1;
+        }
+    }
+
+
+    /**
+     * init 在仓库之外执行；serve 和 daemon run 一直运行，转发后会占住常驻进程，其他命令都无法执行
+     */
+    private static boolean isForwardable(String[] args) {
+        String command = args[0];
+        if (command.equals(Command.INIT.getCommand()) || command.equals(Command.SERVE.getCommand())) {
+            return false;
+        }
+        return !(command.equals(Command.DAEMON.getCommand()) && args.length > 1 && args[1].equals("run"));
+    }
+
+
+    /**
+     * 在当前仓库启动常驻进程，阻塞直到收到 stop 请求
+     */
+    public static void run() {
+        if (SOCKET_FILE.exists()) {
+            SocketChannel probe = null;
+            try {
+                probe = SocketChannel.open(UnixDomainSocketAddress.of(SOCKET_FILE.toPath()));
+            } catch (IOException e) {
+                // 没有进程在监听，删除残留的套接字文件
+                deleteFile(SOCKET_FILE);
+            }
+            if (probe != null) {
+                try {
+                    probe.close();
+                } catch (IOException e) {
+                    // 探测连接，关闭失败不影响结果
+                }
+                exitWithError("A daemon is already running.");
+            }
+        }
+        try (ServerSocketChannel server = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            server.bind(UnixDomainSocketAddress.of(SOCKET_FILE.toPath()));
+            requestThread = Thread.currentThread();
+            serving = true;
+            message("Daemon listening on %s", SOCKET_FILE.getPath());
+            while (!stopRequested) {
+                try (SocketChannel ch = server.accept()) {
+                    handle(ch);
+                } catch (IOException e) {
+                    // 客户端中途断开，继续处理下一个请求
+                }
+            }
+        } catch (IOException e) {
+            exitWithError("Failed to start daemon.");
+        } finally {
+            serving = false;
+            requestThread = null;
+            SOCKET_FILE.delete();
+            closeWorkTreeScanner();
+        }
+    }
+
+
+    /**
+     * 停止常驻进程，只能经由转发执行
+     */
+    public static void stop() {
+        if (!serving) {
+            exitWithError("No daemon is running.");
+        }
+        stopRequested = true;
+    }
+
+
+    private static void handle(SocketChannel ch) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(ch)));
+        String[] args = new String[in.readInt()];
+        for (int i = 0; i < args.length; i++) {
+            args[i] = in.readUTF();
+        }
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(ch), STREAM_BUFFER_SIZE));
+        PrintStream stdout = System.out;
+        PrintStream stderr = System.err;
+        int code = 0;
+        System.setOut(new PrintStream(new FrameOutputStream(out, STDOUT), true));
+        System.setErr(new PrintStream(new FrameOutputStream(out, STDERR), true));
+        try {
+            Main.run(args);
+        } catch (Exit e) {
+            // exitWithError 已输出错误信息
+        } catch (RuntimeException | Error e) {
+            e.printStackTrace();
+            code = 1;
+            // 命令中途失败，丢弃可能与磁盘不一致的缓存状态
+            resetState();
+        } finally {
+            System.out.flush();
+            System.err.flush();
+            System.setOut(stdout);
+            System.setErr(stderr);
+        }
+        out.writeByte(EXIT);
+        out.writeInt(code);
+        out.flush();
+    }
+
+
+    /**
+     * 将写入的内容按通道分帧发送给客户端
+     */
+    private static class FrameOutputStream extends OutputStream {
+
+        private final DataOutputStream out;
+
+        private final byte channel;
+
+        FrameOutputStream(DataOutputStream out, byte channel) {
+            this.out = out;
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return;
+            }
+            out.writeByte(channel);
+            out.writeInt(len);
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: blob 的增量编码，将新版本表示为对基准版本的复制/插入操作序列
+ * <pre>
+ * 存储格式：0x00 'G' 'D' | 链深度(1) | 基准blob id(20) | 结果长度(varint) | 基准长度(varint) | 操作*
+ * 操作：COPY | 偏移(varint) | 长度(varint)，或 INSERT | 长度(varint) | 字节
+ * </pre>
+ * 存储时以 {@link StoredFormat} 标记区分增量与原样内容，魔数只用于识别旧版本写入的对象；链深度为基准的链深度加一，原样存储的blob深度为0，
+ * 写入时据此限制重建一个版本需要经过的增量数量。
+ * 生成增量时以固定长度的块为单位索引基准，在新版本上滚动哈希查找匹配的块并向两侧扩展。
+ * @author: Yhltmxh
+ * @create: 2025-07-26 09:32
+ **/
+public class Delta {
+
+    private static final byte[] MAGIC = {0, 'G', 'D'};
+
+    /**
+     * 链深度之后的固定头部长度
+     */
+    private static final int FIXED_HEADER = MAGIC.length + 1 + UID_LENGTH / 2;
+
+    /**
+     * 读取长度信息需要的头部长度上限（两个 varint 各至多 10 字节）
+     */
+    public static final int MAX_HEADER = FIXED_HEADER + 20;
+
+    private static final byte COPY = 1;
+
+    private static final byte INSERT = 2;
+
+    /**
+     * 索引与匹配的块长度，短于该长度的重复内容直接插入
+     */
+    private static final int BLOCK = 16;
+
+    /**
+     * 滚动哈希的乘数
+     */
+    private static final int PRIME = 16777619;
+
+    /**
+     * 同一哈希值最多比较的候选块数，避免高度重复的内容退化为平方复杂度
+     */
+    private static final int MAX_CANDIDATES = 16;
+
+
+    /**
+     * 判断存储内容是否为增量
+     * @param stored 存储内容，可以只是开头的一部分
+     * @return true：增量，false：原样存储
+     */
+    public static boolean isDelta(byte[] stored) {
+        if (stored.length < FIXED_HEADER) {
+            return false;
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (stored[i] != MAGIC[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * 获取增量的链深度
+     */
+    public static int depth(byte[] stored) {
+        return stored[MAGIC.length] & 0xff;
+    }
+
+
+    /**
+     * 获取增量的基准blob id
+     */
+    public static String baseId(byte[] stored) {
+        byte[] id = new byte[UID_LENGTH / 2];
+        System.arraycopy(stored, MAGIC.length + 1, id, 0, id.length);
+        return bytesToHex(id);
+    }
+
+
+    /**
+     * 获取增量重建后的长度
+     */
+    public static long resultSize(byte[] stored) {
+        return new Reader(stored, FIXED_HEADER).readVarLong();
+    }
+
+
+    /**
+     * 生成增量
+     * @param baseId 基准blob id
+     * @param depth 生成的增量的链深度
+     * @param base 基准内容
+     * @param target 新版本内容
+     * @return 增量的存储内容，基准过短时为null
+     */
+    public static byte[] create(String baseId, int depth, byte[] base, byte[] target) {
+        if (base.length < BLOCK) {
+            return null;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(target.length / 4 + FIXED_HEADER);
+        out.write(MAGIC, 0, MAGIC.length);
+        out.write(depth);
+        out.write(hexToBytes(baseId), 0, UID_LENGTH / 2);
+        writeVarLong(out, target.length);
+        writeVarLong(out, base.length);
+
+        // 按块索引基准：哈希 -> 最后一个块，next 链接同一哈希的更早的块
+        int blocks = base.length / BLOCK;
+        int size = Integer.highestOneBit(Math.max(blocks, 1) * 2);
+        int[] head = new int[size];
+        int[] next = new int[blocks + 1];
+        for (int b = 1; b <= blocks; b++) {
+            int slot = hash(base, (b - 1) * BLOCK) & (size - 1);
+            next[b] = head[slot];
+            head[slot] = b;
+        }
+
+        int pow = 1;
+        for (int i = 1; i < BLOCK; i++) {
+            pow *= PRIME;
+        }
+        int insertStart = 0;
+        int pos = 0;
+        int h = target.length >= BLOCK ? hash(target, 0) : 0;
+        while (pos + BLOCK <= target.length) {
+            int bestOffset = -1;
+            int bestLen = 0;
+            int tries = 0;
+            for (int b = head[h & (size - 1)]; b != 0 && tries < MAX_CANDIDATES; b = next[b], tries++) {
+                int offset = (b - 1) * BLOCK;
+                int len = matchLength(base, offset, target, pos);
+                if (len >= BLOCK && len > bestLen) {
+                    bestOffset = offset;
+                    bestLen = len;
+                }
+            }
+            if (bestOffset < 0) {
+                if (pos + BLOCK < target.length) {
+                    h = (h - target[pos] * pow) * PRIME + target[pos + BLOCK];
+                }
+                pos++;
+                continue;
+            }
+            // 向前扩展到尚未输出的插入内容中
+            int start = pos;
+            while (start > insertStart && bestOffset > 0 && base[bestOffset - 1] == target[start - 1]) {
+                start--;
+                bestOffset--;
+                bestLen++;
+            }
+            writeInsert(out, target, insertStart, start);
+            out.write(COPY);
+            writeVarLong(out, bestOffset);
+            writeVarLong(out, bestLen);
+            pos = start + bestLen;
+            insertStart = pos;
+            if (pos + BLOCK <= target.length) {
+                h = hash(target, pos);
+            }
+        }
+        writeInsert(out, target, insertStart, target.length);
+        return out.toByteArray();
+    }
+
+
+    /**
+     * 用基准内容重建增量表示的版本
+     * @param base 基准内容
+     * @param stored 增量的存储内容
+     * @return 重建的内容
+     */
+    public static byte[] apply(byte[] base, byte[] stored) {
+        Reader in = new Reader(stored, FIXED_HEADER);
+        long resultSize = in.readVarLong();
+        if (in.readVarLong() != base.length || resultSize > Integer.MAX_VALUE) {
+            throw error("Corrupt delta.");
+        }
+        byte[] res = new byte[(int) resultSize];
+        int pos = 0;
+        while (in.pos < stored.length) {
+            byte op = stored[in.pos++];
+            if (op == COPY) {
+                long offset = in.readVarLong();
+                long len = in.readVarLong();
+                if (offset + len > base.length || pos + len > res.length) {
+                    throw error("Corrupt delta.");
+                }
+                System.arraycopy(base, (int) offset, res, pos, (int) len);
+                pos += (int) len;
+            } else if (op == INSERT) {
+                long len = in.readVarLong();
+                if (in.pos + len > stored.length || pos + len > res.length) {
+                    throw error("Corrupt delta.");
+                }
+                System.arraycopy(stored, in.pos, res, pos, (int) len);
+                in.pos += (int) len;
+                pos += (int) len;
+            } else {
+                throw error("Corrupt delta.");
+            }
+        }
+        if (pos != res.length) {
+            throw error("Corrupt delta.");
+        }
+        return res;
+    }
+
+
+    private static int hash(byte[] data, int offset) {
+        int h = 0;
+        for (int i = 0; i < BLOCK; i++) {
+            h = h * PRIME + data[offset + i];
+        }
+        return h;
+    }
+
+
+    private static int matchLength(byte[] base, int offset, byte[] target, int pos) {
+        int len = 0;
+        int max = Math.min(base.length - offset, target.length - pos);
+        while (len < max && base[offset + len] == target[pos + len]) {
+            len++;
+        }
+        return len;
+    }
+
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] data, int from, int to) {
+        if (from < to) {
+            out.write(INSERT);
+            writeVarLong(out, to - from);
+            out.write(data, from, to - from);
+        }
+    }
+
+
+    private static void writeVarLong(ByteArrayOutputStream out, long v) {
+        while ((v & ~0x7fL) != 0) {
+            out.write((int) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+        out.write((int) v);
+    }
+
+
+    private static class Reader {
+
+        private final byte[] data;
+
+        private int pos;
+
+        Reader(byte[] data, int pos) {
+            this.data = data;
+            this.pos = pos;
+        }
+
+        long readVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (pos >= data.length) {
+                    throw error("Corrupt delta.");
+                }
+                byte b = data[pos++];
+                v |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw error("Corrupt delta.");
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * @description: 行级差异计算，Myers 算法的线性空间版本
+ * 先去掉公共的前缀和后缀，再从两端同时搜索编辑路径，在正反两条路径相遇的位置（中间蛇）把问题一分为二递归求解，
+ * 时间 O((N+M)D)，额外空间 O(N+M)，D 为编辑距离。行先映射为整数编号，比较时不再比较字符串；
+ * 只在一侧出现的行预先排除（与 GNU diff 相同），大文件上分散的修改大多是这种行。
+ * 结果为按顺序排列的差异块，块之外的行两侧相同，合并（{@link LineMerger}）和 diff 命令（统一格式输出）共用。
+ * @author: Yhltmxh
+ * @create: 2025-07-28 09:40
+ **/
+public class Diff {
+
+    /**
+     * 差异块，a[aStart, aEnd) 被替换为 b[bStart, bEnd)，其中一侧可以为空（纯插入或纯删除）
+     */
+    public static class Hunk {
+
+        private final int aStart;
+
+        private final int aEnd;
+
+        private final int bStart;
+
+        private final int bEnd;
+
+        Hunk(int aStart, int aEnd, int bStart, int bEnd) {
+            this.aStart = aStart;
+            this.aEnd = aEnd;
+            this.bStart = bStart;
+            this.bEnd = bEnd;
+        }
+
+        public int getAStart() {
+            return aStart;
+        }
+
+        public int getAEnd() {
+            return aEnd;
+        }
+
+        public int getBStart() {
+            return bStart;
+        }
+
+        public int getBEnd() {
+            return bEnd;
+        }
+    }
+
+    private final int[] a;
+
+    private final int[] b;
+
+    /**
+     * 标记 a 中被删除、b 中被插入的行
+     */
+    private final boolean[] aChanged;
+
+    private final boolean[] bChanged;
+
+    private Diff(int[] a, int[] b) {
+        this.a = a;
+        this.b = b;
+        this.aChanged = new boolean[a.length];
+        this.bChanged = new boolean[b.length];
+    }
+
+
+    /**
+     * 计算两组行之间的差异
+     * @param a 原来的行
+     * @param b 新的行
+     * @return 差异块（按位置排列）
+     */
+    public static List<Hunk> diff(List<String> a, List<String> b) {
+        Map<String, Integer> ids = new HashMap<>();
+        return diff(intern(a, ids), intern(b, ids));
+    }
+
+
+    /**
+     * 将行映射为整数编号，相同的行编号相同
+     * @param lines 行
+     * @param ids 行 -> 编号，在需要比较的各组行之间共用
+     * @return 编号序列
+     */
+    public static int[] intern(List<String> lines, Map<String, Integer> ids) {
+        int[] res = new int[lines.size()];
+        for (int i = 0; i < res.length; i++) {
+            Integer id = ids.get(lines.get(i));
+            if (id == null) {
+                id = ids.size();
+                ids.put(lines.get(i), id);
+            }
+            res[i] = id;
+        }
+        return res;
+    }
+
+
+    /**
+     * 计算两个编号序列之间的差异
+     * 只在一侧出现的行必然是修改，先将其排除再搜索编辑路径，结果不变，但分散的修改较多时编辑距离大大减小
+     */
+    public static List<Hunk> diff(int[] a, int[] b) {
+        int max = -1;
+        for (int x : a) {
+            max = Math.max(max, x);
+        }
+        for (int x : b) {
+            max = Math.max(max, x);
+        }
+        boolean[] inA = new boolean[max + 1];
+        boolean[] inB = new boolean[max + 1];
+        for (int x : a) {
+            inA[x] = true;
+        }
+        for (int x : b) {
+            inB[x] = true;
+        }
+        int[] aIndex = keptIndexes(a, inB);
+        int[] bIndex = keptIndexes(b, inA);
+        Diff d = new Diff(select(a, aIndex), select(b, bIndex));
+        d.compare(0, aIndex.length, 0, bIndex.length);
+        return hunks(expand(d.aChanged, aIndex, a.length), expand(d.bChanged, bIndex, b.length));
+    }
+
+
+    /**
+     * 获取在另一侧出现过的行的位置
+     */
+    private static int[] keptIndexes(int[] lines, boolean[] inOther) {
+        int n = 0;
+        for (int x : lines) {
+            if (inOther[x]) {
+                n++;
+            }
+        }
+        int[] res = new int[n];
+        n = 0;
+        for (int i = 0; i < lines.length; i++) {
+            if (inOther[lines[i]]) {
+                res[n++] = i;
+            }
+        }
+        return res;
+    }
+
+
+    private static int[] select(int[] lines, int[] index) {
+        int[] res = new int[index.length];
+        for (int i = 0; i < index.length; i++) {
+            res[i] = lines[index[i]];
+        }
+        return res;
+    }
+
+
+    /**
+     * 将保留行上的变化标记映射回全部行，被排除的行都标记为变化
+     */
+    private static boolean[] expand(boolean[] changed, int[] index, int length) {
+        boolean[] res = new boolean[length];
+        Arrays.fill(res, true);
+        for (int i = 0; i < index.length; i++) {
+            res[index[i]] = changed[i];
+        }
+        return res;
+    }
+
+
+    /**
+     * 把文本按行拆分，每行保留行尾的换行符，最后一行可以没有换行符
+     * @param text 文本
+     * @return 行
+     */
+    public static List<String> splitLines(String text) {
+        List<String> res = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            res.add(text.substring(start, end));
+            start = end;
+        }
+        return res;
+    }
+
+
+    /**
+     * 按统一格式（unified）输出差异，间隔不超过两倍上下文的差异块合并为一段，每段写完即输出，不在内存中拼接整个结果
+     * @param out 输出
+     * @param a 原来的行
+     * @param b 新的行
+     * @param hunks 差异块
+     * @param context 上下文行数
+     */
+    public static void writeUnified(Writer out, List<String> a, List<String> b, List<Hunk> hunks,
+                                    int context) throws IOException {
+        int i = 0;
+        while (i < hunks.size()) {
+            int j = i + 1;
+            while (j < hunks.size() && hunks.get(j).aStart - hunks.get(j - 1).aEnd <= 2 * context) {
+                j++;
+            }
+            Hunk first = hunks.get(i);
+            Hunk last = hunks.get(j - 1);
+            int aFrom = Math.max(first.aStart - context, 0);
+            int aTo = Math.min(last.aEnd + context, a.size());
+            int bFrom = first.bStart - (first.aStart - aFrom);
+            int bTo = last.bEnd + (aTo - last.aEnd);
+            out.write("@@ -" + range(aFrom, aTo - aFrom) + " +" + range(bFrom, bTo - bFrom) + " @@\n");
+            int pos = aFrom;
+            for (int k = i; k < j; k++) {
+                Hunk h = hunks.get(k);
+                writeLines(out, ' ', a, pos, h.aStart);
+                writeLines(out, '-', a, h.aStart, h.aEnd);
+                writeLines(out, '+', b, h.bStart, h.bEnd);
+                pos = h.aEnd;
+            }
+            writeLines(out, ' ', a, pos, aTo);
+            i = j;
+        }
+    }
+
+
+    /**
+     * 段头中的行范围：起始行号（从1开始，空范围时为其前一行）与行数（为1时省略）
+     */
+    private static String range(int from, int count) {
+        int start = count == 0 ? from : from + 1;
+        return count == 1 ? String.valueOf(start) : start + "," + count;
+    }
+
+
+    private static void writeLines(Writer out, char prefix, List<String> lines, int from, int to) throws IOException {
+        for (int k = from; k < to; k++) {
+            String line = lines.get(k);
+            out.write(prefix);
+            out.write(line);
+            if (!line.endsWith("\n")) {
+                out.write("\n\\ No newline at end of file\n");
+            }
+        }
+    }
+
+
+    private void compare(int aLo, int aHi, int bLo, int bHi) {
+        while (aLo < aHi && bLo < bHi && a[aLo] == b[bLo]) {
+            aLo++;
+            bLo++;
+        }
+        while (aLo < aHi && bLo < bHi && a[aHi - 1] == b[bHi - 1]) {
+            aHi--;
+            bHi--;
+        }
+        if (aLo == aHi) {
+            Arrays.fill(bChanged, bLo, bHi, true);
+        } else if (bLo == bHi) {
+            Arrays.fill(aChanged, aLo, aHi, true);
+        } else {
+            bisect(aLo, aHi, bLo, bHi);
+        }
+    }
+
+
+    /**
+     * 找到中间蛇并在其起点把问题一分为二
+     */
+    private void bisect(int aLo, int aHi, int bLo, int bHi) {
+        int n = aHi - aLo;
+        int m = bHi - bLo;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int length = 2 * maxD + 2;
+        int[] v1 = new int[length];
+        int[] v2 = new int[length];
+        Arrays.fill(v1, -1);
+        Arrays.fill(v2, -1);
+        v1[offset + 1] = 0;
+        v2[offset + 1] = 0;
+        int delta = n - m;
+        // 差值为奇数时正向路径先与反向路径相遇
+        boolean front = (delta & 1) != 0;
+        int k1Start = 0;
+        int k1End = 0;
+        int k2Start = 0;
+        int k2End = 0;
+        for (int d = 0; d < maxD; d++) {
+            for (int k1 = -d + k1Start; k1 <= d - k1End; k1 += 2) {
+                int k1Offset = offset + k1;
+                int x1;
+                if (k1 == -d || (k1 != d && v1[k1Offset - 1] < v1[k1Offset + 1])) {
+                    x1 = v1[k1Offset + 1];
+                } else {
+                    x1 = v1[k1Offset - 1] + 1;
+                }
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a[aLo + x1] == b[bLo + y1]) {
+                    x1++;
+                    y1++;
+                }
+                v1[k1Offset] = x1;
+                if (x1 > n) {
+                    k1End += 2;
+                } else if (y1 > m) {
+                    k1Start += 2;
+                } else if (front) {
+                    int k2Offset = offset + delta - k1;
+                    if (k2Offset >= 0 && k2Offset < length && v2[k2Offset] != -1 && x1 >= n - v2[k2Offset]) {
+                        split(aLo, aHi, bLo, bHi, x1, y1);
+                        return;
+                    }
+                }
+            }
+            for (int k2 = -d + k2Start; k2 <= d - k2End; k2 += 2) {
+                int k2Offset = offset + k2;
+                int x2;
+                if (k2 == -d || (k2 != d && v2[k2Offset - 1] < v2[k2Offset + 1])) {
+                    x2 = v2[k2Offset + 1];
+                } else {
+                    x2 = v2[k2Offset - 1] + 1;
+                }
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m && a[aHi - x2 - 1] == b[bHi - y2 - 1]) {
+                    x2++;
+                    y2++;
+                }
+                v2[k2Offset] = x2;
+                if (x2 > n) {
+                    k2End += 2;
+                } else if (y2 > m) {
+                    k2Start += 2;
+                } else if (!front) {
+                    int k1Offset = offset + delta - k2;
+                    if (k1Offset >= 0 && k1Offset < length && v1[k1Offset] != -1) {
+                        int x1 = v1[k1Offset];
+                        int y1 = offset + x1 - k1Offset;
+                        if (x1 >= n - x2) {
+                            split(aLo, aHi, bLo, bHi, x1, y1);
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+        // 没有公共行
+        Arrays.fill(aChanged, aLo, aHi, true);
+        Arrays.fill(bChanged, bLo, bHi, true);
+    }
+
+
+    private void split(int aLo, int aHi, int bLo, int bHi, int x, int y) {
+        compare(aLo, aLo + x, bLo, bLo + y);
+        compare(aLo + x, aHi, bLo + y, bHi);
+    }
+
+
+    /**
+     * 由两侧的变化标记生成差异块：未标记的行按顺序一一对应
+     */
+    private static List<Hunk> hunks(boolean[] aChanged, boolean[] bChanged) {
+        List<Hunk> res = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < aChanged.length || j < bChanged.length) {
+            if (i < aChanged.length && j < bChanged.length && !aChanged[i] && !bChanged[j]) {
+                i++;
+                j++;
+                continue;
+            }
+            int aStart = i;
+            int bStart = j;
+            while (i < aChanged.length && aChanged[i]) {
+                i++;
+            }
+            while (j < bChanged.length && bChanged[j]) {
+                j++;
+            }
+            res.add(new Hunk(aStart, i, bStart, j));
+        }
+        return res;
+    }
+}
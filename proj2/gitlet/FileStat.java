@@ -0,0 +1,80 @@
+package gitlet;
+
+import java.io.Serializable;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @description: 工作目录文件的状态缓存，记录上次计算哈希时文件的元数据
+ * @author: Yhltmxh
+ * @create: 2025-07-07 10:22
+ **/
+public class FileStat implements Serializable {
+
+    /**
+     * 与只有一个构造方法的版本保持一致，旧的index文件仍可读取
+     */
+    private static final long serialVersionUID = 745602630216246045L;
+
+    /**
+     * 修改时间（纳秒）
+     */
+    private long mtime;
+
+    /**
+     * 文件大小
+     */
+    private long size;
+
+    /**
+     * 文件标识（如inode），文件系统不支持时为"null"
+     */
+    private String fileKey;
+
+    /**
+     * 该状态下文件内容对应的blob id
+     */
+    private String blobId;
+
+    public FileStat(BasicFileAttributes attrs, String blobId) {
+        this.mtime = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        this.size = attrs.size();
+        this.fileKey = String.valueOf(attrs.fileKey());
+        this.blobId = blobId;
+    }
+
+    public FileStat(long mtime, long size, String fileKey, String blobId) {
+        this.mtime = mtime;
+        this.size = size;
+        this.fileKey = fileKey;
+        this.blobId = blobId;
+    }
+
+
+    /**
+     * 判断文件元数据是否与缓存一致
+     * @param attrs 文件当前的元数据
+     * @return true：一致，false：不一致
+     */
+    public boolean matches(BasicFileAttributes attrs) {
+        return mtime == attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS)
+                && size == attrs.size()
+                && fileKey.equals(String.valueOf(attrs.fileKey()));
+    }
+
+    public long getMtime() {
+        return mtime;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getFileKey() {
+        return fileKey;
+    }
+
+    public String getBlobId() {
+        return blobId;
+    }
+}
@@ -0,0 +1,266 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: 垃圾回收，删除从任何分支和暂存区都不可达的对象
+ * 标记阶段从所有分支头出发按层并行展开提交，再并行遍历每个可达提交的树，相同的子树只遍历一次；
+ * 清除阶段删除修改时间早于宽限期的不可达对象，宽限期内的对象可能刚被其他命令写入，尚未被引用。
+ * 保留的blob若以增量存储，其基准链上的blob即使不可达也一并保留；分块存储的blob保留其引用的块。
+ * @author: Yhltmxh
+ * @create: 2025-07-25 10:06
+ **/
+public class GarbageCollector {
+
+    /**
+     * 以 tmp- 开头的临时文件，写入中断时遗留
+     */
+    private static final String TMP_PREFIX = "tmp-";
+
+    private final ObjectStore store;
+
+    private final ForkJoinPool pool;
+
+    private final Set<String> commits = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> trees = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> blobs = ConcurrentHashMap.newKeySet();
+
+    private final Set<String> chunks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 类型 -> 可以删除的不可达对象id
+     */
+    private final Map<ObjectType, Set<String>> garbage = new EnumMap<>(ObjectType.class);
+
+    /**
+     * 可以删除的临时文件
+     */
+    private final List<File> tmpFiles = new ArrayList<>();
+
+    private long garbageBytes;
+
+    /**
+     * 宽限期内而保留的不可达对象数
+     */
+    private int recent;
+
+    public GarbageCollector(ObjectStore store, int parallelism) {
+        this.store = store;
+        this.pool = new ForkJoinPool(Math.max(1, parallelism));
+    }
+
+
+    /**
+     * 标记可达对象
+     * @param heads 分支头提交id
+     * @param stagedBlobs 暂存区引用的blob id
+     */
+    public void mark(Collection<String> heads, Collection<String> stagedBlobs) {
+        blobs.addAll(stagedBlobs);
+        List<String> frontier = new ArrayList<>();
+        for (String head : heads) {
+            if (commits.add(head)) {
+                frontier.add(head);
+            }
+        }
+        try {
+            // 按层展开提交历史，同一层的提交并行读取
+            List<Commit> reachable = new ArrayList<>();
+            while (!frontier.isEmpty()) {
+                List<String> level = frontier;
+                List<Commit> read = pool.submit(() -> level.parallelStream()
+                        .map(this::readCommit).toList()).get();
+                reachable.addAll(read);
+                frontier = new ArrayList<>();
+                for (Commit commit : read) {
+                    for (String parent : commit.getParents()) {
+                        if (commits.add(parent)) {
+                            frontier.add(parent);
+                        }
+                    }
+                }
+            }
+            pool.submit(() -> reachable.parallelStream().forEach(this::markContent)).get();
+            List<String> marked = new ArrayList<>(blobs);
+            pool.submit(() -> marked.parallelStream().forEach(this::markStorage)).get();
+        } catch (InterruptedException | ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof GitletException) {
+                throw (GitletException) cause;
+            }
+            throw error("Failed to mark reachable objects.");
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+
+    private Commit readCommit(String id) {
+        Commit commit = Service.readCommit(store, id);
+        if (commit == null) {
+            // 缺少可达的提交时无法确定其祖先是否可达，放弃回收
+            throw error("Missing commit %s.", id);
+        }
+        return commit;
+    }
+
+
+    private void markContent(Commit commit) {
+        if (commit.getTree() == null) {
+            blobs.addAll(commit.getBlobs().values());
+        } else {
+            markTree(commit.getTree());
+        }
+    }
+
+
+    private void markTree(String id) {
+        if (!trees.add(id)) {
+            return;
+        }
+        Tree tree = store.readTree(id);
+        if (tree == null) {
+            throw error("Missing tree %s.", id);
+        }
+        blobs.addAll(tree.getBlobs().values());
+        for (String child : tree.getTrees().values()) {
+            markTree(child);
+        }
+    }
+
+
+    /**
+     * 标记blob存储依赖的对象：增量的基准链和分块存储引用的块
+     */
+    private void markStorage(String id) {
+        chunks.addAll(store.chunkIds(id));
+        String base = store.deltaBase(id);
+        while (base != null && blobs.add(base)) {
+            chunks.addAll(store.chunkIds(base));
+            base = store.deltaBase(base);
+        }
+    }
+
+
+    /**
+     * 找出可以删除的不可达对象
+     * @param expire 修改时间早于该时间（毫秒）的不可达对象可以删除
+     */
+    public void sweep(long expire) {
+        for (ObjectType type : ObjectType.values()) {
+            Set<String> marked = marked(type);
+            Map<String, Long> res = new TreeMap<>();
+            List<String> kept = new ArrayList<>();
+            for (String id : store.listLooseIds(type)) {
+                if (!marked.contains(id)) {
+                    File loose = store.looseFile(type, id);
+                    collect(res, kept, id, loose.lastModified(), loose.length(), expire);
+                }
+            }
+            for (PackFile pack : store.getPacks()) {
+                long mtime = pack.getPackFile().lastModified();
+                for (String id : pack.listIds(type)) {
+                    if (!marked.contains(id) && !res.containsKey(id)) {
+                        collect(res, kept, id, mtime, pack.size(type, id), expire);
+                    }
+                }
+            }
+            if (type == ObjectType.BLOB) {
+                // 块在blob之后处理，保留的blob引用的块此时加入标记
+                for (String id : kept) {
+                    chunks.addAll(store.chunkIds(id));
+                    String base = store.deltaBase(id);
+                    while (base != null && res.remove(base) != null) {
+                        chunks.addAll(store.chunkIds(base));
+                        base = store.deltaBase(base);
+                    }
+                }
+            }
+            for (long size : res.values()) {
+                garbageBytes += size;
+            }
+            garbage.put(type, new TreeSet<>(res.keySet()));
+        }
+        collectTmpFiles(store.getObjectsDir(), expire);
+        collectTmpFiles(join(store.getObjectsDir(), "pack"), expire);
+    }
+
+
+    private void collect(Map<String, Long> res, List<String> kept, String id, long mtime, long size, long expire) {
+        if (mtime >= expire) {
+            recent++;
+            kept.add(id);
+        } else {
+            res.put(id, size);
+        }
+    }
+
+
+    private void collectTmpFiles(File dir, long expire) {
+        List<String> names = plainFilenamesIn(dir);
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            File file = join(dir, name);
+            if (name.startsWith(TMP_PREFIX) && file.lastModified() < expire) {
+                tmpFiles.add(file);
+                garbageBytes += file.length();
+            }
+        }
+    }
+
+
+    /**
+     * 删除 sweep 找出的对象和临时文件
+     */
+    public void remove() {
+        store.remove(garbage);
+        for (File file : tmpFiles) {
+            file.delete();
+        }
+    }
+
+
+    private Set<String> marked(ObjectType type) {
+        return switch (type) {
+            case COMMIT -> commits;
+            case TREE -> trees;
+            case BLOB -> blobs;
+            case CHUNK -> chunks;
+        };
+    }
+
+
+    public int getMarkedCount(ObjectType type) {
+        return marked(type).size();
+    }
+
+    public int getGarbageCount(ObjectType type) {
+        return garbage.getOrDefault(type, Set.of()).size();
+    }
+
+    public int getGarbageCount() {
+        int count = tmpFiles.size();
+        for (Set<String> ids : garbage.values()) {
+            count += ids.size();
+        }
+        return count;
+    }
+
+    public long getGarbageBytes() {
+        return garbageBytes;
+    }
+
+    public int getRecentCount() {
+        return recent;
+    }
+}
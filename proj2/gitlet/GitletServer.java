@@ -0,0 +1,385 @@
+package gitlet;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: 本地传输服务，在回环地址的 TCP 端口上提供仓库的 push/fetch
+ * 每个连接处理一次请求：客户端发送 "GLTP" | 版本(int) | 操作(byte) | 分支名(UTF)，之后
+ * fetch：服务端回复分支头，客户端公布自己的提交过滤器，服务端协商出缺少的提交（可能的命中用 'H' 逐个询问），
+ * 再以 'P' | 长度(long) | bundle 发送对象；
+ * push：服务端回复分支头和自己的提交过滤器，客户端协商后以同样的方式发送对象，服务端写入后比较分支头并更新，回复结果。
+ * 对象写入不加锁（对象不可变，原子地移入对象库），分支、提交图和提交信息索引的读写由读写锁保护，
+ * 因此多个客户端可以同时与同一服务端同步。
+ * @author: Yhltmxh
+ * @create: 2025-07-23 10:12
+ **/
+public class GitletServer {
+
+    static final byte[] MAGIC = {'G', 'L', 'T', 'P'};
+
+    static final int VERSION = 1;
+
+    static final byte OP_FETCH = 'F';
+
+    static final byte OP_PUSH = 'U';
+
+    /**
+     * 询问接收方是否拥有提交
+     */
+    static final byte HAVE = 'H';
+
+    /**
+     * 发送对象
+     */
+    static final byte PACK = 'P';
+
+    /**
+     * 发送方放弃本次传输
+     */
+    static final byte ABORT = 'X';
+
+    static final byte OK = 0;
+
+    static final byte FAILED = 1;
+
+    /**
+     * 传输使用的压缩级别，回环连接上以速度优先
+     */
+    static final int PACK_COMPRESSION = 1;
+
+    /**
+     * 连接的读超时，防止停滞的客户端一直占用工作线程
+     */
+    private static final int SESSION_TIMEOUT = 60 * 1000;
+
+    private final File gitletDir;
+
+    private final File headsDir;
+
+    private final ObjectStore store;
+
+    /**
+     * 保护分支、提交图和提交信息索引
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private ServerSocketChannel server;
+
+    private ExecutorService workers;
+
+    private Thread acceptor;
+
+    public GitletServer(File gitletDir) {
+        this.gitletDir = gitletDir;
+        this.headsDir = join(gitletDir, "refs", "heads");
+        this.store = new ObjectStore(join(gitletDir, "objects"));
+    }
+
+
+    /**
+     * 在回环地址上监听并开始接受连接
+     * @param port 端口，0 表示由系统分配
+     * @param threads 工作线程数
+     * @return 实际监听的端口
+     */
+    public int start(int port, int threads) throws IOException {
+        server = ServerSocketChannel.open();
+        server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "gitlet-server-worker");
+            t.setDaemon(true);
+            return t;
+        });
+        acceptor = new Thread(this::acceptLoop, "gitlet-server-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return ((InetSocketAddress) server.getLocalAddress()).getPort();
+    }
+
+
+    /**
+     * 阻塞直到服务停止
+     */
+    public void await() throws InterruptedException {
+        acceptor.join();
+    }
+
+
+    /**
+     * 停止接受连接，等待正在处理的请求完成
+     */
+    public void stop() {
+        try {
+            server.close();
+            acceptor.join();
+            workers.shutdown();
+            workers.awaitTermination(SESSION_TIMEOUT, TimeUnit.MILLISECONDS);
+        } catch (IOException | InterruptedException e) {
+            workers.shutdownNow();
+        }
+    }
+
+
+    private void acceptLoop() {
+        while (true) {
+            SocketChannel ch;
+            try {
+                ch = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                continue;
+            }
+            workers.execute(() -> handle(ch));
+        }
+    }
+
+
+    /**
+     * 处理一个连接上的请求，出错时关闭连接，不影响其他连接
+     */
+    private void handle(SocketChannel ch) {
+        try (Socket socket = ch.socket()) {
+            socket.setSoTimeout(SESSION_TIMEOUT);
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(), STREAM_BUFFER_SIZE));
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            if (!Arrays.equals(magic, MAGIC) || in.readInt() != VERSION) {
+                return;
+            }
+            byte op = in.readByte();
+            String branch = in.readUTF();
+            // 分支名来自网络，不合法的名字可能指向分支目录之外
+            if (!Service.isValidBranchName(branch)) {
+                return;
+            }
+            if (op == OP_FETCH) {
+                serveFetch(in, out, branch);
+            } else if (op == OP_PUSH) {
+                receivePush(in, out, branch);
+            }
+        } catch (IOException | UncheckedIOException | GitletException e) {
+            // 连接中断或数据错误，放弃本次请求
+        }
+    }
+
+
+    /**
+     * 读取分支头
+     */
+    private String readHead(String branch) {
+        lock.readLock().lock();
+        try {
+            return Refs.read(join(headsDir, branch));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    /**
+     * 读取提交图的快照，提交图的追加由写锁保护
+     */
+    private CommitGraph loadGraph() {
+        lock.readLock().lock();
+        try {
+            return CommitGraph.load(gitletDir);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+
+    private void serveFetch(DataInputStream in, DataOutputStream out, String branch) throws IOException {
+        String head = readHead(branch);
+        writeOptionalId(out, head);
+        out.flush();
+        if (head == null) {
+            return;
+        }
+        BloomFilter theirs = readFilter(in);
+        Negotiator negotiator = new Negotiator(store, loadGraph(), theirs, id -> ask(in, out, id));
+        List<String> missing = negotiator.findMissingCommits(head);
+        sendPack(out, TransferPlan.build(store, null, missing), branch, head);
+    }
+
+
+    private void receivePush(DataInputStream in, DataOutputStream out, String branch) throws IOException {
+        String old = readHead(branch);
+        writeOptionalId(out, old);
+        writeFilter(out, Negotiator.buildFilter(loadGraph()));
+        out.flush();
+        Bundle bundle = receive(in, out, store);
+        if (bundle == null) {
+            return;
+        }
+        String result = update(branch, old, bundle);
+        if (result == null) {
+            out.writeByte(OK);
+        } else {
+            out.writeByte(FAILED);
+            out.writeUTF(result);
+        }
+        out.flush();
+    }
+
+
+    /**
+     * 分支头仍是协商时的提交、且是推送的提交的祖先（快进）时才更新分支，否则说明期间有其他推送或推送方落后
+     * @return 成功：null，失败：错误信息
+     */
+    private String update(String branch, String old, Bundle bundle) {
+        lock.writeLock().lock();
+        try {
+            File file = join(headsDir, branch);
+            String current = Refs.read(file);
+            if (current == null ? old != null : !current.equals(old)) {
+                return "Please pull down remote changes before pushing.";
+            }
+            String head = bundle.getHead();
+            CommitGraph graph = CommitGraph.load(gitletDir);
+            graph.add(store, Service.readCommit(store, head));
+            if (old != null && !old.equals(graph.mergeBase(head, old))) {
+                return "Please pull down remote changes before pushing.";
+            }
+            Service.updateMessageIndex(gitletDir, store, Service.readCommits(store, bundle.getCommitIds()));
+            Service.updateBranch(head, file);
+            return null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+
+    /**
+     * 发送方询问接收方是否拥有提交
+     */
+    static boolean ask(DataInputStream in, DataOutputStream out, String id) {
+        try {
+            out.writeByte(HAVE);
+            out.write(hexToBytes(id));
+            out.flush();
+            return in.readBoolean();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+
+    /**
+     * 接收方回答询问，直到收到对象或发送方放弃
+     * @return 写入的 bundle，发送方放弃时为null
+     */
+    static Bundle receive(DataInputStream in, DataOutputStream out, ObjectStore target) throws IOException {
+        byte[] id = new byte[UID_LENGTH / 2];
+        while (true) {
+            byte op = in.readByte();
+            if (op == HAVE) {
+                in.readFully(id);
+                out.writeBoolean(target.contains(ObjectType.COMMIT, bytesToHex(id)));
+                out.flush();
+            } else if (op == PACK) {
+                return receivePack(in, target);
+            } else if (op == ABORT) {
+                return null;
+            } else {
+                throw error("Unexpected message from remote.");
+            }
+        }
+    }
+
+
+    /**
+     * 将传输计划写成临时 bundle 后发送
+     */
+    static void sendPack(DataOutputStream out, TransferPlan plan, String branch, String head) throws IOException {
+        ObjectStore source = plan.getSource();
+        File tmp = join(source.getObjectsDir(), "tmp-send-" + Thread.currentThread().getId()
+                + "-" + System.nanoTime() + ".bundle");
+        try {
+            Bundle.write(tmp, branch, head, plan, PACK_COMPRESSION);
+            out.writeByte(PACK);
+            out.writeLong(tmp.length());
+            Files.copy(tmp.toPath(), out);
+            out.flush();
+        } finally {
+            tmp.delete();
+        }
+    }
+
+
+    /**
+     * 接收 bundle 到临时文件，校验后写入对象库
+     */
+    private static Bundle receivePack(DataInputStream in, ObjectStore target) throws IOException {
+        long length = in.readLong();
+        File tmp = join(target.getObjectsDir(), "tmp-recv-" + Thread.currentThread().getId()
+                + "-" + System.nanoTime() + ".bundle");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp.toPath())) {
+                byte[] buf = new byte[STREAM_BUFFER_SIZE];
+                long remaining = length;
+                while (remaining > 0) {
+                    int n = in.read(buf, 0, (int) Math.min(buf.length, remaining));
+                    if (n < 0) {
+                        throw new EOFException();
+                    }
+                    os.write(buf, 0, n);
+                    remaining -= n;
+                }
+            }
+            return Bundle.read(tmp, target);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+
+    static void writeOptionalId(DataOutputStream out, String id) throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null) {
+            out.write(hexToBytes(id));
+        }
+    }
+
+
+    static String readOptionalId(DataInputStream in) throws IOException {
+        if (!in.readBoolean()) {
+            return null;
+        }
+        byte[] id = new byte[UID_LENGTH / 2];
+        in.readFully(id);
+        return bytesToHex(id);
+    }
+
+
+    static void writeFilter(DataOutputStream out, BloomFilter filter) throws IOException {
+        out.writeBoolean(filter != null);
+        if (filter != null) {
+            filter.writeTo(out);
+        }
+    }
+
+
+    static BloomFilter readFilter(DataInputStream in) throws IOException {
+        return in.readBoolean() ? BloomFilter.readFrom(in) : null;
+    }
+}
@@ -0,0 +1,325 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Supplier;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: 对象id索引，按前缀解析缩写的id
+ * <pre>
+ * 格式："GOID" | 版本 | 有序部分的id数 | 有序的id(20)* | 追加的id(20)*
+ * </pre>
+ * 查询时内存映射文件，在有序部分二分查找前缀的下界并向后扫描，再线性检查末尾追加的少量id，
+ * 与对象分散在多少个目录、多少个打包文件中无关。新对象只追加到末尾，追加部分过长时整体排序重写。
+ * 追加和重写都先独占创建 索引文件.lock，重写的内容写入锁文件后改名为索引文件，同时释放锁，
+ * 多个进程或线程同时写入对象时不会丢失id。索引只增不减，被删除的对象由调用方核实后排除。
+ * @author: Yhltmxh
+ * @create: 2025-07-29 09:52
+ **/
+public class IdIndex {
+
+    private static final byte[] MAGIC = {'G', 'O', 'I', 'D'};
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER = 12;
+
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /**
+     * 追加部分的长度上限，超过后整体重写
+     */
+    private static final int MAX_TAIL = 1024;
+
+    /**
+     * 等待锁文件的最长时间
+     */
+    private static final long LOCK_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * 锁文件超过该时间未更新时视为进程中途退出遗留，直接删除
+     */
+    private static final long STALE_LOCK_MILLIS = 60 * 1000;
+
+    private final File file;
+
+    private final File lockFile;
+
+    public IdIndex(File file) {
+        this.file = file;
+        this.lockFile = new File(file.getPath() + ".lock");
+    }
+
+
+    /**
+     * 检查文件头，文件不存在、格式不符（包括旧版本的格式）时返回false
+     */
+    public boolean isValid() {
+        if (!file.isFile() || file.length() < HEADER) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            return Arrays.equals(magic, MAGIC) && in.readInt() == VERSION && in.readInt() >= 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * 用给定的id重写索引，id在取得锁之后才读取，期间写入的对象要么已在其中，要么等待锁释放后追加
+     * @param ids 提供对象id
+     * @return 成功：true，锁被占用超时：false
+     */
+    public boolean build(Supplier<Collection<String>> ids) {
+        if (!lock()) {
+            return false;
+        }
+        Collection<String> all;
+        try {
+            all = ids.get();
+        } catch (RuntimeException e) {
+            lockFile.delete();
+            throw e;
+        }
+        writeLocked(all);
+        return true;
+    }
+
+
+    /**
+     * 将id排序后写入锁文件并改名为索引文件，调用前须持有锁，结束时锁已释放
+     */
+    private void writeLocked(Collection<String> ids) {
+        TreeSet<String> sorted = new TreeSet<>(ids);
+        File tmp = lockFile;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp.toPath()), STREAM_BUFFER_SIZE))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(sorted.size());
+            for (String id : sorted) {
+                out.write(hexToBytes(id));
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw error("Failed to write id index.");
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tmp.delete();
+            throw error("Failed to write id index.");
+        }
+    }
+
+
+    /**
+     * 追加新对象的id，索引不存在时跳过（首次查询时再整体生成）
+     * @param id 对象id
+     */
+    public void add(String id) {
+        if (!file.exists() && !lockFile.exists()) {
+            // 没有正在生成的索引，之后生成时会读到该对象
+            return;
+        }
+        if (!lock()) {
+            // 等待超时时删除索引，下次查询时重新生成，避免漏掉新对象
+            file.delete();
+            return;
+        }
+        boolean locked = true;
+        try {
+            if (!isValid()) {
+                return;
+            }
+            int tail;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND)) {
+                channel.write(ByteBuffer.wrap(hexToBytes(id)));
+                tail = tailCount(channel.size(), readSortedCount());
+            } catch (IOException e) {
+                // 无法追加时删除索引，下次查询时重新生成，避免漏掉新对象
+                file.delete();
+                return;
+            }
+            if (tail > MAX_TAIL) {
+                locked = false;
+                writeLocked(readAll());
+            }
+        } finally {
+            if (locked) {
+                lockFile.delete();
+            }
+        }
+    }
+
+
+    /**
+     * 独占创建锁文件，已被占用时等待
+     * @return 取得锁：true，超时：false
+     */
+    private boolean lock() {
+        long deadline = System.currentTimeMillis() + LOCK_TIMEOUT_MILLIS;
+        while (true) {
+            try {
+                Files.createFile(lockFile.toPath());
+                return true;
+            } catch (FileAlreadyExistsException e) {
+                long modified = lockFile.lastModified();
+                if (modified > 0 && System.currentTimeMillis() - modified > STALE_LOCK_MILLIS) {
+                    lockFile.delete();
+                    continue;
+                }
+                if (System.currentTimeMillis() >= deadline) {
+                    return false;
+                }
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            } catch (IOException e) {
+                return false;
+            }
+        }
+    }
+
+
+    /**
+     * 查找以指定前缀开头的id
+     * @param prefix 十六进制前缀（小写）
+     * @return id集合（有序、去重）
+     */
+    public List<String> find(String prefix) {
+        TreeSet<String> res = new TreeSet<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int sorted = checkHeader(buf);
+            int tail = tailCount(channel.size(), sorted);
+            byte[] low = lowerBound(prefix);
+            // 第一个不小于前缀下界的位置
+            int lo = 0;
+            int hi = sorted;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (compareAt(buf, mid, low) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo; i < sorted; i++) {
+                String id = idAt(buf, i);
+                if (!id.startsWith(prefix)) {
+                    break;
+                }
+                res.add(id);
+            }
+            for (int i = sorted; i < sorted + tail; i++) {
+                String id = idAt(buf, i);
+                if (id.startsWith(prefix)) {
+                    res.add(id);
+                }
+            }
+        } catch (IOException e) {
+            throw error("Failed to read id index.");
+        }
+        return new ArrayList<>(res);
+    }
+
+
+    /**
+     * 读取索引中的全部id
+     */
+    private List<String> readAll() {
+        List<String> res = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int count = checkHeader(buf) + tailCount(channel.size(), buf.getInt(8));
+            for (int i = 0; i < count; i++) {
+                res.add(idAt(buf, i));
+            }
+        } catch (IOException e) {
+            throw error("Failed to read id index.");
+        }
+        return res;
+    }
+
+
+    private int readSortedCount() throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+            in.skipNBytes(8);
+            return in.readInt();
+        }
+    }
+
+
+    private static int checkHeader(MappedByteBuffer buf) {
+        if (buf.limit() < HEADER) {
+            throw error("Corrupt id index.");
+        }
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (buf.get(i) != MAGIC[i]) {
+                throw error("Corrupt id index.");
+            }
+        }
+        if (buf.getInt(4) != VERSION) {
+            throw error("Corrupt id index.");
+        }
+        return buf.getInt(8);
+    }
+
+
+    /**
+     * 追加部分完整的id数，忽略写到一半的记录
+     */
+    private static int tailCount(long size, int sorted) {
+        return (int) Math.max(0, (size - HEADER - (long) sorted * ID_BYTES) / ID_BYTES);
+    }
+
+
+    /**
+     * 前缀对应的最小id：奇数长度的前缀在最后半个字节补 0
+     */
+    private static byte[] lowerBound(String prefix) {
+        byte[] res = new byte[ID_BYTES];
+        for (int i = 0; i < prefix.length() && i < UID_LENGTH; i++) {
+            int nibble = Character.digit(prefix.charAt(i), 16);
+            res[i / 2] |= (byte) (i % 2 == 0 ? nibble << 4 : nibble);
+        }
+        return res;
+    }
+
+
+    private static int compareAt(MappedByteBuffer buf, int pos, byte[] key) {
+        int offset = HEADER + pos * ID_BYTES;
+        for (int i = 0; i < ID_BYTES; i++) {
+            int c = Integer.compare(buf.get(offset + i) & 0xff, key[i] & 0xff);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return 0;
+    }
+
+
+    private static String idAt(MappedByteBuffer buf, int pos) {
+        byte[] id = new byte[ID_BYTES];
+        buf.get(HEADER + pos * ID_BYTES, id);
+        return bytesToHex(id);
+    }
+}
@@ -0,0 +1,340 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+import java.util.regex.Pattern;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: 忽略规则匹配器，规则取自工作目录下的 .gitletignore
+ * <pre>
+ * 空行和以 # 开头的行被跳过；以 ! 开头表示重新包含；以 / 结尾只匹配目录；
+ * 含有 / 的规则相对工作目录匹配，否则匹配任意层级下的同名文件或目录；
+ * 一段内支持 * ? [...]，单独的 ** 匹配任意多层目录
+ * </pre>
+ * 所有规则按路径分段编译为一棵前缀树：普通名字的段放在哈希表中直接查找，含通配符的段和 ** 单独存放，
+ * 共同前缀（如 a/b/c 与 a/b/d）只占一条路径。匹配时沿目录逐层推进一组活动节点，每层只检查当前名字，
+ * 与规则总数无关；目录被忽略时其下的内容整体跳过，不再遍历。同一路径命中多条规则时以最后一条为准。
+ * @author: Yhltmxh
+ * @create: 2025-07-29 17:05
+ **/
+public class IgnoreMatcher {
+
+    public static final String IGNORE_FILE = ".gitletignore";
+
+    private static final String GLOBSTAR = "**";
+
+    private static final IgnoreMatcher EMPTY = new IgnoreMatcher();
+
+    private final Node root = new Node();
+
+    private int ruleCount;
+
+    private IgnoreMatcher() {
+    }
+
+
+    /**
+     * 读取工作目录下的忽略规则，没有规则文件时不忽略任何文件
+     * @param workDir 工作目录
+     * @return 匹配器
+     */
+    public static IgnoreMatcher load(File workDir) {
+        File file = join(workDir, IGNORE_FILE);
+        if (!file.isFile()) {
+            return EMPTY;
+        }
+        return compile(Arrays.asList(readContentsAsString(file).split("\r?\n")));
+    }
+
+
+    /**
+     * 编译忽略规则
+     * @param lines 规则文件的各行
+     * @return 匹配器
+     */
+    public static IgnoreMatcher compile(List<String> lines) {
+        IgnoreMatcher res = new IgnoreMatcher();
+        for (String line : lines) {
+            res.addRule(line);
+        }
+        return res;
+    }
+
+
+    private void addRule(String line) {
+        String rule = line.strip();
+        if (rule.isEmpty() || rule.startsWith("#")) {
+            return;
+        }
+        boolean negate = rule.startsWith("!");
+        if (negate) {
+            rule = rule.substring(1);
+        }
+        boolean dirOnly = rule.endsWith("/");
+        while (rule.endsWith("/")) {
+            rule = rule.substring(0, rule.length() - 1);
+        }
+        if (rule.isEmpty()) {
+            return;
+        }
+        // 除末尾外不含 / 的规则匹配任意层级，等价于前面加上 **/
+        boolean anchored = rule.indexOf('/') >= 0;
+        while (rule.startsWith("/")) {
+            rule = rule.substring(1);
+        }
+        Node node = anchored ? root : root.child(GLOBSTAR);
+        for (String segment : rule.split("/+")) {
+            node = node.child(segment);
+        }
+        Rule r = new Rule(ruleCount++, negate);
+        if (dirOnly) {
+            node.dirRule = later(node.dirRule, r);
+        } else {
+            node.rule = later(node.rule, r);
+        }
+    }
+
+
+    /**
+     * 工作目录对应的匹配状态
+     */
+    public State rootState() {
+        return new State(closure(List.of(root)));
+    }
+
+
+    /**
+     * 判断相对工作目录的路径是否被忽略（自身或所在的某一级目录被忽略）
+     * @param relativePath 以 / 分隔的相对路径
+     * @param isDir 是否为目录
+     */
+    public boolean isIgnored(String relativePath, boolean isDir) {
+        State state = rootState();
+        String[] names = relativePath.split("/");
+        for (int i = 0; i < names.length; i++) {
+            boolean dir = i < names.length - 1 || isDir;
+            if (state.isIgnored(names[i], dir)) {
+                return true;
+            }
+            state = state.enter(names[i]);
+        }
+        return false;
+    }
+
+
+    public boolean isEmpty() {
+        return ruleCount == 0;
+    }
+
+
+    /**
+     * 加入 ** 节点本身（匹配零层目录）
+     */
+    private static List<Node> closure(Collection<Node> nodes) {
+        List<Node> res = new ArrayList<>();
+        Set<Node> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<Node> queue = new ArrayDeque<>(nodes);
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            if (seen.add(node)) {
+                res.add(node);
+                if (node.globstar != null) {
+                    queue.add(node.globstar);
+                }
+            }
+        }
+        return res;
+    }
+
+
+    private static Rule later(Rule a, Rule b) {
+        if (a == null) {
+            return b;
+        }
+        if (b == null) {
+            return a;
+        }
+        return a.order > b.order ? a : b;
+    }
+
+
+    /**
+     * 某一层目录下的匹配状态：已匹配完该目录路径的前缀树节点
+     */
+    public static class State {
+
+        private final List<Node> nodes;
+
+        private State(List<Node> nodes) {
+            this.nodes = nodes;
+        }
+
+        /**
+         * 判断该目录下名为 name 的文件或目录是否被忽略
+         */
+        public boolean isIgnored(String name, boolean isDir) {
+            Rule last = null;
+            for (Node node : nodes) {
+                for (Node next : node.step(name)) {
+                    last = later(last, next.rule);
+                    if (isDir) {
+                        last = later(last, next.dirRule);
+                    }
+                }
+            }
+            return last != null && !last.negate;
+        }
+
+        /**
+         * 进入子目录 name 后的状态，没有规则可能匹配时返回空状态
+         */
+        public State enter(String name) {
+            if (nodes.isEmpty()) {
+                return this;
+            }
+            List<Node> next = new ArrayList<>();
+            for (Node node : nodes) {
+                next.addAll(node.step(name));
+            }
+            return new State(closure(next));
+        }
+
+        /**
+         * 是否已不可能有规则匹配其下的路径
+         */
+        public boolean isEmpty() {
+            return nodes.isEmpty();
+        }
+    }
+
+
+    private static class Rule {
+
+        private final int order;
+
+        private final boolean negate;
+
+        Rule(int order, boolean negate) {
+            this.order = order;
+            this.negate = negate;
+        }
+    }
+
+
+    /**
+     * 前缀树节点，一条边对应路径中的一段
+     */
+    private static class Node {
+
+        /**
+         * 不含通配符的段 -> 子节点
+         */
+        private final Map<String, Node> literals = new HashMap<>();
+
+        /**
+         * 含通配符的段对应的子节点
+         */
+        private final List<Node> wildcards = new ArrayList<>();
+
+        /**
+         * ** 段对应的子节点
+         */
+        private Node globstar;
+
+        /**
+         * 到达该节点的段（含通配符时）
+         */
+        private String segment;
+
+        private Pattern pattern;
+
+        private boolean isGlobstar;
+
+        /**
+         * 以该节点结尾的规则
+         */
+        private Rule rule;
+
+        /**
+         * 以该节点结尾的只匹配目录的规则
+         */
+        private Rule dirRule;
+
+        Node child(String segment) {
+            if (segment.equals(GLOBSTAR)) {
+                if (globstar == null) {
+                    globstar = new Node();
+                    globstar.isGlobstar = true;
+                }
+                return globstar;
+            }
+            if (!isWildcard(segment)) {
+                return literals.computeIfAbsent(segment, k -> new Node());
+            }
+            for (Node node : wildcards) {
+                if (node.segment.equals(segment)) {
+                    return node;
+                }
+            }
+            Node node = new Node();
+            node.segment = segment;
+            node.pattern = toRegex(segment);
+            wildcards.add(node);
+            return node;
+        }
+
+        /**
+         * 消耗一段名字后到达的节点，** 节点自身可以继续匹配下一层
+         */
+        List<Node> step(String name) {
+            List<Node> res = new ArrayList<>(1);
+            Node literal = literals.get(name);
+            if (literal != null) {
+                res.add(literal);
+            }
+            for (Node node : wildcards) {
+                if (node.pattern.matcher(name).matches()) {
+                    res.add(node);
+                }
+            }
+            if (isGlobstar) {
+                res.add(this);
+            }
+            return res;
+        }
+    }
+
+
+    private static boolean isWildcard(String segment) {
+        return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('[') >= 0;
+    }
+
+
+    /**
+     * 将一段中的通配符转换为正则表达式
+     */
+    private static Pattern toRegex(String segment) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '*') {
+                sb.append("[^/]*");
+            } else if (c == '?') {
+                sb.append("[^/]");
+            } else if (c == '[' && segment.indexOf(']', i + 1) > i + 1) {
+                int end = segment.indexOf(']', i + 1);
+                String set = segment.substring(i + 1, end);
+                if (set.startsWith("!")) {
+                    set = "^" + set.substring(1);
+                }
+                sb.append('[').append(set.replace("\\", "\\\\")).append(']');
+                i = end;
+            } else {
+                sb.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(sb.toString());
+    }
+}
@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.util.*;
+
+/**
+ * @description: 行级三路合并
+ * 分别计算分裂点到当前分支、分裂点到目标分支的差异，按分裂点中的位置把两侧的差异块排序，
+ * 范围重叠或相接的块归为一组：只有一侧修改的组直接采用该侧的内容，两侧修改且结果相同的组也直接合并，
+ * 两侧修改不同的组才输出冲突标记，标记只包围该组对应的行，组之间未修改的行保持原样。
+ * @author: Yhltmxh
+ * @create: 2025-07-28 10:25
+ **/
+public class LineMerger {
+
+    /**
+     * 合并结果
+     */
+    public static class Result {
+
+        private final String content;
+
+        private final int conflicts;
+
+        Result(String content, int conflicts) {
+            this.content = content;
+            this.conflicts = conflicts;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * 冲突区域的数量，为0表示合并成功
+         */
+        public int getConflicts() {
+            return conflicts;
+        }
+    }
+
+
+    /**
+     * 三路合并
+     * @param base 分裂点的内容（不存在时为空串）
+     * @param current 当前分支的内容
+     * @param target 目标分支的内容
+     * @return 合并结果
+     */
+    public static Result merge(String base, String current, String target) {
+        List<String> baseLines = Diff.splitLines(base);
+        List<String> curLines = Diff.splitLines(current);
+        List<String> tarLines = Diff.splitLines(target);
+        Map<String, Integer> ids = new HashMap<>();
+        int[] o = Diff.intern(baseLines, ids);
+        List<Diff.Hunk> ours = Diff.diff(o, Diff.intern(curLines, ids));
+        List<Diff.Hunk> theirs = Diff.diff(o, Diff.intern(tarLines, ids));
+
+        StringBuilder sb = new StringBuilder(Math.max(current.length(), target.length()));
+        int conflicts = 0;
+        // 分裂点中已输出到的位置
+        int pos = 0;
+        // 两侧的行号与分裂点行号之差（由之前的差异块累积）
+        int curShift = 0;
+        int tarShift = 0;
+        int i = 0;
+        int j = 0;
+        while (i < ours.size() || j < theirs.size()) {
+            // 取起点较小的块开始一组，并不断吸收与之重叠或相接的块
+            int start = Math.min(i < ours.size() ? ours.get(i).getAStart() : Integer.MAX_VALUE,
+                    j < theirs.size() ? theirs.get(j).getAStart() : Integer.MAX_VALUE);
+            int end = start;
+            int i0 = i;
+            int j0 = j;
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                if (i < ours.size() && ours.get(i).getAStart() <= end) {
+                    end = Math.max(end, ours.get(i++).getAEnd());
+                    grown = true;
+                }
+                if (j < theirs.size() && theirs.get(j).getAStart() <= end) {
+                    end = Math.max(end, theirs.get(j++).getAEnd());
+                    grown = true;
+                }
+            }
+            appendLines(sb, baseLines, pos, start);
+            int[] cur = sideRange(ours, i0, i, start, end, curShift);
+            int[] tar = sideRange(theirs, j0, j, start, end, tarShift);
+            if (i == i0) {
+                appendLines(sb, tarLines, tar[0], tar[1]);
+            } else if (j == j0) {
+                appendLines(sb, curLines, cur[0], cur[1]);
+            } else if (sameLines(curLines, cur, tarLines, tar)) {
+                appendLines(sb, curLines, cur[0], cur[1]);
+            } else {
+                conflicts++;
+                sb.append("<<<<<<< HEAD\n");
+                appendSide(sb, curLines, cur);
+                sb.append("=======\n");
+                appendSide(sb, tarLines, tar);
+                sb.append(">>>>>>>\n");
+            }
+            curShift = cur[1] - end;
+            tarShift = tar[1] - end;
+            pos = end;
+        }
+        appendLines(sb, baseLines, pos, baseLines.size());
+        return new Result(sb.toString(), conflicts);
+    }
+
+
+    /**
+     * 计算分裂点中 [start, end) 在一侧对应的行范围
+     * @param hunks 该侧的差异块
+     * @param from 组内第一个块
+     * @param to 组内最后一个块之后
+     * @param shift 组之前该侧行号与分裂点行号之差
+     * @return {起始行, 结束行}
+     */
+    private static int[] sideRange(List<Diff.Hunk> hunks, int from, int to, int start, int end, int shift) {
+        if (from == to) {
+            return new int[]{start + shift, end + shift};
+        }
+        Diff.Hunk first = hunks.get(from);
+        Diff.Hunk last = hunks.get(to - 1);
+        int s = first.getBStart() - (first.getAStart() - start);
+        int e = last.getBEnd() + (end - last.getAEnd());
+        return new int[]{s, e};
+    }
+
+
+    private static boolean sameLines(List<String> a, int[] ra, List<String> b, int[] rb) {
+        if (ra[1] - ra[0] != rb[1] - rb[0]) {
+            return false;
+        }
+        for (int k = 0; k < ra[1] - ra[0]; k++) {
+            if (!a.get(ra[0] + k).equals(b.get(rb[0] + k))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static void appendLines(StringBuilder sb, List<String> lines, int from, int to) {
+        for (int k = from; k < to; k++) {
+            sb.append(lines.get(k));
+        }
+    }
+
+
+    /**
+     * 输出冲突中一侧的内容，末行没有换行符时补上，保证标记独占一行
+     */
+    private static void appendSide(StringBuilder sb, List<String> lines, int[] range) {
+        appendLines(sb, lines, range[0], range[1]);
+        if (range[1] > range[0] && !lines.get(range[1] - 1).endsWith("\n")) {
+            sb.append('\n');
+        }
+    }
+}
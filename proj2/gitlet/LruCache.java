@@ -0,0 +1,154 @@
+package gitlet;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * @description: 按估算大小限制容量的 LRU 缓存，记录命中与未命中次数
+ * 每个条目按放入时估算的大小计入总量，移除时减去同一数值；值在缓存中变大时由调用方通过 reweigh 重新计量
+ * @author: Yhltmxh
+ * @create: 2025-07-18 09:47
+ **/
+public class LruCache<K, V> {
+
+    /**
+     * 按访问顺序排列的条目，最久未使用的在最前
+     */
+    private final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * 各条目计入总量的大小
+     */
+    private final Map<K, Long> weights = new HashMap<>();
+
+    /**
+     * 条目大小的估算函数
+     */
+    private final ToLongFunction<V> weigher;
+
+    private final long maxWeight;
+
+    private long weight;
+
+    private long hits;
+
+    private long misses;
+
+    public LruCache(long maxWeight, ToLongFunction<V> weigher) {
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+
+    /**
+     * 获取缓存的值
+     * @param key 键
+     * @return 命中：值，未命中：null
+     */
+    public synchronized V get(K key) {
+        V value = map.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+
+
+    /**
+     * 放入缓存，超出容量时淘汰最久未使用的条目；单个条目超过总容量时不缓存
+     * @param key 键
+     * @param value 值
+     */
+    public synchronized void put(K key, V value) {
+        long w = weigher.applyAsLong(value);
+        if (w > maxWeight) {
+            remove(key);
+            return;
+        }
+        map.put(key, value);
+        charge(key, w);
+        evict();
+    }
+
+
+    /**
+     * 按值当前的大小重新计量条目，值在放入缓存后变大时调用
+     * @param key 键
+     * @param value 值，与缓存中的不是同一对象时忽略
+     */
+    public synchronized void reweigh(K key, V value) {
+        if (!weights.containsKey(key) || map.get(key) != value) {
+            return;
+        }
+        long w = weigher.applyAsLong(value);
+        if (w > maxWeight) {
+            remove(key);
+            return;
+        }
+        charge(key, w);
+        evict();
+    }
+
+
+    /**
+     * 移除缓存条目
+     * @param key 键
+     */
+    public synchronized void remove(K key) {
+        if (map.remove(key) != null) {
+            weight -= weights.remove(key);
+        }
+    }
+
+    private void charge(K key, long w) {
+        Long old = weights.put(key, w);
+        if (old != null) {
+            weight -= old;
+        }
+        weight += w;
+    }
+
+    /**
+     * 超出容量时淘汰最久未使用的条目
+     */
+    private void evict() {
+        Iterator<Map.Entry<K, V>> it = map.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            Map.Entry<K, V> eldest = it.next();
+            weight -= weights.remove(eldest.getKey());
+            it.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        weights.clear();
+        weight = 0;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long getWeight() {
+        return weight;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("entries=%d weight=%d hits=%d misses=%d", map.size(), weight, hits, misses);
+    }
+}
@@ -8,14 +8,23 @@ import static gitlet.Repository.*;
  */
 public class Main {
     public static void main(String[] args) {
+        // 当前仓库有常驻进程时转发给它执行
+        int code = Daemon.forward(args);
+        if (code >= 0) {
+            System.exit(code);
+        }
+        run(args);
+    }
+
+    public static void run(String[] args) {
         switch (argsCheck(args)) {
             case INIT -> doInit();
             case ADD -> doAdd(args[1]);
             case COMMIT -> doCommit(args[1]);
             case REMOVE -> doRemove(args[1]);
-            case LOG -> doLog();
+            case LOG -> doLog(args);
             case GLOBAL_LOG -> doGlobalLog();
-            case FIND -> doFind(args[1]);
+            case FIND -> doFind(args);
             case STATUS -> doStatus();
             case CHECKOUT -> doCheckout(args);
             case BRANCH -> doBranch(args[1]);
@@ -27,6 +36,20 @@ public class Main {
             case PUSH -> doPush(args[1], args[2]);
             case FETCH -> doFetch(args[1], args[2]);
             case PULL -> doPull(args[1], args[2]);
+            case REPACK -> doRepack();
+            case COMMIT_GRAPH -> doCommitGraph(args[1]);
+            case CONFIG -> doConfig(args);
+            case MIGRATE -> doMigrate();
+            case BUNDLE -> doBundle(args);
+            case SERVE -> doServe(args[1]);
+            case DAEMON -> doDaemon(args[1]);
+            case GC -> doGc(args);
+            case COUNT_OBJECTS -> doCountObjects();
+            case DIFF -> doDiff(args);
+            case PACK_REFS -> doPackRefs();
+        }
+        if (System.getProperty("gitlet.cacheStats") != null) {
+            Service.printCacheStats();
         }
     }
 }
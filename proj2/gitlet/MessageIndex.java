@@ -0,0 +1,319 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: 提交信息索引，find 命令无需反序列化每个提交即可按信息查找
+ * <pre>
+ * 格式："GMSG" | 版本 | 有序部分的记录数 | 追加部分的起始偏移(long) | (信息哈希(long) | 记录偏移(long))* | 记录*
+ * 记录：提交id(20) | 信息长度(int) | 信息(UTF-8)
+ * </pre>
+ * 有序部分的哈希表按信息哈希排序，按完整信息查找时内存映射文件二分查找哈希，再核对记录并扫描末尾追加的少量记录，
+ * 与历史长度无关。提交时只把新记录追加到文件末尾，不读取已有内容；追加部分超过一定大小时整体重写。
+ * 按内容查找时顺序扫描所有记录。文件缺失、格式不符（包括旧版本的序列化格式）时根据对象库中的所有提交重建。
+ * @author: Yhltmxh
+ * @create: 2025-07-16 11:03
+ **/
+public class MessageIndex {
+
+    private static final byte[] MAGIC = {'G', 'M', 'S', 'G'};
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER = 20;
+
+    private static final int TABLE_ENTRY = 16;
+
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    /**
+     * 追加部分的字节数上限，超过后整体重写
+     */
+    private static final long MAX_TAIL_BYTES = 64 * 1024;
+
+    private final File file;
+
+    private MessageIndex(File file) {
+        this.file = file;
+    }
+
+
+    /**
+     * 加载索引，文件不存在或无法识别时根据对象库中的所有提交重建
+     * @param indexFile 索引文件
+     * @param store 对象库
+     * @return 索引对象
+     */
+    public static MessageIndex load(File indexFile, ObjectStore store) {
+        MessageIndex index = new MessageIndex(indexFile);
+        if (!index.isValid()) {
+            Map<String, String> entries = new LinkedHashMap<>();
+            for (String id : store.listIds(ObjectType.COMMIT)) {
+                Commit commit = Service.readCommit(store, id);
+                entries.put(commit.getId(), commit.getMessage());
+            }
+            index.build(entries);
+        }
+        return index;
+    }
+
+
+    /**
+     * 追加提交，不读取已有的记录
+     * @param commits 新增的提交
+     */
+    public void add(Collection<Commit> commits) {
+        if (commits.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (Commit commit : commits) {
+                writeRecord(out, commit.getId(), commit.getMessage());
+            }
+        } catch (IOException e) {
+            throw error("Failed to write message index.");
+        }
+        long size;
+        long tailStart;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(bytes.toByteArray()));
+            size = channel.size();
+            tailStart = readTailStart();
+        } catch (IOException e) {
+            // 无法追加时删除索引，下次查找时重建，避免漏掉新提交
+            file.delete();
+            return;
+        }
+        if (size - tailStart > MAX_TAIL_BYTES) {
+            build(readAll());
+        }
+    }
+
+
+    /**
+     * 按完整提交信息查找
+     * @param message 提交信息
+     * @return 提交id集合（有序）
+     */
+    public List<String> find(String message) {
+        TreeSet<String> res = new TreeSet<>();
+        byte[] key = message.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(message);
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int sorted = buf.getInt(8);
+            int tailStart = (int) buf.getLong(12);
+            // 第一个哈希不小于 hash 的表项
+            int lo = 0;
+            int hi = sorted;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (Long.compare(buf.getLong(HEADER + mid * TABLE_ENTRY), hash) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            for (int i = lo; i < sorted && buf.getLong(HEADER + i * TABLE_ENTRY) == hash; i++) {
+                int offset = (int) buf.getLong(HEADER + i * TABLE_ENTRY + 8);
+                if (messageEquals(buf, offset, key)) {
+                    res.add(idAt(buf, offset));
+                }
+            }
+            for (int pos = tailStart; isComplete(buf, pos); pos = nextRecord(buf, pos)) {
+                if (messageEquals(buf, pos, key)) {
+                    res.add(idAt(buf, pos));
+                }
+            }
+        } catch (IOException e) {
+            throw error("Failed to read message index.");
+        }
+        return new ArrayList<>(res);
+    }
+
+
+    /**
+     * 查找信息中包含给定内容的提交（忽略大小写），顺序扫描所有记录
+     * @param word 要查找的内容
+     * @return 提交id集合（有序）
+     */
+    public List<String> findContaining(String word) {
+        String key = word.toLowerCase(Locale.ROOT);
+        TreeSet<String> res = new TreeSet<>();
+        for (Map.Entry<String, String> e : readAll().entrySet()) {
+            if (e.getValue().toLowerCase(Locale.ROOT).contains(key)) {
+                res.add(e.getKey());
+            }
+        }
+        return new ArrayList<>(res);
+    }
+
+
+    /**
+     * 用给定的记录重写索引
+     * @param entries 提交id -> 提交信息
+     */
+    private void build(Map<String, String> entries) {
+        List<Map.Entry<String, String>> sorted = new ArrayList<>(entries.entrySet());
+        long[] hashes = new long[sorted.size()];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = hash(sorted.get(i).getValue());
+        }
+        Integer[] order = new Integer[hashes.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(hashes[a], hashes[b]));
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        long[] offsets = new long[hashes.length];
+        long recordsStart = HEADER + (long) hashes.length * TABLE_ENTRY;
+        File tmp = new File(file.getPath() + ".lock");
+        try (DataOutputStream out = new DataOutputStream(records)) {
+            for (int i = 0; i < order.length; i++) {
+                Map.Entry<String, String> e = sorted.get(order[i]);
+                offsets[i] = recordsStart + out.size();
+                writeRecord(out, e.getKey(), e.getValue());
+            }
+        } catch (IOException e) {
+            throw error("Failed to write message index.");
+        }
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(tmp.toPath()), STREAM_BUFFER_SIZE))) {
+            out.write(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(order.length);
+            out.writeLong(recordsStart + records.size());
+            for (int i = 0; i < order.length; i++) {
+                out.writeLong(hashes[order[i]]);
+                out.writeLong(offsets[i]);
+            }
+            records.writeTo(out);
+        } catch (IOException e) {
+            tmp.delete();
+            throw error("Failed to write message index.");
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tmp.delete();
+            throw error("Failed to write message index.");
+        }
+    }
+
+
+    /**
+     * 读取全部记录（有序部分和追加部分），同一提交只保留一条
+     */
+    private Map<String, String> readAll() {
+        Map<String, String> res = new LinkedHashMap<>();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int pos = HEADER + buf.getInt(8) * TABLE_ENTRY;
+            for (; isComplete(buf, pos); pos = nextRecord(buf, pos)) {
+                res.put(idAt(buf, pos), messageAt(buf, pos));
+            }
+        } catch (IOException e) {
+            throw error("Failed to read message index.");
+        }
+        return res;
+    }
+
+
+    private long readTailStart() throws IOException {
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+            in.skipNBytes(12);
+            return in.readLong();
+        }
+    }
+
+
+    /**
+     * 检查文件头，文件不存在、格式不符或被截断时返回false
+     */
+    private boolean isValid() {
+        if (!file.isFile() || file.length() < HEADER) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(Files.newInputStream(file.toPath()))) {
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            int version = in.readInt();
+            int sorted = in.readInt();
+            long tailStart = in.readLong();
+            return Arrays.equals(magic, MAGIC) && version == VERSION && sorted >= 0
+                    && tailStart >= HEADER + (long) sorted * TABLE_ENTRY && tailStart <= file.length();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+
+    private static void writeRecord(DataOutputStream out, String id, String message) throws IOException {
+        byte[] bytes = message.getBytes(StandardCharsets.UTF_8);
+        out.write(hexToBytes(id));
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+
+    /**
+     * pos 处是否有一条完整的记录，忽略写到一半的记录
+     */
+    private static boolean isComplete(MappedByteBuffer buf, int pos) {
+        return pos + ID_BYTES + 4 <= buf.limit() && pos + ID_BYTES + 4 + buf.getInt(pos + ID_BYTES) <= buf.limit();
+    }
+
+
+    private static int nextRecord(MappedByteBuffer buf, int pos) {
+        return pos + ID_BYTES + 4 + buf.getInt(pos + ID_BYTES);
+    }
+
+
+    private static String idAt(MappedByteBuffer buf, int pos) {
+        byte[] id = new byte[ID_BYTES];
+        buf.get(pos, id);
+        return bytesToHex(id);
+    }
+
+
+    private static String messageAt(MappedByteBuffer buf, int pos) {
+        byte[] bytes = new byte[buf.getInt(pos + ID_BYTES)];
+        buf.get(pos + ID_BYTES + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+
+    private static boolean messageEquals(MappedByteBuffer buf, int pos, byte[] key) {
+        if (buf.getInt(pos + ID_BYTES) != key.length) {
+            return false;
+        }
+        int start = pos + ID_BYTES + 4;
+        for (int i = 0; i < key.length; i++) {
+            if (buf.get(start + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * 信息哈希：取信息SHA-1的前 64 位
+     */
+    private static long hash(String message) {
+        return Long.parseUnsignedLong(sha1(message).substring(0, 16), 16);
+    }
+}
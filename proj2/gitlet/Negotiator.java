@@ -0,0 +1,144 @@
+package gitlet;
+
+import java.util.*;
+
+/**
+ * @description: push/fetch 传输前的协商，找出接收方缺少的提交
+ * 接收方用布隆过滤器公布自己拥有的提交id（取自其提交图），发送方从要发送的提交开始向祖先遍历，
+ * 过滤器判断为不存在的提交一定缺失，判断为存在的再精确确认；接收方拥有的提交连同其所有祖先都不再遍历，
+ * 因此重复推送基本同步的分支只需检查少量提交。
+ * @author: Yhltmxh
+ * @create: 2025-07-21 14:18
+ **/
+public class Negotiator {
+
+    private final ObjectStore source;
+
+    private final CommitGraph sourceGraph;
+
+    /**
+     * 精确确认接收方是否拥有提交，可以查询本地对象库，也可以经由网络询问接收方
+     */
+    public interface Receiver {
+        boolean has(String commitId);
+    }
+
+    /**
+     * 接收方，未知时为null
+     */
+    private final Receiver receiver;
+
+    /**
+     * 接收方拥有的提交，接收方没有提交图时为null，此时逐个精确确认
+     */
+    private final BloomFilter theirs;
+
+    /**
+     * 接收方未知（如生成 bundle）时，所有提交都视为缺失
+     * @param source 源对象库
+     * @param sourceGraph 源提交图
+     */
+    public Negotiator(ObjectStore source, CommitGraph sourceGraph) {
+        this(source, sourceGraph, null, (Receiver) null);
+    }
+
+    public Negotiator(ObjectStore source, CommitGraph sourceGraph,
+                      ObjectStore target, CommitGraph targetGraph) {
+        this(source, sourceGraph, buildFilter(targetGraph), id -> target.contains(ObjectType.COMMIT, id));
+    }
+
+    /**
+     * @param source 源对象库
+     * @param sourceGraph 源提交图
+     * @param theirs 接收方公布的过滤器，可以为null
+     * @param receiver 接收方
+     */
+    public Negotiator(ObjectStore source, CommitGraph sourceGraph, BloomFilter theirs, Receiver receiver) {
+        this.source = source;
+        this.sourceGraph = sourceGraph;
+        this.theirs = theirs;
+        this.receiver = receiver;
+    }
+
+
+    /**
+     * 用提交图中的全部提交id生成过滤器
+     * @param graph 提交图
+     * @return 过滤器，提交图为空时为null
+     */
+    public static BloomFilter buildFilter(CommitGraph graph) {
+        if (graph.size() == 0) {
+            return null;
+        }
+        BloomFilter filter = new BloomFilter(graph.size());
+        for (int i = 0; i < graph.size(); i++) {
+            filter.add(graph.idAt(i));
+        }
+        return filter;
+    }
+
+
+    /**
+     * 判断接收方是否拥有提交
+     * @param id 提交id
+     * @return true：拥有，false：缺少
+     */
+    public boolean theyHave(String id) {
+        if (receiver == null) {
+            return false;
+        }
+        if (theirs != null && !theirs.mightContain(id)) {
+            return false;
+        }
+        return receiver.has(id);
+    }
+
+
+    /**
+     * 获取父提交id，优先使用提交图
+     */
+    private List<String> parentsOf(String id) {
+        int pos = sourceGraph.indexOf(id);
+        if (pos < 0) {
+            return Service.readCommit(source, id).getParents();
+        }
+        List<String> res = new ArrayList<>();
+        for (int p : sourceGraph.parentsOf(pos)) {
+            res.add(sourceGraph.idAt(p));
+        }
+        return res;
+    }
+
+
+    /**
+     * 找出接收方缺少的提交
+     * @param want 要发送的提交id
+     * @return 缺少的提交id，父提交先于子提交
+     */
+    public List<String> findMissingCommits(String want) {
+        List<String> res = new ArrayList<>();
+        if (theyHave(want)) {
+            return res;
+        }
+        // 迭代后序遍历，保证父提交先于子提交写入，传输中断时接收方拥有的提交总是完整的
+        Set<String> visited = new HashSet<>();
+        Set<String> expanded = new HashSet<>();
+        Deque<String> stack = new ArrayDeque<>();
+        visited.add(want);
+        stack.push(want);
+        while (!stack.isEmpty()) {
+            String id = stack.peek();
+            if (expanded.add(id)) {
+                for (String parent : parentsOf(id)) {
+                    if (visited.add(parent) && !theyHave(parent)) {
+                        stack.push(parent);
+                    }
+                }
+            } else {
+                stack.pop();
+                res.add(id);
+            }
+        }
+        return res;
+    }
+}
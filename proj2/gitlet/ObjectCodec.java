@@ -0,0 +1,349 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: 提交、暂存区和树的紧凑二进制编码
+ * 格式：'G' | 类型（'C'：提交，'S'：暂存区，'T'：树） | 版本号(varint) | 正文。
+ * 正文中的整数使用 varint，字符串为 varint 长度 + UTF-8 字节，对象id直接存 20 字节；
+ * 有序映射的路径只存与上一个路径不同的后缀（公共前缀长度 + 后缀），绝对路径大量重复时体积明显更小。
+ * 提交从版本 2 起只记录根树的id，版本 1 的提交记录完整的文件索引，两者都可读取。
+ * Java 序列化的数据以 0xACED 开头，解码时据此兼容旧格式。
+ * @author: Yhltmxh
+ * @create: 2025-07-19 10:15
+ **/
+public class ObjectCodec {
+
+    private static final byte MAGIC = 'G';
+
+    private static final byte COMMIT = 'C';
+
+    private static final byte STAGE = 'S';
+
+    private static final byte TREE = 'T';
+
+    private static final int COMMIT_VERSION = 2;
+
+    private static final int STAGE_VERSION = 1;
+
+    private static final int TREE_VERSION = 1;
+
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+
+    /**
+     * 判断数据是否为 Java 序列化格式
+     * @param data 数据
+     * @return true：Java 序列化，false：其他
+     */
+    public static boolean isJavaSerialized(byte[] data) {
+        return data.length >= 2 && (data[0] & 0xff) == 0xac && (data[1] & 0xff) == 0xed;
+    }
+
+
+    /**
+     * 编码提交对象
+     * @param commit 提交对象
+     * @return 编码后的数据
+     */
+    public static byte[] encodeCommit(Commit commit) {
+        if (commit.getTree() == null) {
+            throw error("Commit %s has no tree.", commit.getId());
+        }
+        Output out = new Output(COMMIT, COMMIT_VERSION);
+        out.writeId(commit.getId());
+        out.writeString(commit.getMessage());
+        out.writeVarLong(commit.getCreateTime().getTime());
+        out.writeVarLong(commit.getParents().size());
+        for (String parent : commit.getParents()) {
+            out.writeId(parent);
+        }
+        out.writeId(commit.getTree());
+        return out.toByteArray();
+    }
+
+
+    /**
+     * 解码提交对象，兼容 Java 序列化格式
+     * @param data 数据
+     * @return 提交对象
+     */
+    public static Commit decodeCommit(byte[] data) {
+        if (isJavaSerialized(data)) {
+            return deserialize(data, Commit.class);
+        }
+        Input in = new Input(data, COMMIT, COMMIT_VERSION);
+        Commit commit = new Commit();
+        commit.setId(in.readId());
+        commit.setMessage(in.readString());
+        commit.setCreateTime(new Date(in.readVarLong()));
+        int n = in.readCount();
+        List<String> parents = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            parents.add(in.readId());
+        }
+        commit.setParents(parents);
+        if (in.version == 1) {
+            commit.setBlobs(in.readIdMap());
+        } else {
+            commit.setTree(in.readId());
+        }
+        return commit;
+    }
+
+
+    /**
+     * 判断提交是否需要转换为当前格式
+     * @param data 数据
+     * @return true：需要，false：不需要
+     */
+    public static boolean isOutdatedCommit(byte[] data) {
+        return isJavaSerialized(data) || new Input(data, COMMIT, COMMIT_VERSION).version < COMMIT_VERSION;
+    }
+
+
+    /**
+     * 编码暂存区对象
+     * @param stage 暂存区对象
+     * @return 编码后的数据
+     */
+    public static byte[] encodeStage(Stage stage) {
+        Output out = new Output(STAGE, STAGE_VERSION);
+        out.writeIdMap(stage.getAddStage());
+        out.writeIdMap(stage.getRemoveStage());
+        Map<String, FileStat> fileStats = stage.getFileStats();
+        out.writeVarLong(fileStats.size());
+        String prev = "";
+        for (Map.Entry<String, FileStat> e : fileStats.entrySet()) {
+            prev = out.writePath(prev, e.getKey());
+            FileStat stat = e.getValue();
+            out.writeVarLong(stat.getMtime());
+            out.writeVarLong(stat.getSize());
+            out.writeString(stat.getFileKey());
+            out.writeId(stat.getBlobId());
+        }
+        return out.toByteArray();
+    }
+
+
+    /**
+     * 解码暂存区对象，兼容 Java 序列化格式
+     * @param data 数据
+     * @return 暂存区对象
+     */
+    public static Stage decodeStage(byte[] data) {
+        if (isJavaSerialized(data)) {
+            return deserialize(data, Stage.class);
+        }
+        Input in = new Input(data, STAGE, STAGE_VERSION);
+        Stage stage = new Stage(in.readIdMap(), in.readIdMap());
+        Map<String, FileStat> fileStats = stage.getFileStats();
+        int n = in.readCount();
+        String prev = "";
+        for (int i = 0; i < n; i++) {
+            prev = in.readPath(prev);
+            long mtime = in.readVarLong();
+            long size = in.readVarLong();
+            String fileKey = in.readString();
+            fileStats.put(prev, new FileStat(mtime, size, fileKey, in.readId()));
+        }
+        return stage;
+    }
+
+
+    /**
+     * 编码树对象，条目按名称排序，相同内容的目录编码结果相同
+     * @param tree 树对象
+     * @return 编码后的数据
+     */
+    public static byte[] encodeTree(Tree tree) {
+        Output out = new Output(TREE, TREE_VERSION);
+        out.writeNameMap(tree.getBlobs());
+        out.writeNameMap(tree.getTrees());
+        return out.toByteArray();
+    }
+
+
+    /**
+     * 解码树对象
+     * @param data 数据
+     * @return 树对象
+     */
+    public static Tree decodeTree(byte[] data) {
+        Input in = new Input(data, TREE, TREE_VERSION);
+        return new Tree(in.readNameMap(), in.readNameMap());
+    }
+
+
+    /**
+     * 编码输出缓冲区
+     */
+    private static class Output {
+
+        private final ByteArrayOutputStream buf = new ByteArrayOutputStream(256);
+
+        Output(byte type, int version) {
+            buf.write(MAGIC);
+            buf.write(type);
+            writeVarLong(version);
+        }
+
+        void writeVarLong(long v) {
+            while ((v & ~0x7fL) != 0) {
+                buf.write((int) ((v & 0x7f) | 0x80));
+                v >>>= 7;
+            }
+            buf.write((int) v);
+        }
+
+        void writeBytes(byte[] bytes) {
+            buf.write(bytes, 0, bytes.length);
+        }
+
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarLong(bytes.length);
+            writeBytes(bytes);
+        }
+
+        void writeId(String id) {
+            writeBytes(hexToBytes(id));
+        }
+
+        /**
+         * 写入路径：与上一个路径的公共前缀长度 + 剩余后缀
+         * @return 当前路径
+         */
+        String writePath(String prev, String path) {
+            int common = 0;
+            int max = Math.min(prev.length(), path.length());
+            while (common < max && prev.charAt(common) == path.charAt(common)) {
+                common++;
+            }
+            writeVarLong(common);
+            writeString(path.substring(common));
+            return path;
+        }
+
+        void writeIdMap(Map<String, String> map) {
+            writeVarLong(map.size());
+            String prev = "";
+            for (Map.Entry<String, String> e : new TreeMap<>(map).entrySet()) {
+                prev = writePath(prev, e.getKey());
+                writeId(e.getValue());
+            }
+        }
+
+        void writeNameMap(Map<String, String> map) {
+            writeVarLong(map.size());
+            for (Map.Entry<String, String> e : new TreeMap<>(map).entrySet()) {
+                writeString(e.getKey());
+                writeId(e.getValue());
+            }
+        }
+
+        byte[] toByteArray() {
+            return buf.toByteArray();
+        }
+    }
+
+
+    /**
+     * 解码输入缓冲区
+     */
+    private static class Input {
+
+        private final byte[] data;
+
+        private int pos;
+
+        private final long version;
+
+        Input(byte[] data, byte type, int maxVersion) {
+            this.data = data;
+            if (data.length < 3 || data[0] != MAGIC || data[1] != type) {
+                throw error("Unknown object format.");
+            }
+            pos = 2;
+            version = readVarLong();
+            if (version < 1 || version > maxVersion) {
+                throw error("Unsupported object format version %d.", version);
+            }
+        }
+
+        private void need(int n) {
+            if (n < 0 || pos + n > data.length) {
+                throw error("Truncated object.");
+            }
+        }
+
+        long readVarLong() {
+            long v = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                need(1);
+                byte b = data[pos++];
+                v |= (long) (b & 0x7f) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+            throw error("Malformed varint.");
+        }
+
+        int readCount() {
+            long n = readVarLong();
+            if (n < 0 || n > data.length) {
+                throw error("Malformed object.");
+            }
+            return (int) n;
+        }
+
+        String readString() {
+            int n = readCount();
+            need(n);
+            String s = new String(data, pos, n, StandardCharsets.UTF_8);
+            pos += n;
+            return s;
+        }
+
+        String readId() {
+            need(ID_BYTES);
+            String id = bytesToHex(Arrays.copyOfRange(data, pos, pos + ID_BYTES));
+            pos += ID_BYTES;
+            return id;
+        }
+
+        String readPath(String prev) {
+            int common = readCount();
+            if (common > prev.length()) {
+                throw error("Malformed object.");
+            }
+            return prev.substring(0, common) + readString();
+        }
+
+        Map<String, String> readNameMap() {
+            int n = readCount();
+            Map<String, String> map = new TreeMap<>();
+            for (int i = 0; i < n; i++) {
+                String name = readString();
+                map.put(name, readId());
+            }
+            return map;
+        }
+
+        Map<String, String> readIdMap() {
+            int n = readCount();
+            Map<String, String> map = new TreeMap<>();
+            String prev = "";
+            for (int i = 0; i < n; i++) {
+                prev = readPath(prev);
+                map.put(prev, readId());
+            }
+            return map;
+        }
+    }
+}
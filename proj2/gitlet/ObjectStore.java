@@ -0,0 +1,1528 @@
+package gitlet;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: 对象库，统一管理松散对象与打包对象的读写
+ * 读取时先通过打包索引查找，找不到再回退到松散对象；写入总是先写成松散对象，由 repack 命令合并进打包文件。
+ * 对象不可变，反序列化后的提交、树和blob的元数据（长度）缓存在进程内的 LRU 缓存中，缓存的对象不得修改。
+ * blob 可以存储为对另一个blob的增量（见 {@link Delta}），读取时透明地重建，最近用作基准的内容单独缓存。
+ * 配置项 core.compression 大于 0 时新写入的松散对象经 Deflate 压缩（见 {@link Compression}），压缩与未压缩的对象可以共存。
+ * 不小于 core.chunkThreshold 的blob按内容切分为块（见 {@link Chunker}），blob 只保存块清单，检出时依次流式写出各块。
+ * blob 和块以格式标记开头（见 {@link StoredFormat}），存储方式由标记决定，不按内容开头的字节猜测。
+ * @author: Yhltmxh
+ * @create: 2025-07-02 14:26
+ **/
+public class ObjectStore {
+
+    /**
+     * objects 目录
+     */
+    private final File objectsDir;
+
+    /**
+     * 打包文件目录
+     */
+    private final File packDir;
+
+    /**
+     * 已加载的打包文件，首次使用时加载
+     */
+    private List<PackFile> packs;
+
+    /**
+     * 提交缓存的容量（按估算的堆内存占用计算）
+     */
+    private static final long COMMIT_CACHE_WEIGHT = 16 * 1024 * 1024;
+
+    /**
+     * blob元数据缓存的条目数上限
+     */
+    private static final long BLOB_CACHE_ENTRIES = 64 * 1024;
+
+    /**
+     * 提交id -> 提交对象
+     */
+    private final LruCache<String, Commit> commitCache =
+            new LruCache<>(COMMIT_CACHE_WEIGHT, ObjectStore::estimateWeight);
+
+    /**
+     * 树缓存的条目数上限（按树中的条目数计算）
+     */
+    private static final long TREE_CACHE_ENTRIES = 256 * 1024;
+
+    /**
+     * 树id -> 树对象
+     */
+    private final LruCache<String, Tree> treeCache = new LruCache<>(TREE_CACHE_ENTRIES, t -> 1 + t.size());
+
+    /**
+     * blob id -> blob长度，只缓存存在的blob
+     */
+    private final LruCache<String, Long> blobCache = new LruCache<>(BLOB_CACHE_ENTRIES, size -> 1);
+
+    /**
+     * 增量基准缓存的容量（字节）
+     */
+    private static final long DELTA_BASE_CACHE_BYTES = 32 * 1024 * 1024;
+
+    /**
+     * blob id -> 重建后的内容，同一基准上的多个增量只需重建一次基准
+     */
+    private final LruCache<String, byte[]> deltaBaseCache =
+            new LruCache<>(DELTA_BASE_CACHE_BYTES, data -> data.length);
+
+    /**
+     * 小于该长度的blob不做增量
+     */
+    private static final long DELTA_MIN_SIZE = 512;
+
+    /**
+     * 生成增量需要将新旧版本读入内存，大于该长度的blob不做增量
+     */
+    private static final long DELTA_MAX_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * 所属仓库的配置，首次写入时读取
+     */
+    private Config config;
+
+    /**
+     * 提交id索引，用于解析缩写的提交id
+     */
+    private final IdIndex commitIndex;
+
+    public ObjectStore(File objectsDir) {
+        this.objectsDir = objectsDir;
+        this.packDir = join(objectsDir, "pack");
+        this.commitIndex = new IdIndex(join(objectsDir, "commits.idx"));
+    }
+
+    public LruCache<String, Commit> getCommitCache() {
+        return commitCache;
+    }
+
+    public LruCache<String, Long> getBlobCache() {
+        return blobCache;
+    }
+
+    public LruCache<String, byte[]> getDeltaBaseCache() {
+        return deltaBaseCache;
+    }
+
+    public File getObjectsDir() {
+        return objectsDir;
+    }
+
+    private Config getConfig() {
+        if (config == null) {
+            File file = join(objectsDir.getParentFile(), "config");
+            config = file.exists() ? readObject(file, Config.class) : new Config(new TreeMap<>());
+        }
+        return config;
+    }
+
+
+    /**
+     * 配置修改后重新读取
+     */
+    public void reloadConfig() {
+        config = null;
+    }
+
+
+    /**
+     * 获取松散对象的压缩级别，取自所属仓库的配置项core.compression，默认不压缩
+     * @return 压缩级别（0-9）
+     */
+    public int getCompression() {
+        return getConfig().getInt(Config.COMPRESSION, 0);
+    }
+
+
+    /**
+     * 判断给定长度的blob是否按内容分块存储，阈值取自配置项core.chunkThreshold，默认不分块
+     * @param size blob长度
+     * @return true：分块，false：不分块
+     */
+    private boolean isChunked(long size) {
+        int threshold = getConfig().getInt(Config.CHUNK_THRESHOLD, 0);
+        return threshold > 0 && size >= threshold;
+    }
+
+
+    /**
+     * 获取对象库所属仓库的工作目录（objects 目录位于 工作目录/.gitlet/objects）
+     * @return 工作目录
+     */
+    public File getWorkDir() {
+        return objectsDir.getParentFile().getParentFile();
+    }
+
+
+    /**
+     * 获取松散对象的文件
+     * @param type 对象类型
+     * @param id 对象id
+     * @return 文件对象
+     */
+    public File looseFile(ObjectType type, String id) {
+        return join(objectsDir, type.getDirName(), id.substring(0, 2), id.substring(2));
+    }
+
+
+    /**
+     * 创建松散对象所在的类型目录和前缀目录
+     * @param loose 松散对象文件
+     */
+    private static void createLooseDirectory(File loose) {
+        createDirectory(loose.getParentFile().getParentFile());
+        createDirectory(loose.getParentFile());
+    }
+
+
+    /**
+     * 获取所有打包文件
+     * @return 打包文件集合
+     */
+    public synchronized List<PackFile> getPacks() {
+        if (packs == null) {
+            packs = new ArrayList<>();
+            String[] names = packDir.list((dir, name) -> name.endsWith(".idx"));
+            if (names != null) {
+                for (String name : names) {
+                    packs.add(PackFile.open(join(packDir, name)));
+                }
+            }
+        }
+        return packs;
+    }
+
+
+    /**
+     * 判断对象是否存在
+     * @param type 对象类型
+     * @param id 对象id
+     * @return true：存在，false：不存在
+     */
+    public boolean contains(ObjectType type, String id) {
+        if (type == ObjectType.BLOB) {
+            return blobSize(id) >= 0;
+        }
+        if (commitCache.get(id) != null) {
+            return true;
+        }
+        for (PackFile pack : getPacks()) {
+            if (pack.contains(type, id)) {
+                return true;
+            }
+        }
+        return looseFile(type, id).exists();
+    }
+
+
+    /**
+     * 获取对象内容的长度，增量存储的blob为重建后的长度
+     * @param type 对象类型
+     * @param id 对象id
+     * @return 存在：长度，不存在：-1
+     */
+    public long size(ObjectType type, String id) {
+        StoredFormat f = format(type, id, null);
+        if (f == null) {
+            return -1;
+        }
+        if (f.getFormat() == StoredFormat.DELTA) {
+            return Delta.resultSize(readPrefix(type, id, f, Delta.MAX_HEADER));
+        }
+        if (f.getFormat() == StoredFormat.MANIFEST) {
+            return Chunker.contentLength(readPrefix(type, id, f, Chunker.HEADER));
+        }
+        return f.getLength();
+    }
+
+
+    /**
+     * 识别对象的存储格式。新写入的blob和块开头有格式标记；没有标记的旧对象按开头的魔数识别，
+     * 但以魔数开头的也可能是恰好以这些字节开头的原样内容：块和已知文件名的blob按原样内容重新计算哈希，
+     * 与id相符即为原样内容；不知道文件名时（如 gc）检查增量的基准是否存在、块清单的长度是否一致
+     * @param type 对象类型
+     * @param id 对象id
+     * @param name 参与blob哈希的文件名，未知时为null
+     * @return 存在：存储格式，不存在：null
+     */
+    private StoredFormat format(ObjectType type, String id, String name) {
+        long storedSize = storedSize(type, id);
+        if (storedSize < 0) {
+            return null;
+        }
+        byte[] raw = readRawPrefix(type, id, StoredFormat.TAG_LENGTH + Compression.HEADER);
+        boolean compressed = Compression.isCompressed(raw);
+        StoredFormat legacy = new StoredFormat(StoredFormat.RAW, compressed, 0,
+                compressed ? Compression.contentLength(raw) : storedSize);
+        if (!isTagged(type)) {
+            // 提交和树不以 0x00 开头，按压缩头部识别
+            return legacy;
+        }
+        StoredFormat tagged = StoredFormat.parse(raw, id, storedSize);
+        if (tagged != null) {
+            return tagged;
+        }
+        StoredFormat plain = new StoredFormat(StoredFormat.RAW, false, 0, storedSize);
+        byte[] head = new byte[0];
+        if (type == ObjectType.BLOB) {
+            try {
+                head = readPrefix(type, id, legacy, Delta.MAX_HEADER);
+            } catch (GitletException e) {
+                return plain;
+            }
+            if (Delta.isDelta(head)) {
+                legacy = new StoredFormat(StoredFormat.DELTA, compressed, 0, legacy.getLength());
+            } else if (Chunker.isManifest(head)) {
+                legacy = new StoredFormat(StoredFormat.MANIFEST, compressed, 0, legacy.getLength());
+            }
+        }
+        if (!compressed && legacy.getFormat() == StoredFormat.RAW) {
+            return plain;
+        }
+        if (type == ObjectType.CHUNK || name != null) {
+            return hashesTo(type, id, name) ? plain : legacy;
+        }
+        if (legacy.getFormat() == StoredFormat.DELTA) {
+            String base = Delta.baseId(head);
+            return !base.equals(id) && contains(ObjectType.BLOB, base) ? legacy : plain;
+        }
+        if (legacy.getFormat() == StoredFormat.MANIFEST) {
+            return Chunker.manifestLength(head) == legacy.getLength() ? legacy : plain;
+        }
+        return legacy;
+    }
+
+
+    /**
+     * blob和块带有格式标记，提交和树没有
+     */
+    private static boolean isTagged(ObjectType type) {
+        return type == ObjectType.BLOB || type == ObjectType.CHUNK;
+    }
+
+
+    /**
+     * 将对象的存储内容当作原样内容重新计算哈希，判断是否与id相符
+     * @param name blob参与哈希的文件名，块为null
+     */
+    private boolean hashesTo(ObjectType type, String id, String name) {
+        try (InputStream in = openRaw(type, id)) {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            if (name != null) {
+                md.update(name.getBytes(StandardCharsets.UTF_8));
+            }
+            byte[] buf = new byte[STREAM_BUFFER_SIZE];
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                md.update(buf, 0, n);
+            }
+            return bytesToHex(md.digest()).equals(id);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw error("Failed to read object %s.", id);
+        }
+    }
+
+
+    /**
+     * 获取对象在对象库中实际占用的长度
+     * @param type 对象类型
+     * @param id 对象id
+     * @return 存在：长度，不存在：-1
+     */
+    public long storedSize(ObjectType type, String id) {
+        for (PackFile pack : getPacks()) {
+            long size = pack.size(type, id);
+            if (size >= 0) {
+                return size;
+            }
+        }
+        File loose = looseFile(type, id);
+        return loose.exists() ? loose.length() : -1;
+    }
+
+
+    /**
+     * 获取blob的长度，结果经缓存
+     * @param id blob id
+     * @return 存在：长度，不存在：-1
+     */
+    public long blobSize(String id) {
+        Long cached = blobCache.get(id);
+        if (cached != null) {
+            return cached;
+        }
+        long size = size(ObjectType.BLOB, id);
+        if (size >= 0) {
+            blobCache.put(id, size);
+        }
+        return size;
+    }
+
+
+    /**
+     * 读取提交对象，结果经缓存
+     * @param id 完整的提交id
+     * @return 存在：提交对象，不存在：null
+     */
+    public Commit readCommit(String id) {
+        Commit commit = commitCache.get(id);
+        if (commit != null) {
+            return commit;
+        }
+        byte[] data = read(ObjectType.COMMIT, id);
+        if (data == null) {
+            return null;
+        }
+        commit = ObjectCodec.decodeCommit(data);
+        commit.setStore(this);
+        commitCache.put(id, commit);
+        return commit;
+    }
+
+
+    /**
+     * 读取树对象，结果经缓存
+     * @param id 树id
+     * @return 存在：树对象，不存在：null
+     */
+    public Tree readTree(String id) {
+        Tree tree = treeCache.get(id);
+        if (tree != null) {
+            return tree;
+        }
+        byte[] data = read(ObjectType.TREE, id);
+        if (data == null) {
+            return null;
+        }
+        tree = ObjectCodec.decodeTree(data);
+        treeCache.put(id, tree);
+        return tree;
+    }
+
+
+    /**
+     * 写入树对象，已存在则跳过
+     * @param tree 树对象
+     * @return 树id
+     */
+    public String writeTree(Tree tree) {
+        byte[] data = ObjectCodec.encodeTree(tree);
+        String id = sha1((Object) data);
+        write(ObjectType.TREE, id, data);
+        treeCache.put(id, tree);
+        return id;
+    }
+
+
+    /**
+     * 将文件索引按目录拆分为树对象并写入，未变化的目录与之前的提交共享同一个树对象
+     * @param root 工作目录
+     * @param blobs 文件路径 -> blob id
+     * @return 根目录的树id
+     */
+    public String writeTree(File root, Map<String, String> blobs) {
+        return buildTree(root, blobs, this::writeTree);
+    }
+
+
+    /**
+     * 将文件索引按目录拆分为树对象但不写入任何对象库
+     * @param root 工作目录
+     * @param blobs 文件路径 -> blob id
+     * @param trees 接收生成的树：树id -> 编码后的内容，子树在前
+     * @return 根目录的树id
+     */
+    public static String encodeTree(File root, Map<String, String> blobs, Map<String, byte[]> trees) {
+        return buildTree(root, blobs, tree -> {
+            byte[] data = ObjectCodec.encodeTree(tree);
+            String id = sha1((Object) data);
+            trees.putIfAbsent(id, data);
+            return id;
+        });
+    }
+
+
+    private static String buildTree(File root, Map<String, String> blobs, Function<Tree, String> sink) {
+        Map<String, String> relative = new TreeMap<>();
+        Path rootPath = root.toPath();
+        for (Map.Entry<String, String> e : blobs.entrySet()) {
+            Path rel = rootPath.relativize(Paths.get(e.getKey()));
+            relative.put(rel.toString().replace(File.separatorChar, '/'), e.getValue());
+        }
+        return buildTree(relative, "", sink);
+    }
+
+
+    /**
+     * 递归生成以 prefix 为目录的子树
+     * @param relative 相对路径（以'/'分隔）-> blob id，有序
+     * @param prefix 目录前缀，根目录为空串，其余以'/'结尾
+     * @param sink 接收生成的树（子树在前）并返回树id
+     * @return 树id
+     */
+    private static String buildTree(Map<String, String> relative, String prefix, Function<Tree, String> sink) {
+        Tree tree = new Tree();
+        Map<String, Map<String, String>> children = new TreeMap<>();
+        for (Map.Entry<String, String> e : relative.entrySet()) {
+            String rest = e.getKey().substring(prefix.length());
+            int slash = rest.indexOf('/');
+            if (slash < 0) {
+                tree.getBlobs().put(rest, e.getValue());
+            } else {
+                children.computeIfAbsent(rest.substring(0, slash), k -> new TreeMap<>())
+                        .put(e.getKey(), e.getValue());
+            }
+        }
+        for (Map.Entry<String, Map<String, String>> e : children.entrySet()) {
+            tree.getTrees().put(e.getKey(), buildTree(e.getValue(), prefix + e.getKey() + "/", sink));
+        }
+        return sink.apply(tree);
+    }
+
+
+    /**
+     * 展开树对象为文件索引
+     * @param treeId 根目录的树id
+     * @return 文件的绝对路径 -> blob id
+     */
+    public Map<String, String> readTreeBlobs(String treeId) {
+        Map<String, String> res = new TreeMap<>();
+        collectBlobs(treeId, getWorkDir(), res);
+        return res;
+    }
+
+
+    private void collectBlobs(String treeId, File dir, Map<String, String> res) {
+        Tree tree = readTree(treeId);
+        if (tree == null) {
+            throw error("Missing tree %s.", treeId);
+        }
+        for (Map.Entry<String, String> e : tree.getBlobs().entrySet()) {
+            res.put(join(dir, e.getKey()).getPath(), e.getValue());
+        }
+        for (Map.Entry<String, String> e : tree.getTrees().entrySet()) {
+            collectBlobs(e.getValue(), join(dir, e.getKey()), res);
+        }
+    }
+
+
+    /**
+     * 比较两棵树，id相同的子树直接跳过
+     * @param a 树id，可以为null（空树）
+     * @param b 树id，可以为null（空树）
+     * @return 内容不同（新增、删除或修改）的文件的绝对路径集合
+     */
+    public Set<String> diffTrees(String a, String b) {
+        Set<String> res = new TreeSet<>();
+        diffTrees(a, b, getWorkDir(), res);
+        return res;
+    }
+
+
+    private void diffTrees(String a, String b, File dir, Set<String> res) {
+        if (Objects.equals(a, b)) {
+            return;
+        }
+        Tree ta = a == null ? new Tree() : readTree(a);
+        Tree tb = b == null ? new Tree() : readTree(b);
+        Set<String> names = new TreeSet<>(ta.getBlobs().keySet());
+        names.addAll(tb.getBlobs().keySet());
+        for (String name : names) {
+            if (!Objects.equals(ta.getBlobs().get(name), tb.getBlobs().get(name))) {
+                res.add(join(dir, name).getPath());
+            }
+        }
+        names = new TreeSet<>(ta.getTrees().keySet());
+        names.addAll(tb.getTrees().keySet());
+        for (String name : names) {
+            diffTrees(ta.getTrees().get(name), tb.getTrees().get(name), join(dir, name), res);
+        }
+    }
+
+
+    /**
+     * 收集树中相对基准树新增或变化的blob，与基准树相同的子树整体跳过
+     * @param base 基准树id，可以为null（空树）
+     * @param tree 树id
+     * @param blobs 接收变化的blob id
+     */
+    public void collectNewBlobs(String base, String tree, Set<String> blobs) {
+        if (Objects.equals(base, tree)) {
+            return;
+        }
+        Tree tb = base == null ? new Tree() : readTree(base);
+        Tree tt = readTree(tree);
+        for (Map.Entry<String, String> e : tt.getBlobs().entrySet()) {
+            if (!e.getValue().equals(tb.getBlobs().get(e.getKey()))) {
+                blobs.add(e.getValue());
+            }
+        }
+        for (Map.Entry<String, String> e : tt.getTrees().entrySet()) {
+            collectNewBlobs(tb.getTrees().get(e.getKey()), e.getValue(), blobs);
+        }
+    }
+
+
+    /**
+     * 提交的文件索引由树展开后，按展开后的大小重新计量其在提交缓存中的占用，超出容量时淘汰
+     * @param commit 提交对象
+     */
+    void blobsExpanded(Commit commit) {
+        if (commit.getId() != null) {
+            commitCache.reweigh(commit.getId(), commit);
+        }
+    }
+
+
+    /**
+     * 估算提交对象占用的堆内存
+     */
+    private static long estimateWeight(Commit commit) {
+        long weight = 256 + 2L * commit.getMessage().length();
+        // 由树展开的文件索引是独立于树缓存的副本，展开后通过 blobsExpanded 重新计量
+        if (commit.blobs != null) {
+            for (Map.Entry<String, String> e : commit.blobs.entrySet()) {
+                weight += 96 + 2L * (e.getKey().length() + e.getValue().length());
+            }
+        }
+        return weight;
+    }
+
+
+    /**
+     * 读取对象内容，增量存储的blob重建后返回
+     * @param type 对象类型
+     * @param id 对象id
+     * @return 存在：内容，不存在：null
+     */
+    public byte[] read(ObjectType type, String id) {
+        return read(type, id, null);
+    }
+
+
+    /**
+     * 读取blob内容，没有格式标记的旧对象按文件名校验其存储格式
+     * @param id blob id
+     * @param name 参与blob哈希的文件名
+     * @return 存在：内容，不存在：null
+     */
+    public byte[] readBlob(String id, String name) {
+        return read(ObjectType.BLOB, id, name);
+    }
+
+
+    private byte[] read(ObjectType type, String id, String name) {
+        if (!isTagged(type)) {
+            return readStored(type, id);
+        }
+        StoredFormat f = format(type, id, name);
+        return f == null ? null : reconstruct(type, id, f);
+    }
+
+
+    /**
+     * 按存储格式还原对象内容：重建增量、拼接各块
+     */
+    private byte[] reconstruct(ObjectType type, String id, StoredFormat f) {
+        byte[] data = readContent(type, id, f);
+        if (f.getFormat() == StoredFormat.DELTA) {
+            return Delta.apply(readDeltaBase(Delta.baseId(data)), data);
+        }
+        if (f.getFormat() == StoredFormat.MANIFEST) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            copyChunks(Chunker.decode(data), out);
+            return out.toByteArray();
+        }
+        return data;
+    }
+
+
+    /**
+     * 按块清单依次写出各块的内容
+     */
+    private void copyChunks(Chunker.Manifest manifest, OutputStream out) {
+        for (String chunk : manifest.getIds()) {
+            StoredFormat f = format(ObjectType.CHUNK, chunk, null);
+            if (f == null) {
+                throw error("Missing chunk %s.", chunk);
+            }
+            try (InputStream in = openContent(ObjectType.CHUNK, chunk, f)) {
+                in.transferTo(out);
+            } catch (IOException e) {
+                throw error("Failed to read chunk %s.", chunk);
+            }
+        }
+    }
+
+
+    /**
+     * 获取分块存储的blob引用的块
+     * @param id blob id
+     * @return 分块存储：块id（可能重复），其他：空集合
+     */
+    public List<String> chunkIds(String id) {
+        StoredFormat f = format(ObjectType.BLOB, id, null);
+        if (f == null || f.getFormat() != StoredFormat.MANIFEST) {
+            return List.of();
+        }
+        return Chunker.decode(readContent(ObjectType.BLOB, id, f)).getIds();
+    }
+
+
+    /**
+     * 读取提交或树解压后的内容
+     */
+    private byte[] readStored(ObjectType type, String id) {
+        for (PackFile pack : getPacks()) {
+            byte[] data = pack.read(type, id);
+            if (data != null) {
+                return Compression.decode(data);
+            }
+        }
+        File loose = looseFile(type, id);
+        return loose.exists() ? Compression.decode(readContents(loose)) : null;
+    }
+
+
+    /**
+     * 打开对象存储内容的输入流（未解压）
+     * @return 存在：输入流，不存在：null
+     */
+    private InputStream openRaw(ObjectType type, String id) {
+        for (PackFile pack : getPacks()) {
+            InputStream in = pack.open(type, id);
+            if (in != null) {
+                return in;
+            }
+        }
+        try {
+            return Files.newInputStream(looseFile(type, id).toPath());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * 读取对象存储内容（未解压）的开头部分
+     * @return 存在：不超过 limit 字节的内容，不存在：null
+     */
+    private byte[] readRawPrefix(ObjectType type, String id, int limit) {
+        try (InputStream in = openRaw(type, id)) {
+            return in == null ? null : in.readNBytes(limit);
+        } catch (IOException e) {
+            throw error("Failed to read object %s.", id);
+        }
+    }
+
+
+    /**
+     * 打开对象解压后的存储内容（增量尚未重建）的输入流，跳过格式标记
+     * @param type 对象类型
+     * @param id 对象id
+     * @param f 存储格式
+     * @return 输入流
+     */
+    private InputStream openContent(ObjectType type, String id, StoredFormat f) throws IOException {
+        InputStream raw = openRaw(type, id);
+        if (raw == null) {
+            throw error("Missing object %s.", id);
+        }
+        try {
+            raw.skipNBytes(f.getOffset());
+            return f.isCompressed() ? Compression.inflate(raw) : new BufferedInputStream(raw, STREAM_BUFFER_SIZE);
+        } catch (IOException e) {
+            raw.close();
+            throw e;
+        }
+    }
+
+
+    /**
+     * 读取对象解压后的存储内容（增量尚未重建）
+     */
+    private byte[] readContent(ObjectType type, String id, StoredFormat f) {
+        try (InputStream in = openContent(type, id, f)) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw error("Failed to read object %s.", id);
+        }
+    }
+
+
+    /**
+     * 读取对象解压后的存储内容的开头部分
+     * @param type 对象类型
+     * @param id 对象id
+     * @param f 存储格式
+     * @param limit 最多读取的字节数
+     * @return 不超过 limit 字节的内容
+     */
+    private byte[] readPrefix(ObjectType type, String id, StoredFormat f, int limit) {
+        try (InputStream in = openContent(type, id, f)) {
+            return in.readNBytes(limit);
+        } catch (IOException e) {
+            throw error("Failed to read object %s.", id);
+        }
+    }
+
+
+    /**
+     * 读取用作增量基准的blob，结果经缓存
+     */
+    private byte[] readDeltaBase(String id) {
+        byte[] base = deltaBaseCache.get(id);
+        if (base == null) {
+            base = read(ObjectType.BLOB, id);
+            if (base == null) {
+                throw error("Missing delta base %s.", id);
+            }
+            deltaBaseCache.put(id, base);
+        }
+        return base;
+    }
+
+
+    /**
+     * 获取增量存储的blob的基准
+     * @param id blob id
+     * @return 增量存储：基准blob id，原样存储或不存在：null
+     */
+    public String deltaBase(String id) {
+        StoredFormat f = format(ObjectType.BLOB, id, null);
+        if (f == null || f.getFormat() != StoredFormat.DELTA) {
+            return null;
+        }
+        return Delta.baseId(readPrefix(ObjectType.BLOB, id, f, Delta.MAX_HEADER));
+    }
+
+
+    /**
+     * 将对象内容写入目标文件，增量存储的blob重建后写入。
+     * 分块存储的blob先确认所有块都存在再打开目标文件，缺块时不会截断已有的文件
+     * @param type 对象类型
+     * @param id 对象id
+     * @param target 目标文件，blob的文件名即参与其哈希的文件名
+     * @return true：写入成功，false：对象不存在
+     */
+    public boolean copyTo(ObjectType type, String id, File target) {
+        StoredFormat f = format(type, id, type == ObjectType.BLOB ? target.getName() : null);
+        if (f == null) {
+            return false;
+        }
+        if (f.getFormat() == StoredFormat.DELTA) {
+            writeContents(target, (Object) reconstruct(type, id, f));
+            return true;
+        }
+        if (f.getFormat() == StoredFormat.MANIFEST) {
+            Chunker.Manifest manifest = Chunker.decode(readContent(type, id, f));
+            for (String chunk : manifest.getIds()) {
+                if (!contains(ObjectType.CHUNK, chunk)) {
+                    throw error("Missing chunk %s.", chunk);
+                }
+            }
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(target.toPath()),
+                    STREAM_BUFFER_SIZE)) {
+                copyChunks(manifest, out);
+            } catch (IOException e) {
+                throw error("Failed to write '%s'.", target.getName());
+            }
+            return true;
+        }
+        if (f.isCompressed()) {
+            // 流式解压，大文件不必整体读入内存
+            try (InputStream in = openContent(type, id, f)) {
+                Files.copy(in, target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw error("Failed to read object %s.", id);
+            }
+            return true;
+        }
+        for (PackFile pack : getPacks()) {
+            if (pack.copyTo(type, id, f.getOffset(), target)) {
+                return true;
+            }
+        }
+        File loose = looseFile(type, id);
+        if (!loose.exists()) {
+            return false;
+        }
+        copyFile(loose, f.getOffset(), target);
+        return true;
+    }
+
+
+    /**
+     * 写入对象，已存在则跳过
+     * @param type 对象类型
+     * @param id 对象id
+     * @param data 对象内容
+     */
+    public void write(ObjectType type, String id, byte[] data) {
+        write(type, id, StoredFormat.RAW, data);
+    }
+
+
+    /**
+     * 写入对象，已存在则跳过。内容先写入临时文件再改名，中途退出不会留下不完整的对象
+     * @param format blob和块的存储方式
+     */
+    private void write(ObjectType type, String id, char format, byte[] data) {
+        if (contains(type, id)) {
+            freshen(type, id);
+            return;
+        }
+        File loose = looseFile(type, id);
+        createLooseDirectory(loose);
+        writeLoose(loose, encode(type, id, format, data));
+        added(type, id);
+    }
+
+
+    /**
+     * 经临时文件原子地写入或替换松散对象的内容，不在原文件上改写，与其他仓库共享的硬链接不受影响
+     * @param loose 松散对象文件
+     * @param data 新的存储内容
+     */
+    private void writeLoose(File loose, byte[] data) {
+        File tmp = join(objectsDir, "tmp-obj-" + System.nanoTime());
+        writeContents(tmp, (Object) data);
+        try {
+            Files.move(tmp.toPath(), loose.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tmp.delete();
+            throw error("Failed to write object %s.", loose.getName());
+        }
+    }
+
+
+    /**
+     * 新对象写入后更新id索引
+     */
+    private void added(ObjectType type, String id) {
+        if (type == ObjectType.COMMIT) {
+            commitIndex.add(id);
+        }
+    }
+
+
+    /**
+     * 按压缩级别编码松散对象的内容，blob和块加上格式标记
+     */
+    private byte[] encode(ObjectType type, String id, char format, byte[] data) {
+        int level = getCompression();
+        byte[] stored = level > 0 ? Compression.compress(data, level) : data;
+        if (!isTagged(type)) {
+            return stored;
+        }
+        byte[] tag = StoredFormat.tag(format, level > 0, id);
+        byte[] res = Arrays.copyOf(tag, tag.length + stored.length);
+        System.arraycopy(stored, 0, res, tag.length, stored.length);
+        return res;
+    }
+
+
+    /**
+     * 以文件内容写入对象，已存在则跳过
+     * @param type 对象类型
+     * @param id 对象id
+     * @param source 源文件
+     */
+    public void writeFile(ObjectType type, String id, File source) {
+        if (contains(type, id)) {
+            freshen(type, id);
+            return;
+        }
+        int offset = isTagged(type) ? StoredFormat.TAG_LENGTH : 0;
+        File tmp = stageCopy(source, offset);
+        moveInto(type, id, tmp, tmp.length() - offset, StoredFormat.RAW);
+    }
+
+
+    /**
+     * 将文件内容复制到对象库中的临时文件，开头留出 offset 字节给格式标记
+     * @return 临时文件
+     */
+    private File stageCopy(File source, int offset) {
+        createDirectory(objectsDir);
+        File tmp = join(objectsDir, "tmp-blob-" + System.nanoTime());
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(tmp.toPath(), StandardOpenOption.CREATE_NEW,
+                     StandardOpenOption.WRITE)) {
+            out.position(offset);
+            transferFully(in, 0, in.size(), out);
+        } catch (IOException e) {
+            tmp.delete();
+            throw error("Failed to read '%s'.", source.getName());
+        }
+        return tmp;
+    }
+
+
+    /**
+     * 流式计算blob id并写入对象库，文件内容只读取一次
+     * @param name 参与哈希的文件名
+     * @param source 源文件
+     * @return blob id
+     */
+    public String writeBlob(String name, File source) {
+        return writeBlob(name, source, null, 0);
+    }
+
+
+    /**
+     * 流式计算blob id并写入对象库，新blob尽可能存储为对基准blob（通常是同一文件的上一版本）的增量。
+     * 内容写入临时文件时开头留出格式标记的位置，移入对象库时就地填写，不必再复制一次
+     * @param name 参与哈希的文件名
+     * @param source 源文件
+     * @param baseId 基准blob id，可以为null
+     * @param maxDepth 增量链的最大深度，0 表示不做增量
+     * @return blob id
+     */
+    public String writeBlob(String name, File source, String baseId, int maxDepth) {
+        createDirectory(objectsDir);
+        File tmp = join(objectsDir, "tmp-blob-" + System.nanoTime());
+        String id;
+        try {
+            id = sha1(name, source, tmp, StoredFormat.TAG_LENGTH);
+        } catch (IllegalArgumentException e) {
+            tmp.delete();
+            throw e;
+        }
+        long size = tmp.length() - StoredFormat.TAG_LENGTH;
+        char format = StoredFormat.RAW;
+        if (!contains(ObjectType.BLOB, id)) {
+            if (isChunked(size)) {
+                writeChunks(tmp);
+                format = StoredFormat.MANIFEST;
+            } else if (baseId != null && !baseId.equals(id) && maxDepth > 0 && size >= DELTA_MIN_SIZE
+                    && size <= DELTA_MAX_SIZE && deltify(tmp, baseId, maxDepth)) {
+                format = StoredFormat.DELTA;
+            }
+        }
+        moveInto(ObjectType.BLOB, id, tmp, size, format);
+        return id;
+    }
+
+
+    /**
+     * 将临时文件中的内容切分为块写入对象库，临时文件改写为块清单
+     * @param tmp blob内容的临时文件，开头留有格式标记的位置
+     */
+    private void writeChunks(File tmp) {
+        Chunker.Manifest manifest = new Chunker.Manifest();
+        try (InputStream in = Files.newInputStream(tmp.toPath())) {
+            in.skipNBytes(StoredFormat.TAG_LENGTH);
+            Chunker.split(in, (buf, off, len) -> {
+                byte[] chunk = Arrays.copyOfRange(buf, off, off + len);
+                String chunkId = sha1((Object) chunk);
+                write(ObjectType.CHUNK, chunkId, chunk);
+                manifest.add(chunkId, len);
+            });
+        } catch (IOException e) {
+            throw error("Failed to read '%s'.", tmp.getName());
+        }
+        writeContents(tmp, new byte[StoredFormat.TAG_LENGTH], Chunker.encode(manifest));
+    }
+
+
+    /**
+     * 将临时文件中的新版本改写为对基准的增量；基准不存在、链过深或增量不足原长度一半时保持原样
+     * @param tmp 新版本的临时文件，开头留有格式标记的位置
+     * @param baseId 基准blob id
+     * @param maxDepth 增量链的最大深度
+     * @return true：已改写为增量，false：保持原样
+     */
+    private boolean deltify(File tmp, String baseId, int maxDepth) {
+        StoredFormat base = format(ObjectType.BLOB, baseId, null);
+        if (base == null) {
+            return false;
+        }
+        int depth = base.getFormat() == StoredFormat.DELTA
+                ? Delta.depth(readPrefix(ObjectType.BLOB, baseId, base, Delta.MAX_HEADER)) + 1 : 1;
+        if (depth > maxDepth || size(ObjectType.BLOB, baseId) > DELTA_MAX_SIZE) {
+            return false;
+        }
+        byte[] stored = readContents(tmp);
+        byte[] target = Arrays.copyOfRange(stored, StoredFormat.TAG_LENGTH, stored.length);
+        byte[] delta = Delta.create(baseId, depth, readDeltaBase(baseId), target);
+        if (delta == null || delta.length >= target.length / 2) {
+            return false;
+        }
+        writeContents(tmp, new byte[StoredFormat.TAG_LENGTH], delta);
+        return true;
+    }
+
+
+    /**
+     * 将临时文件原子地移动为松散对象，对象已存在时删除临时文件
+     * @param type 对象类型
+     * @param id 对象id
+     * @param tmp 临时文件，须与对象库在同一文件系统
+     */
+    public void moveInto(ObjectType type, String id, File tmp) {
+        if (contains(type, id)) {
+            deleteFile(tmp);
+            freshen(type, id);
+            return;
+        }
+        long size = tmp.length();
+        char format = StoredFormat.RAW;
+        if (isTagged(type)) {
+            File staged = stageCopy(tmp, StoredFormat.TAG_LENGTH);
+            deleteFile(tmp);
+            tmp = staged;
+            if (type == ObjectType.BLOB && isChunked(size)) {
+                writeChunks(tmp);
+                format = StoredFormat.MANIFEST;
+            }
+        }
+        moveInto(type, id, tmp, size, format);
+    }
+
+
+    /**
+     * 填写格式标记（需要时压缩）后将临时文件原子地移动为松散对象
+     * @param tmp 临时文件，blob和块开头留有格式标记的位置
+     * @param size 对象内容的长度，临时文件为增量或块清单时与文件长度不同
+     * @param format blob和块的存储方式
+     */
+    private void moveInto(ObjectType type, String id, File tmp, long size, char format) {
+        if (contains(type, id)) {
+            deleteFile(tmp);
+            freshen(type, id);
+            return;
+        }
+        int level = getCompression();
+        boolean tagged = isTagged(type);
+        int offset = tagged ? StoredFormat.TAG_LENGTH : 0;
+        if (level > 0) {
+            File compressed = new File(tmp.getPath() + ".z");
+            try (InputStream in = Files.newInputStream(tmp.toPath());
+                 OutputStream out = new BufferedOutputStream(Files.newOutputStream(compressed.toPath()),
+                         STREAM_BUFFER_SIZE)) {
+                if (tagged) {
+                    out.write(StoredFormat.tag(format, true, id));
+                }
+                in.skipNBytes(offset);
+                Compression.compress(in, tmp.length() - offset, out, level);
+            } catch (IOException e) {
+                compressed.delete();
+                tmp.delete();
+                throw error("Failed to compress '%s'.", tmp.getName());
+            }
+            deleteFile(tmp);
+            tmp = compressed;
+        } else if (tagged) {
+            try (FileChannel ch = FileChannel.open(tmp.toPath(), StandardOpenOption.WRITE)) {
+                ByteBuffer buf = ByteBuffer.wrap(StoredFormat.tag(format, false, id));
+                while (buf.hasRemaining()) {
+                    ch.write(buf, buf.position());
+                }
+            } catch (IOException e) {
+                tmp.delete();
+                throw error("Failed to write object %s.", id);
+            }
+        }
+        File loose = looseFile(type, id);
+        createLooseDirectory(loose);
+        try {
+            Files.move(tmp.toPath(), loose.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tmp.delete();
+            throw new RuntimeException(e);
+        }
+        if (type == ObjectType.BLOB) {
+            blobCache.put(id, size);
+        }
+        added(type, id);
+    }
+
+
+    /**
+     * 更新已存在对象的修改时间，gc 的宽限期从最近一次写入算起，刚被重新引用的旧对象不会被删除。
+     * 已打包的对象更新整个打包文件的修改时间
+     * @param type 对象类型
+     * @param id 对象id
+     */
+    private void freshen(ObjectType type, String id) {
+        long now = System.currentTimeMillis();
+        File loose = looseFile(type, id);
+        if (loose.setLastModified(now)) {
+            return;
+        }
+        for (PackFile pack : getPacks()) {
+            if (pack.contains(type, id)) {
+                pack.getPackFile().setLastModified(now);
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * 删除松散对象，前缀目录为空时一并删除
+     * @param loose 松散对象文件
+     */
+    private static void deleteLoose(File loose) {
+        deleteFile(loose);
+        File prefixDir = loose.getParentFile();
+        String[] rest = prefixDir.list();
+        if (rest != null && rest.length == 0) {
+            deleteFile(prefixDir);
+        }
+    }
+
+
+    /**
+     * 统计对象库占用的磁盘空间
+     * @return 所有文件的字节数
+     */
+    public long diskUsage() {
+        try (var files = Files.walk(objectsDir.toPath())) {
+            return files.filter(Files::isRegularFile).mapToLong(f -> f.toFile().length()).sum();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+
+    /**
+     * 清空所有缓存，删除对象后调用
+     */
+    public void clearCaches() {
+        commitCache.clear();
+        treeCache.clear();
+        blobCache.clear();
+        deltaBaseCache.clear();
+    }
+
+
+    /**
+     * 将对象内容写入输出流，增量存储的blob重建后写入，接收方不必拥有基准
+     * @param type 对象类型
+     * @param id 对象id
+     * @param out 输出流
+     * @return true：写入成功，false：对象不存在
+     */
+    public boolean writeTo(ObjectType type, String id, OutputStream out) throws IOException {
+        StoredFormat f = format(type, id, null);
+        if (f == null) {
+            return false;
+        }
+        if (f.getFormat() == StoredFormat.DELTA) {
+            out.write(reconstruct(type, id, f));
+            return true;
+        }
+        if (f.getFormat() == StoredFormat.MANIFEST) {
+            copyChunks(Chunker.decode(readContent(type, id, f)), out);
+            return true;
+        }
+        try (InputStream in = openContent(type, id, f)) {
+            in.transferTo(out);
+        }
+        return true;
+    }
+
+
+    /**
+     * 将对象复制到另一个对象库，已存在则跳过
+     * @param type 对象类型
+     * @param id 对象id
+     * @param target 目标对象库
+     */
+    public void transfer(ObjectType type, String id, ObjectStore target) {
+        if (target.contains(type, id)) {
+            return;
+        }
+        StoredFormat f = isTagged(type) ? format(type, id, null) : null;
+        boolean delta = f != null && f.getFormat() == StoredFormat.DELTA;
+        boolean chunked = f != null && f.getFormat() == StoredFormat.MANIFEST;
+        if (chunked) {
+            // 先复制块，再复制块清单，目标库中已有的块不再复制
+            for (String chunk : chunkIds(id)) {
+                transfer(ObjectType.CHUNK, chunk, target);
+            }
+        }
+        File loose = looseFile(type, id);
+        if (loose.exists() && !delta) {
+            File targetLoose = target.looseFile(type, id);
+            createLooseDirectory(targetLoose);
+            if (type == ObjectType.COMMIT) {
+                // 提交可能被 rewriteCommits 转换格式，不与其他仓库共享文件
+                copyFile(loose, targetLoose);
+            } else {
+                // blob、块和树写入后不再改变，同一文件系统内直接建立硬链接
+                linkOrCopyFile(loose, targetLoose);
+            }
+            target.added(type, id);
+        } else if (chunked) {
+            target.write(type, id, StoredFormat.MANIFEST, readContent(type, id, f));
+        } else {
+            byte[] data = read(type, id);
+            if (data != null) {
+                target.write(type, id, data);
+            }
+        }
+    }
+
+
+    /**
+     * 获取给定类型的所有松散对象id（有序）
+     * @param type 对象类型
+     * @return id集合
+     */
+    public List<String> listLooseIds(ObjectType type) {
+        List<String> res = new ArrayList<>();
+        File typeDir = join(objectsDir, type.getDirName());
+        List<String> prefixDirs = plainDirectoryIn(typeDir);
+        if (prefixDirs == null) {
+            return res;
+        }
+        for (String dir : prefixDirs) {
+            List<String> names = plainFilenamesIn(join(typeDir, dir));
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                res.add(dir + name);
+            }
+        }
+        return res;
+    }
+
+
+    /**
+     * 获取给定类型的所有对象id（有序、去重）
+     * @param type 对象类型
+     * @return id集合
+     */
+    public List<String> listIds(ObjectType type) {
+        TreeSet<String> ids = new TreeSet<>(listLooseIds(type));
+        for (PackFile pack : getPacks()) {
+            ids.addAll(pack.listIds(type));
+        }
+        return new ArrayList<>(ids);
+    }
+
+
+    /**
+     * 获取以指定前缀开头的对象id，提交通过id索引二分查找（索引不存在时先生成），其他类型扫描前缀目录和打包文件
+     * @param type 对象类型
+     * @param prefix 十六进制前缀，长度至少为2，含非十六进制字符时没有匹配
+     * @return id集合（有序、去重）
+     */
+    public List<String> findByPrefix(ObjectType type, String prefix) {
+        if (prefix.length() < 2 || prefix.length() > UID_LENGTH || !prefix.matches("[0-9a-f]+")) {
+            return new ArrayList<>();
+        }
+        if (type == ObjectType.COMMIT) {
+            List<String> res = new ArrayList<>();
+            if (!commitIndex.isValid() && !commitIndex.build(() -> listIds(type))) {
+                // 索引被其他进程锁定，直接列出所有提交
+                for (String id : new TreeSet<>(listIds(type))) {
+                    if (id.startsWith(prefix)) {
+                        res.add(id);
+                    }
+                }
+                return res;
+            }
+            for (String id : commitIndex.find(prefix)) {
+                // 索引只增不减，排除已被 gc 删除的提交
+                if (contains(type, id)) {
+                    res.add(id);
+                }
+            }
+            return res;
+        }
+        TreeSet<String> res = new TreeSet<>();
+        for (PackFile pack : getPacks()) {
+            res.addAll(pack.findByPrefix(type, prefix));
+        }
+        File dir = join(objectsDir, type.getDirName(), prefix.substring(0, 2));
+        List<String> names = plainFilenamesIn(dir);
+        if (names != null) {
+            String rest = prefix.substring(2);
+            for (String name : names) {
+                if (name.startsWith(rest)) {
+                    res.add(prefix.substring(0, 2) + name);
+                }
+            }
+        }
+        return new ArrayList<>(res);
+    }
+
+
+    /**
+     * 转换所有提交对象的存储格式，松散对象经临时文件原子地替换，打包文件中有提交需要转换时整体重写该打包文件
+     * @param convert 转换函数，无需转换时返回原数组
+     * @return 转换的提交数量
+     */
+    public int rewriteCommits(UnaryOperator<byte[]> convert) {
+        int count = 0;
+        for (String id : listLooseIds(ObjectType.COMMIT)) {
+            File loose = looseFile(ObjectType.COMMIT, id);
+            byte[] data = Compression.decode(readContents(loose));
+            byte[] converted = convert.apply(data);
+            if (converted != data) {
+                writeLoose(loose, encode(ObjectType.COMMIT, id, StoredFormat.RAW, converted));
+                count++;
+            }
+        }
+        List<PackFile> rewritten = new ArrayList<>();
+        for (PackFile pack : getPacks()) {
+            Map<String, byte[]> converted = new HashMap<>();
+            for (String id : pack.listIds(ObjectType.COMMIT)) {
+                byte[] data = Compression.decode(pack.read(ObjectType.COMMIT, id));
+                byte[] c = convert.apply(data);
+                if (c != data) {
+                    converted.put(id, c);
+                }
+            }
+            if (converted.isEmpty()) {
+                rewritten.add(pack);
+            } else {
+                rewritten.add(rewritePack(pack, converted, Set.of()));
+                count += converted.size();
+            }
+        }
+        packs = rewritten;
+        commitCache.clear();
+        return count;
+    }
+
+
+    /**
+     * 用替换后的提交内容重写打包文件，其他对象原样复制，完成后删除旧的打包文件
+     * @param pack 旧的打包文件
+     * @param commits 提交id -> 新内容，不在其中的提交原样复制
+     * @param removed 不再复制的对象id
+     * @return 新的打包文件，没有剩余对象时为null
+     */
+    private PackFile rewritePack(PackFile pack, Map<String, byte[]> commits, Set<String> removed) {
+        PackFile.Writer writer = new PackFile.Writer(packDir);
+        for (String id : pack.listIds(ObjectType.COMMIT)) {
+            if (removed.contains(id)) {
+                continue;
+            }
+            byte[] data = commits.get(id);
+            writer.add(ObjectType.COMMIT, id, data != null ? data : pack.read(ObjectType.COMMIT, id));
+        }
+        File tmp = join(packDir, "tmp-obj-" + System.nanoTime());
+        try {
+            for (ObjectType type : ObjectType.values()) {
+                if (type == ObjectType.COMMIT) {
+                    continue;
+                }
+                for (String id : pack.listIds(type)) {
+                    if (removed.contains(id)) {
+                        continue;
+                    }
+                    pack.copyTo(type, id, 0, tmp);
+                    writer.add(type, id, tmp);
+                }
+            }
+        } finally {
+            tmp.delete();
+        }
+        PackFile res = writer.finish();
+        pack.close();
+        // 先删除 .idx，读者不会看到缺少 .pack 的索引
+        deleteFile(pack.getIdxFile());
+        deleteFile(pack.getPackFile());
+        return res;
+    }
+
+
+    /**
+     * 将所有松散对象合并进一个新的打包文件，并删除已打包的松散对象
+     * @return 打包的对象数量
+     */
+    public int repack() {
+        createDirectory(packDir);
+        PackFile.Writer writer = new PackFile.Writer(packDir);
+        List<File> packed = new ArrayList<>();
+        for (ObjectType type : ObjectType.values()) {
+            for (String id : listLooseIds(type)) {
+                File loose = looseFile(type, id);
+                writer.add(type, id, loose);
+                packed.add(loose);
+            }
+        }
+        PackFile pack = writer.finish();
+        if (pack == null) {
+            return 0;
+        }
+        getPacks().add(pack);
+        // 打包文件发布后再删除松散对象，中途失败也不会丢失对象
+        for (File loose : packed) {
+            deleteLoose(loose);
+        }
+        return packed.size();
+    }
+
+
+    /**
+     * 删除对象，已打包的对象通过重写其所在的打包文件删除
+     * @param ids 类型 -> 要删除的对象id
+     */
+    public void remove(Map<ObjectType, Set<String>> ids) {
+        Set<String> all = new HashSet<>();
+        for (Map.Entry<ObjectType, Set<String>> e : ids.entrySet()) {
+            all.addAll(e.getValue());
+            for (String id : e.getValue()) {
+                File loose = looseFile(e.getKey(), id);
+                if (loose.exists()) {
+                    deleteLoose(loose);
+                }
+            }
+        }
+        List<PackFile> rest = new ArrayList<>();
+        for (PackFile pack : getPacks()) {
+            boolean affected = false;
+            for (ObjectType type : ObjectType.values()) {
+                for (String id : ids.getOrDefault(type, Set.of())) {
+                    affected |= pack.contains(type, id);
+                }
+            }
+            if (!affected) {
+                rest.add(pack);
+                continue;
+            }
+            PackFile rewritten = rewritePack(pack, Map.of(), all);
+            if (rewritten != null) {
+                rest.add(rewritten);
+            }
+        }
+        packs = rest;
+        clearCaches();
+    }
+}
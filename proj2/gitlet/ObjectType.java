@@ -0,0 +1,47 @@
+package gitlet;
+
+/**
+ * @description: 对象类型枚举
+ * @author: Yhltmxh
+ * @create: 2025-07-02 09:41
+ **/
+public enum ObjectType {
+
+    COMMIT("commits", (byte) 1),
+    BLOB("blobs", (byte) 2),
+    TREE("trees", (byte) 3),
+    CHUNK("chunks", (byte) 4);
+
+
+    /**
+     * 松散对象所在的子目录名
+     */
+    private final String dirName;
+
+    /**
+     * 打包文件中的类型编码
+     */
+    private final byte code;
+
+    ObjectType(String dirName, byte code) {
+        this.dirName = dirName;
+        this.code = code;
+    }
+
+    public String getDirName() {
+        return dirName;
+    }
+
+    public byte getCode() {
+        return code;
+    }
+
+    public static ObjectType findByCode(byte code) {
+        for (ObjectType t : values()) {
+            if (t.code == code) {
+                return t;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,543 @@
+package gitlet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: 打包文件，由只追加的 .pack 数据文件和有序的 .idx 索引文件组成
+ * <pre>
+ * .pack: "GPAK" | 版本 | { 类型(1) | id(20) | 长度(8) | 内容 }* | SHA-1 校验和(20)
+ * .idx:  "GIDX" | 版本 | 扇出表 int[256] | 有序 id(20 * n) | 类型(1 * n) | 偏移量(8 * n) | pack 校验和(20)
+ * </pre>
+ * 扇出表第 i 项为首字节不大于 i 的对象数量，查找时先用首字节缩小范围再二分。
+ * @author: Yhltmxh
+ * @create: 2025-07-02 10:17
+ **/
+public class PackFile {
+
+    private static final byte[] PACK_MAGIC = {'G', 'P', 'A', 'K'};
+
+    private static final byte[] IDX_MAGIC = {'G', 'I', 'D', 'X'};
+
+    private static final int VERSION = 1;
+
+    private static final int ID_BYTES = UID_LENGTH / 2;
+
+    private static final int FANOUT_OFFSET = 8;
+
+    private static final int IDS_OFFSET = FANOUT_OFFSET + 256 * 4;
+
+    /**
+     * 单个条目头部长度：类型 + id + 长度
+     */
+    private static final int ENTRY_HEADER = 1 + ID_BYTES + 8;
+
+    private final File packFile;
+
+    private final File idxFile;
+
+    /**
+     * 内存映射的索引
+     */
+    private final MappedByteBuffer idx;
+
+    private final int count;
+
+    private FileChannel packChannel;
+
+    private PackFile(File packFile, File idxFile) {
+        this.packFile = packFile;
+        this.idxFile = idxFile;
+        try (FileChannel ch = FileChannel.open(idxFile.toPath(), StandardOpenOption.READ)) {
+            idx = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+        } catch (IOException e) {
+            throw error("Failed to open pack index '%s'.", idxFile.getName());
+        }
+        for (int i = 0; i < IDX_MAGIC.length; i++) {
+            if (idx.get(i) != IDX_MAGIC[i]) {
+                throw error("Bad pack index '%s'.", idxFile.getName());
+            }
+        }
+        count = idx.getInt(FANOUT_OFFSET + 255 * 4);
+    }
+
+
+    /**
+     * 打开索引文件对应的打包文件
+     * @param idxFile 索引文件
+     * @return 打包文件对象
+     */
+    public static PackFile open(File idxFile) {
+        String name = idxFile.getName();
+        File pack = join(idxFile.getParentFile(), name.substring(0, name.length() - 4) + ".pack");
+        return new PackFile(pack, idxFile);
+    }
+
+
+    public int getCount() {
+        return count;
+    }
+
+    public File getPackFile() {
+        return packFile;
+    }
+
+    public File getIdxFile() {
+        return idxFile;
+    }
+
+
+    /**
+     * 二分查找对象在索引中的位置
+     * @param id 对象id
+     * @return 存在：位置，不存在：-(插入点 + 1)
+     */
+    private int search(byte[] id) {
+        int first = id[0] & 0xff;
+        int lo = first == 0 ? 0 : idx.getInt(FANOUT_OFFSET + (first - 1) * 4);
+        int hi = idx.getInt(FANOUT_OFFSET + first * 4) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int cmp = compareAt(mid, id, ID_BYTES);
+            if (cmp < 0) {
+                lo = mid + 1;
+            } else if (cmp > 0) {
+                hi = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(lo + 1);
+    }
+
+
+    /**
+     * 比较索引中第 pos 个 id 的前 len 个字节与给定字节
+     */
+    private int compareAt(int pos, byte[] id, int len) {
+        int base = IDS_OFFSET + pos * ID_BYTES;
+        for (int i = 0; i < len; i++) {
+            int a = idx.get(base + i) & 0xff;
+            int b = id[i] & 0xff;
+            if (a != b) {
+                return a - b;
+            }
+        }
+        return 0;
+    }
+
+
+    private String idAt(int pos) {
+        byte[] b = new byte[ID_BYTES];
+        idx.get(IDS_OFFSET + pos * ID_BYTES, b);
+        return bytesToHex(b);
+    }
+
+
+    private ObjectType typeAt(int pos) {
+        return ObjectType.findByCode(idx.get(IDS_OFFSET + count * ID_BYTES + pos));
+    }
+
+
+    private long offsetAt(int pos) {
+        return idx.getLong(IDS_OFFSET + count * (ID_BYTES + 1) + pos * 8);
+    }
+
+
+    /**
+     * 判断打包文件中是否包含指定对象
+     * @param type 对象类型
+     * @param id 对象id
+     * @return true：包含，false：不包含
+     */
+    public boolean contains(ObjectType type, String id) {
+        if (!verifyId(id)) {
+            return false;
+        }
+        int pos = search(hexToBytes(id));
+        return pos >= 0 && typeAt(pos) == type;
+    }
+
+
+    /**
+     * 获取对象内容在 .pack 中的位置和长度
+     * @return 存在：{偏移, 长度}，不存在：null
+     */
+    private long[] locate(ObjectType type, String id) {
+        if (!verifyId(id)) {
+            return null;
+        }
+        int pos = search(hexToBytes(id));
+        if (pos < 0 || typeAt(pos) != type) {
+            return null;
+        }
+        long offset = offsetAt(pos);
+        try {
+            ByteBuffer len = ByteBuffer.allocate(8);
+            channel().read(len, offset + 1 + ID_BYTES);
+            len.flip();
+            return new long[]{offset + ENTRY_HEADER, len.getLong()};
+        } catch (IOException e) {
+            throw error("Failed to read pack '%s'.", packFile.getName());
+        }
+    }
+
+
+    /**
+     * 获取对象内容的长度
+     * @param type 对象类型
+     * @param id 对象id
+     * @return 存在：长度，不存在：-1
+     */
+    public long size(ObjectType type, String id) {
+        long[] loc = locate(type, id);
+        return loc == null ? -1 : loc[1];
+    }
+
+
+    /**
+     * 读取对象内容
+     * @param type 对象类型
+     * @param id 对象id
+     * @return 存在：内容，不存在：null
+     */
+    public byte[] read(ObjectType type, String id) {
+        return read(type, id, Integer.MAX_VALUE);
+    }
+
+
+    /**
+     * 读取对象内容的开头部分
+     * @param type 对象类型
+     * @param id 对象id
+     * @param limit 最多读取的字节数
+     * @return 存在：内容的前 limit 字节（不足时为全部内容），不存在：null
+     */
+    public byte[] read(ObjectType type, String id, int limit) {
+        long[] loc = locate(type, id);
+        if (loc == null) {
+            return null;
+        }
+        ByteBuffer buf = ByteBuffer.allocate((int) Math.min(loc[1], limit));
+        try {
+            FileChannel ch = channel();
+            long pos = loc[0];
+            while (buf.hasRemaining()) {
+                int n = ch.read(buf, pos);
+                if (n < 0) {
+                    throw error("Truncated pack '%s'.", packFile.getName());
+                }
+                pos += n;
+            }
+        } catch (IOException e) {
+            throw error("Failed to read pack '%s'.", packFile.getName());
+        }
+        return buf.array();
+    }
+
+
+    /**
+     * 将对象内容直接写入目标文件，不经过堆内存
+     * @param type 对象类型
+     * @param id 对象id
+     * @param skip 跳过开头的字节数（如格式标记）
+     * @param target 目标文件
+     * @return true：写入成功，false：对象不存在
+     */
+    public boolean copyTo(ObjectType type, String id, long skip, File target) {
+        long[] loc = locate(type, id);
+        if (loc == null) {
+            return false;
+        }
+        try (FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            transferFully(channel(), loc[0] + skip, loc[1] - skip, out);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return true;
+    }
+
+
+    /**
+     * 打开对象内容的输入流，按需从 .pack 中读取
+     * @param type 对象类型
+     * @param id 对象id
+     * @return 存在：输入流，不存在：null
+     */
+    public InputStream open(ObjectType type, String id) {
+        long[] loc = locate(type, id);
+        if (loc == null) {
+            return null;
+        }
+        return new InputStream() {
+            private long pos = loc[0];
+
+            private final long end = loc[0] + loc[1];
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (pos >= end) {
+                    return -1;
+                }
+                int n = channel().read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - pos)), pos);
+                if (n < 0) {
+                    throw error("Truncated pack '%s'.", packFile.getName());
+                }
+                pos += n;
+                return n;
+            }
+        };
+    }
+
+
+    /**
+     * 获取给定类型的所有对象id（有序）
+     * @param type 对象类型
+     * @return id集合
+     */
+    public List<String> listIds(ObjectType type) {
+        List<String> res = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (typeAt(i) == type) {
+                res.add(idAt(i));
+            }
+        }
+        return res;
+    }
+
+
+    /**
+     * 获取给定类型下以指定前缀开头的对象id
+     * @param type 对象类型
+     * @param prefix 十六进制前缀
+     * @return id集合
+     */
+    public List<String> findByPrefix(ObjectType type, String prefix) {
+        List<String> res = new ArrayList<>();
+        if (prefix.length() < 2) {
+            return res;
+        }
+        int len = prefix.length() / 2;
+        byte[] key = hexToBytes(prefix.substring(0, len * 2));
+        int pos = search(padId(key));
+        int start = pos >= 0 ? pos : -(pos + 1);
+        for (int i = start; i < count && compareAt(i, key, len) == 0; i++) {
+            String id = idAt(i);
+            if (id.startsWith(prefix) && typeAt(i) == type) {
+                res.add(id);
+            }
+        }
+        return res;
+    }
+
+
+    private static byte[] padId(byte[] key) {
+        byte[] res = new byte[ID_BYTES];
+        System.arraycopy(key, 0, res, 0, key.length);
+        return res;
+    }
+
+
+    private synchronized FileChannel channel() throws IOException {
+        if (packChannel == null) {
+            packChannel = FileChannel.open(packFile.toPath(), StandardOpenOption.READ);
+        }
+        return packChannel;
+    }
+
+
+    /**
+     * 关闭打包文件的读取通道
+     */
+    public void close() {
+        if (packChannel != null) {
+            try {
+                packChannel.close();
+            } catch (IOException ignored) {
+                // 只读通道，关闭失败无需处理
+            }
+            packChannel = null;
+        }
+    }
+
+
+    /**
+     * 打包文件写入器，对象按加入顺序顺序写入 .pack，结束时生成有序的 .idx
+     */
+    public static class Writer {
+
+        private final File packDir;
+
+        private final File tmpPack;
+
+        private final DataOutputStream out;
+
+        private final MessageDigest digest;
+
+        /**
+         * id -> {类型, 偏移}
+         */
+        private final Map<String, long[]> entries = new TreeMap<>();
+
+        private long offset;
+
+        public Writer(File packDir) {
+            this.packDir = packDir;
+            this.tmpPack = join(packDir, "tmp-pack-" + System.nanoTime());
+            try {
+                digest = MessageDigest.getInstance("SHA-1");
+                OutputStream os = new BufferedOutputStream(Files.newOutputStream(tmpPack.toPath()));
+                out = new DataOutputStream(new DigestOutputStream(os, digest));
+                out.write(PACK_MAGIC);
+                out.writeInt(VERSION);
+                offset = 8;
+            } catch (IOException | NoSuchAlgorithmException e) {
+                throw error("Failed to create pack file.");
+            }
+        }
+
+
+        /**
+         * 判断对象是否已加入
+         * @param id 对象id
+         * @return true：已加入，false：未加入
+         */
+        public boolean contains(String id) {
+            return entries.containsKey(id);
+        }
+
+
+        /**
+         * 写入一个对象
+         * @param type 对象类型
+         * @param id 对象id
+         * @param data 对象内容
+         */
+        public void add(ObjectType type, String id, byte[] data) {
+            if (entries.containsKey(id)) {
+                return;
+            }
+            try {
+                out.writeByte(type.getCode());
+                out.write(hexToBytes(id));
+                out.writeLong(data.length);
+                out.write(data);
+            } catch (IOException e) {
+                throw error("Failed to write pack file.");
+            }
+            entries.put(id, new long[]{type.getCode(), offset});
+            offset += ENTRY_HEADER + data.length;
+        }
+
+
+        /**
+         * 以文件内容写入一个对象，内容经固定大小缓冲区流式写入
+         * @param type 对象类型
+         * @param id 对象id
+         * @param source 内容文件
+         */
+        public void add(ObjectType type, String id, File source) {
+            if (entries.containsKey(id)) {
+                return;
+            }
+            long length = source.length();
+            try {
+                out.writeByte(type.getCode());
+                out.write(hexToBytes(id));
+                out.writeLong(length);
+                Files.copy(source.toPath(), out);
+            } catch (IOException e) {
+                throw error("Failed to write pack file.");
+            }
+            entries.put(id, new long[]{type.getCode(), offset});
+            offset += ENTRY_HEADER + length;
+        }
+
+
+        /**
+         * 结束写入，生成索引并原子地发布打包文件
+         * @return 打包文件对象，若未写入任何对象返回null
+         */
+        public PackFile finish() {
+            try {
+                out.flush();
+                byte[] checksum = digest.digest();
+                out.close();
+                if (entries.isEmpty()) {
+                    Files.deleteIfExists(tmpPack.toPath());
+                    return null;
+                }
+                try (OutputStream tail = Files.newOutputStream(tmpPack.toPath(),
+                        StandardOpenOption.APPEND)) {
+                    tail.write(checksum);
+                }
+                String name = "pack-" + bytesToHex(checksum);
+                File tmpIdx = join(packDir, "tmp-idx-" + System.nanoTime());
+                writeIndex(tmpIdx, checksum);
+                File pack = join(packDir, name + ".pack");
+                File index = join(packDir, name + ".idx");
+                // 先发布 .pack 再发布 .idx，读者只通过 .idx 发现打包文件
+                Files.move(tmpPack.toPath(), pack.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                Files.move(tmpIdx.toPath(), index.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                return new PackFile(pack, index);
+            } catch (IOException e) {
+                throw error("Failed to finish pack file.");
+            }
+        }
+
+
+        private void writeIndex(File target, byte[] checksum) throws IOException {
+            int[] fanout = new int[256];
+            for (String id : entries.keySet()) {
+                fanout[Integer.parseInt(id.substring(0, 2), 16)]++;
+            }
+            for (int i = 1; i < 256; i++) {
+                fanout[i] += fanout[i - 1];
+            }
+            try (DataOutputStream idxOut = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(target.toPath())))) {
+                idxOut.write(IDX_MAGIC);
+                idxOut.writeInt(VERSION);
+                for (int f : fanout) {
+                    idxOut.writeInt(f);
+                }
+                for (String id : entries.keySet()) {
+                    idxOut.write(hexToBytes(id));
+                }
+                for (long[] e : entries.values()) {
+                    idxOut.writeByte((int) e[0]);
+                }
+                for (long[] e : entries.values()) {
+                    idxOut.writeLong(e[1]);
+                }
+                idxOut.write(checksum);
+            }
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package gitlet;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: 引用（分支头）的读写，引用存放在 refs 下的松散文件和 .gitlet/packed-refs 中
+ * <pre>
+ * packed-refs：每行 "提交id 引用名"，按引用名排序，如 "... refs/heads/master"
+ * </pre>
+ * 松散文件优先于 packed-refs 中的同名记录；packed-refs 中的引用被删除时写入全零id的松散文件作为删除标记，
+ * 创建、更新、删除都只写一个松散文件。读取单个引用时内存映射 packed-refs 二分查找，列出一个目录下的引用时
+ * 二分查找前缀后顺序读取。gc、pack-refs 或松散分支过多时将松散引用合并进 packed-refs（原子替换）并删除松散文件。
+ * 引用仍以 refs 下的文件对象表示，所属仓库为包含该 refs 目录且有 HEAD 文件的目录。
+ * @author: Yhltmxh
+ * @create: 2025-07-29 14:18
+ **/
+public class Refs {
+
+    public static final String PACKED_REFS = "packed-refs";
+
+    /**
+     * 删除标记
+     */
+    private static final String DELETED = "0".repeat(UID_LENGTH);
+
+    /**
+     * 松散分支超过该数量时自动合并
+     */
+    private static final int MAX_LOOSE = 128;
+
+
+    /**
+     * 读取引用指向的提交id
+     * @param ref refs 下的引用文件（可以不存在）
+     * @return 提交id，引用不存在时为null
+     */
+    public static String read(File ref) {
+        if (ref.isFile()) {
+            String id = readContentsAsString(ref).trim();
+            return id.isEmpty() || id.equals(DELETED) ? null : id;
+        }
+        File gitletDir = gitletDirOf(ref);
+        if (gitletDir == null) {
+            return null;
+        }
+        String name = nameOf(gitletDir, ref);
+        try (Packed packed = Packed.open(gitletDir)) {
+            if (packed == null) {
+                return null;
+            }
+            int pos = packed.lowerBound(name);
+            return pos < packed.size() && packed.nameAt(pos).equals(name) ? packed.idAt(pos) : null;
+        }
+    }
+
+
+    public static boolean exists(File ref) {
+        return read(ref) != null;
+    }
+
+
+    /**
+     * 创建或更新引用
+     * @param ref 引用文件
+     * @param commitId 提交id
+     */
+    public static void write(File ref, String commitId) {
+        ref.getParentFile().mkdirs();
+        writeContents(ref, commitId);
+    }
+
+
+    /**
+     * 删除引用，packed-refs 中有该引用时写入删除标记
+     * @param ref 引用文件
+     */
+    public static void delete(File ref) {
+        File gitletDir = gitletDirOf(ref);
+        boolean packed = false;
+        if (gitletDir != null) {
+            String name = nameOf(gitletDir, ref);
+            try (Packed p = Packed.open(gitletDir)) {
+                if (p != null) {
+                    int pos = p.lowerBound(name);
+                    packed = pos < p.size() && p.nameAt(pos).equals(name);
+                }
+            }
+        }
+        if (packed) {
+            writeContents(ref, DELETED);
+        } else if (ref.isFile()) {
+            deleteFile(ref);
+        }
+    }
+
+
+    /**
+     * 列出目录下的引用名（不含子目录）
+     * @param dir refs 下的目录，如 refs/heads
+     * @return 引用名（有序）
+     */
+    public static List<String> list(File dir) {
+        TreeMap<String, String> res = new TreeMap<>();
+        File gitletDir = gitletDirOf(join(dir, "_"));
+        if (gitletDir != null) {
+            String prefix = nameOf(gitletDir, dir) + "/";
+            try (Packed packed = Packed.open(gitletDir)) {
+                if (packed != null) {
+                    for (int pos = packed.lowerBound(prefix); pos < packed.size(); pos = packed.next(pos)) {
+                        String name = packed.nameAt(pos);
+                        if (!name.startsWith(prefix)) {
+                            break;
+                        }
+                        String rest = name.substring(prefix.length());
+                        if (rest.indexOf('/') < 0) {
+                            res.put(rest, packed.idAt(pos));
+                        }
+                    }
+                }
+            }
+        }
+        List<String> loose = plainFilenamesIn(dir);
+        if (loose != null) {
+            for (String name : loose) {
+                res.put(name, readContentsAsString(join(dir, name)).trim());
+            }
+        }
+        res.values().removeIf(id -> id.isEmpty() || id.equals(DELETED));
+        return new ArrayList<>(res.keySet());
+    }
+
+
+    /**
+     * 获取仓库中的所有引用
+     * @param gitletDir .gitlet目录
+     * @return 引用名 -> 提交id（有序）
+     */
+    public static Map<String, String> readAll(File gitletDir) {
+        TreeMap<String, String> res = new TreeMap<>();
+        try (Packed packed = Packed.open(gitletDir)) {
+            if (packed != null) {
+                for (int pos = 0; pos < packed.size(); pos = packed.next(pos)) {
+                    res.put(packed.nameAt(pos), packed.idAt(pos));
+                }
+            }
+        }
+        for (File file : looseRefs(gitletDir)) {
+            res.put(nameOf(gitletDir, file), readContentsAsString(file).trim());
+        }
+        res.values().removeIf(id -> id.isEmpty() || id.equals(DELETED));
+        return res;
+    }
+
+
+    /**
+     * 将所有松散引用合并进 packed-refs，删除标记同时移除对应的记录
+     * @param gitletDir .gitlet目录
+     * @return 合并的松散引用数量
+     */
+    public static int pack(File gitletDir) {
+        List<File> loose = looseRefs(gitletDir);
+        if (loose.isEmpty()) {
+            return 0;
+        }
+        Map<String, String> refs = readAll(gitletDir);
+        File target = join(gitletDir, PACKED_REFS);
+        File tmp = join(gitletDir, PACKED_REFS + ".lock");
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                Files.newOutputStream(tmp.toPath()), StandardCharsets.UTF_8), STREAM_BUFFER_SIZE)) {
+            for (Map.Entry<String, String> e : refs.entrySet()) {
+                out.write(e.getValue() + " " + e.getKey() + "\n");
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw error("Failed to write packed-refs.");
+        }
+        try {
+            Files.move(tmp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            tmp.delete();
+            throw error("Failed to write packed-refs.");
+        }
+        // packed-refs 发布后再删除松散文件
+        for (File file : loose) {
+            deleteFile(file);
+        }
+        return loose.size();
+    }
+
+
+    /**
+     * 目录下的松散引用过多时合并进 packed-refs
+     * @param dir refs 下的目录
+     */
+    public static void packIfNeeded(File dir) {
+        List<String> loose = plainFilenamesIn(dir);
+        File gitletDir = gitletDirOf(join(dir, "_"));
+        if (loose != null && loose.size() > MAX_LOOSE && gitletDir != null) {
+            pack(gitletDir);
+        }
+    }
+
+
+    /**
+     * 获取 refs 下所有的松散引用文件
+     */
+    private static List<File> looseRefs(File gitletDir) {
+        List<File> res = new ArrayList<>();
+        Deque<File> dirs = new ArrayDeque<>(List.of(join(gitletDir, "refs")));
+        while (!dirs.isEmpty()) {
+            File dir = dirs.pop();
+            List<String> names = plainFilenamesIn(dir);
+            if (names != null) {
+                for (String name : names) {
+                    res.add(join(dir, name));
+                }
+            }
+            List<String> subDirs = plainDirectoryIn(dir);
+            if (subDirs != null) {
+                for (String name : subDirs) {
+                    dirs.push(join(dir, name));
+                }
+            }
+        }
+        return res;
+    }
+
+
+    /**
+     * 找到引用文件所属的 .gitlet 目录：包含 HEAD 文件的最近的 refs 目录的父目录
+     */
+    private static File gitletDirOf(File ref) {
+        for (File dir = ref.getParentFile(); dir != null; dir = dir.getParentFile()) {
+            File parent = dir.getParentFile();
+            if (dir.getName().equals("refs") && parent != null && join(parent, "HEAD").isFile()) {
+                return parent;
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * 获取引用名，如 refs/heads/master
+     */
+    private static String nameOf(File gitletDir, File ref) {
+        return gitletDir.toPath().relativize(ref.toPath()).toString().replace(File.separatorChar, '/');
+    }
+
+
+    /**
+     * 内存映射的 packed-refs，位置为行首的字节偏移
+     */
+    private static class Packed implements Closeable {
+
+        private final FileChannel channel;
+
+        private final MappedByteBuffer buf;
+
+        private Packed(FileChannel channel, MappedByteBuffer buf) {
+            this.channel = channel;
+            this.buf = buf;
+        }
+
+        /**
+         * 打开 packed-refs，文件不存在时返回null
+         */
+        static Packed open(File gitletDir) {
+            File file = join(gitletDir, PACKED_REFS);
+            if (!file.isFile()) {
+                return null;
+            }
+            try {
+                FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                return new Packed(channel, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+            } catch (IOException e) {
+                throw error("Failed to read packed-refs.");
+            }
+        }
+
+        int size() {
+            return buf.limit();
+        }
+
+        /**
+         * 第一个引用名不小于 key 的行
+         */
+        int lowerBound(String key) {
+            int lo = 0;
+            int hi = size();
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                // 退回到所在行的行首，但不越过 lo
+                while (mid > lo && buf.get(mid - 1) != '\n') {
+                    mid--;
+                }
+                if (nameAt(mid).compareTo(key) < 0) {
+                    lo = next(mid);
+                } else {
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+        int next(int pos) {
+            while (pos < size() && buf.get(pos) != '\n') {
+                pos++;
+            }
+            return Math.min(pos + 1, size());
+        }
+
+        String idAt(int pos) {
+            return text(pos, pos + UID_LENGTH);
+        }
+
+        String nameAt(int pos) {
+            int end = next(pos);
+            if (end > pos && buf.get(end - 1) == '\n') {
+                end--;
+            }
+            return text(pos + UID_LENGTH + 1, end);
+        }
+
+        private String text(int from, int to) {
+            byte[] bytes = new byte[Math.max(0, to - from)];
+            buf.get(from, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // 只读通道，关闭失败不影响结果
+            }
+        }
+    }
+}
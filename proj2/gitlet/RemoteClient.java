@@ -0,0 +1,171 @@
+package gitlet;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.function.Predicate;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: 传输服务的客户端，地址形如 gitlet://主机:端口
+ * loopback:<.gitlet目录> 在本进程内启动一个临时的传输服务并经由回环连接访问，行为与连接独立的服务端相同，用于测试。
+ * @author: Yhltmxh
+ * @create: 2025-07-23 14:36
+ **/
+public class RemoteClient implements Closeable {
+
+    private static final String URL_PREFIX = "gitlet://";
+
+    private static final String LOOPBACK_PREFIX = "loopback:";
+
+    private static final int CONNECT_TIMEOUT = 10 * 1000;
+
+    private final String host;
+
+    private final int port;
+
+    /**
+     * loopback 地址对应的本进程内服务，其他地址为null
+     */
+    private final GitletServer loopback;
+
+    private RemoteClient(String host, int port, GitletServer loopback) {
+        this.host = host;
+        this.port = port;
+        this.loopback = loopback;
+    }
+
+
+    /**
+     * 判断远程仓库地址是否为传输服务地址
+     * @param remote 远程仓库地址
+     * @return true：传输服务地址，false：本地目录
+     */
+    public static boolean isUrl(String remote) {
+        return remote.startsWith(URL_PREFIX) || remote.startsWith(LOOPBACK_PREFIX);
+    }
+
+
+    /**
+     * 打开传输服务地址
+     * @param url 地址
+     * @param cwd 相对路径的基准目录
+     * @return 客户端
+     */
+    public static RemoteClient open(String url, File cwd) {
+        if (url.startsWith(LOOPBACK_PREFIX)) {
+            File dir = new File(url.substring(LOOPBACK_PREFIX.length()));
+            if (!dir.isAbsolute()) {
+                dir = join(cwd, dir.getPath());
+            }
+            if (!dir.isDirectory()) {
+                throw error("Remote directory not found.");
+            }
+            GitletServer server = new GitletServer(dir);
+            try {
+                return new RemoteClient("127.0.0.1", server.start(0, 1), server);
+            } catch (IOException e) {
+                throw error("Failed to start loopback server.");
+            }
+        }
+        String address = url.substring(URL_PREFIX.length());
+        int colon = address.lastIndexOf(':');
+        try {
+            return new RemoteClient(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)), null);
+        } catch (IndexOutOfBoundsException | NumberFormatException e) {
+            throw error("Invalid remote address '%s'.", url);
+        }
+    }
+
+
+    @Override
+    public void close() {
+        if (loopback != null) {
+            loopback.stop();
+        }
+    }
+
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+        return socket;
+    }
+
+
+    /**
+     * 发送请求头
+     */
+    private static void writeRequest(DataOutputStream out, byte op, String branch) throws IOException {
+        out.write(GitletServer.MAGIC);
+        out.writeInt(GitletServer.VERSION);
+        out.writeByte(op);
+        out.writeUTF(branch);
+        out.flush();
+    }
+
+
+    /**
+     * 拉取远程分支缺少的提交及对象
+     * @param branch 远程分支名
+     * @param target 本地对象库
+     * @param graph 本地提交图
+     * @return 写入的 bundle，远程分支不存在时为null
+     */
+    public Bundle fetch(String branch, ObjectStore target, CommitGraph graph) {
+        try (Socket socket = connect()) {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(), STREAM_BUFFER_SIZE));
+            writeRequest(out, GitletServer.OP_FETCH, branch);
+            if (GitletServer.readOptionalId(in) == null) {
+                return null;
+            }
+            GitletServer.writeFilter(out, Negotiator.buildFilter(graph));
+            out.flush();
+            return GitletServer.receive(in, out, target);
+        } catch (IOException | UncheckedIOException e) {
+            throw error("Failed to fetch from remote.");
+        }
+    }
+
+
+    /**
+     * 推送提交，远程分支头须满足给定条件（通常是当前提交的祖先）
+     * @param branch 远程分支名
+     * @param want 要推送的提交id
+     * @param source 本地对象库
+     * @param graph 本地提交图
+     * @param accept 判断能否更新远程分支头，参数为远程分支头（分支不存在时为null）
+     * @return true：推送成功，false：远程分支头不满足条件
+     */
+    public boolean push(String branch, String want, ObjectStore source, CommitGraph graph,
+                        Predicate<String> accept) {
+        try (Socket socket = connect()) {
+            DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream(), STREAM_BUFFER_SIZE));
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream(), STREAM_BUFFER_SIZE));
+            writeRequest(out, GitletServer.OP_PUSH, branch);
+            String head = GitletServer.readOptionalId(in);
+            BloomFilter theirs = GitletServer.readFilter(in);
+            if (!accept.test(head)) {
+                out.writeByte(GitletServer.ABORT);
+                out.flush();
+                return false;
+            }
+            Negotiator negotiator = new Negotiator(source, graph, theirs,
+                    id -> GitletServer.ask(in, out, id));
+            TransferPlan plan = TransferPlan.build(source, null, negotiator.findMissingCommits(want));
+            GitletServer.sendPack(out, plan, branch, want);
+            if (in.readByte() != GitletServer.OK) {
+                throw error(in.readUTF());
+            }
+            return true;
+        } catch (IOException | UncheckedIOException e) {
+            throw error("Failed to push to remote.");
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package gitlet;
 
-import java.io.File;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static gitlet.Service.*;
@@ -15,6 +17,11 @@ import static gitlet.Utils.*;
  */
 public class Repository {
 
+    /**
+     * gc 默认的宽限期（天）
+     */
+    private static final int GC_PRUNE_DAYS = 14;
+
 
     /**
      * 校验命令和对应参数数量是否符合要求，以及是否完成初始化
@@ -52,6 +59,8 @@ public class Repository {
         createDirectory(OBJECTS_DIR);
         createDirectory(COMMITS_DIR);
         createDirectory(BLOBS_DIR);
+        createDirectory(TREES_DIR);
+        createDirectory(PACK_DIR);
         createDirectory(REFS_DIR);
         createDirectory(HEADS_DIR);
         createDirectory(REMOTES_DIR);
@@ -65,6 +74,8 @@ public class Repository {
         // 创建初始提交
         Commit init = new Commit("initial commit", new Date(0), new ArrayList<>(), new TreeMap<>());
         saveCommit(init);
+        getCommitGraph().add(OBJECT_STORE, init);
+        updateMessageIndex(GITLET_DIR, OBJECT_STORE, List.of(init));
         // 创建master分支
         File master = saveBranch("master", init.getId());
         // 更新HEAD
@@ -77,28 +88,20 @@ public class Repository {
         if (!addFile.exists()) {
             exitWithError("File does not exist.");
         }
-        String path = addFile.getPath();
-        String blobId = sha1(filename, readContents(addFile));
-        // 转存blob
-        saveBlob(addFile, blobId);
         // 拿到暂存区对象
         Stage stage = getStage();
-        Map<String, String> addStage = stage.getAddStage();
-        Map<String, String> removeStage = stage.getRemoveStage();
         // 获取当前提交
-        Commit cur = getCurrentCommit();
-        Map<String, String> commitBlobs = cur.getBlobs();
-        // 若当前版本与提交版本一致，则移除暂存区中的文件索引
-        if (commitBlobs.containsKey(path) && commitBlobs.get(path).equals(blobId)) {
-            addStage.remove(path);
+        Map<String, String> commitBlobs = getCurrentCommit().getBlobs();
+        if (addFile.isDirectory()) {
+            // 添加目录时递归添加其下未被忽略的文件
+            for (String path : getWorkTreeScanner().listFiles(CWD, addFile)) {
+                stageFile(join(path), stage, commitBlobs);
+            }
         } else {
-            addStage.put(path, blobId);
+            stageFile(addFile, stage, commitBlobs);
         }
-        // 删除暂存区包含该文件则移除
-        removeStage.remove(path);
         // 保存暂存区
         saveStage(stage);
-
     }
 
 
@@ -131,7 +134,7 @@ public class Repository {
         if (commitBlobs.containsKey(path)) {
             removeStage.put(path, commitBlobs.get(path));
             if (rmFile.exists()) {
-                restrictedDelete(rmFile);
+                deleteWorkFile(path);
             }
         } else if (addStage.containsKey(path)) {
             // 若添加暂存区存在该文件则删除
@@ -143,8 +146,23 @@ public class Repository {
     }
 
 
-    public static void doLog() {
+    public static void doLog(String[] args) {
+        if (args.length == 3) {
+            if (!args[1].equals("--")) {
+                exitWithError("Incorrect operands.");
+            }
+            printPathLog(getCurrentCommit(), join(CWD, args[2]).getPath());
+            return;
+        }
         Commit cur = getCurrentCommit();
+        // 通过提交图沿第一父提交遍历，只为打印读取提交对象
+        List<String> chain = getCommitGraph().firstParentChain(cur.getId());
+        if (chain != null) {
+            for (String id : chain) {
+                printCommitLog(getCommitById(id));
+            }
+            return;
+        }
         while (cur.getParents().size() > 0) {
             printCommitLog(cur);
             cur = getCommitById(cur.getParents().get(0));
@@ -161,20 +179,19 @@ public class Repository {
     }
 
 
-    public static void doFind(String commitMessage) {
-        List<String> commitIds = getAllCommitId();
-        // 标记是否找到匹配的提交
-        boolean isFind = false;
-        for (String id : commitIds) {
-            Commit commit = getCommitById(id);
-            if (commitMessage.equals(commit.getMessage())) {
-                isFind = true;
-                message(id);
-            }
+    public static void doFind(String[] args) {
+        if (args.length == 3 && !args[1].equals("--contains")) {
+            exitWithError("Incorrect operands.");
         }
-        if (!isFind) {
+        // 通过提交信息索引查找，无需读取每个提交
+        MessageIndex index = MessageIndex.load(join(GITLET_DIR, MESSAGE_INDEX_NAME), OBJECT_STORE);
+        List<String> commitIds = args.length == 3 ? index.findContaining(args[2]) : index.find(args[1]);
+        if (commitIds.isEmpty()) {
             exitWithError("Found no commit with that message.");
         }
+        for (String id : commitIds) {
+            message(id);
+        }
     }
 
 
@@ -182,8 +199,8 @@ public class Repository {
         // 分支展示
         message("=== Branches ===");
         String currentBranch = getCurrentBranch().getName();
+        // 分支名已按字典序排列
         List<String> allBranches = getAllBranches();
-        Collections.sort(allBranches);
         for (String branch : allBranches) {
             if (currentBranch.equals(branch)) {
                 message(String.format("*%s", branch));
@@ -200,11 +217,11 @@ public class Repository {
         // 添加暂存区展示
         message("=== Staged Files ===");
         sortAndPrintList(new ArrayList<>(addStage.keySet())
-                .stream().map(path -> join(path).getName()).collect(Collectors.toList()));
+                .stream().map(Service::displayPath).collect(Collectors.toList()));
         // 删除暂存区展示
         message("=== Removed Files ===");
         sortAndPrintList(new ArrayList<>(removeStage.keySet())
-                .stream().map(path -> join(path).getName()).collect(Collectors.toList()));
+                .stream().map(Service::displayPath).collect(Collectors.toList()));
 
         List<String> allFilesInWorkDir = getAllFilesInWorkDir();
 
@@ -213,18 +230,27 @@ public class Repository {
         List<String> modAndNotStagedList = new ArrayList<>();
         Commit currentCommit = getCurrentCommit();
         Map<String, String> commitBlobs = currentCommit.getBlobs();
+        // 并行计算已跟踪和已暂存文件的哈希，状态未变化的文件直接使用缓存
+        Set<File> toHash = new LinkedHashSet<>();
+        for (String path : commitBlobs.keySet()) {
+            toHash.add(join(path));
+        }
+        for (String path : addStage.keySet()) {
+            toHash.add(join(path));
+        }
+        Map<String, String> workBlobIds = getWorkTreeScanner().hash(toHash, stage);
         for (String path : commitBlobs.keySet()) {
             File file = join(path);
             if (!file.exists()) {
                 // 1. 当前提交中已跟踪，并已从工作目录中删除，但未在删除暂存区，
                 if (!removeStage.containsKey(path)) {
-                    modAndNotStagedList.add(file.getName() + " (deleted)");
+                    modAndNotStagedList.add(displayPath(path) + " (deleted)");
                 }
             } else {
-                String blobId = sha1(file.getName(), readContents(file));
+                String blobId = workBlobIds.get(path);
                 // 2. 当前提交中已跟踪，工作目录中已更改，但未添加暂存
                 if (!blobId.equals(commitBlobs.get(path)) && !addStage.containsKey(path)) {
-                    modAndNotStagedList.add(file.getName() + " (modified)");
+                    modAndNotStagedList.add(displayPath(path) + " (modified)");
                 }
             }
         }
@@ -233,12 +259,12 @@ public class Repository {
             File file = join(path);
             // 3. 已在添加暂存区，但在工作目录中已删除
             if (!file.exists()) {
-                modAndNotStagedList.add(file.getName() + " (deleted)");
+                modAndNotStagedList.add(displayPath(path) + " (deleted)");
             } else {
-                String blobId = sha1(file.getName(), readContents(file));
+                String blobId = workBlobIds.get(path);
                 // 4. 已在添加暂存区，但内容与工作目录中的不同
                 if (!blobId.equals(addStage.get(path))) {
-                    modAndNotStagedList.add(file.getName() + " (modified)");
+                    modAndNotStagedList.add(displayPath(path) + " (modified)");
                 }
             }
         }
@@ -248,9 +274,13 @@ public class Repository {
         for (String path : allFilesInWorkDir) {
             if ((!commitBlobs.containsKey(path) && !addStage.containsKey(path))
                     || removeStage.containsKey(path)) {
-                message(join(path).getName());
+                message(displayPath(path));
             }
         }
+        // 状态缓存有更新时写回index，之后的status无需再读取这些文件
+        if (stage.isStatsChanged()) {
+            saveStage(stage);
+        }
     }
 
 
@@ -298,9 +328,12 @@ public class Repository {
     }
 
     public static void doBranch(String branchName) {
+        if (!isValidBranchName(branchName)) {
+            exitWithError("Invalid branch name.");
+        }
         // 校验该分支是否已存在
         File branchFile = join(HEADS_DIR, branchName);
-        if (branchFile.exists()) {
+        if (Refs.exists(branchFile)) {
             exitWithError("A branch with that name already exists.");
         }
         // 创建master分支
@@ -311,12 +344,12 @@ public class Repository {
     public static void doRemoveBranch(String branchName) {
         File branchFile = join(HEADS_DIR, branchName);
         // 校验该分支是否不存在或为当前分支
-        if (!branchFile.exists()) {
+        if (!Refs.exists(branchFile)) {
             exitWithError("A branch with that name does not exist.");
         } else if (branchName.equals(getCurrentBranch().getName())) {
             exitWithError("Cannot remove the current branch.");
         }
-        deleteFile(branchFile);
+        Refs.delete(branchFile);
     }
 
 
@@ -326,7 +359,7 @@ public class Repository {
             exitWithError("No commit with that id exists.");
         } else {
             checkoutCommit(commit);
-            updateBranch(commitId, getCurrentBranch());
+            updateBranch(commit.getId(), getCurrentBranch());
         }
     }
 
@@ -340,6 +373,15 @@ public class Repository {
             exitWithError("You have uncommitted changes.");
         }
         Commit target = getBranchHeadByName(branchName);
+        // 合并提交信息中使用的名字：分支名或完整的提交id
+        String targetName = branchName;
+        if (target == null) {
+            // 不是分支名时按（缩写的）提交id解析
+            target = getCommitById(branchName);
+            if (target != null) {
+                targetName = target.getId();
+            }
+        }
         // 给定分支不存在
         if (target == null) {
             exitWithError("A branch with that name does not exist.");
@@ -355,9 +397,9 @@ public class Repository {
             if (splitPointCommit.getId().equals(target.getId())) {
                 exitWithError("Given branch is an ancestor of the current branch.");
             } else if (splitPointCommit.getId().equals(current.getId())) {
-                // 如果分叉点是当前分支，那么先检出给定分支，再打印消息
+                // 如果分叉点是当前分支，那么先检出给定提交，再将当前分支移动到该提交，HEAD仍指向当前分支
                 checkoutCommit(target);
-                updateHead(branchName);
+                updateBranch(target.getId(), currentBranch);
                 exitWithError("Current branch fast-forwarded.");
             }
             // 执行文件合并
@@ -367,7 +409,7 @@ public class Repository {
             parents.add(current.getId());
             parents.add(target.getId());
             String currentBranchName = currentBranch.getName();
-            String message = String.format("Merged %s into %s.", branchName, currentBranchName);
+            String message = String.format("Merged %s into %s.", targetName, currentBranchName);
             dealCommit(current, stage, message, parents);
         }
     }
@@ -379,7 +421,10 @@ public class Repository {
         if (remoteConfig.containsKey(remoteName)) {
             exitWithError("A remote with that name already exists.");
         }
-        remoteConfig.put(remoteName, remoteDirectory.replace("/", File.separator));
+        if (!RemoteClient.isUrl(remoteDirectory)) {
+            remoteDirectory = remoteDirectory.replace("/", File.separator);
+        }
+        remoteConfig.put(remoteName, remoteDirectory);
         saveConfig(config);
         createDirectory(join(REMOTES_DIR, remoteName));
     }
@@ -397,36 +442,37 @@ public class Repository {
 
 
     public static void doPush(String remoteName, String remoteBranchName) {
-        remoteBranchCheck(remoteName);
+        String remote = remoteBranchCheck(remoteName);
         Commit currentCommit = getCurrentCommit();
-        Commit remoteBranch = getRemoteBranchHeadByName(remoteBranchName);
-        List<Commit> pushCommitList;
-        if (remoteBranch == null) {
-            pushCommitList = getCommitList(currentCommit);
-        } else {
-            pushCommitList = getCommitList(currentCommit, remoteBranch);
+        if (RemoteClient.isUrl(remote)) {
+            dealRemotePush(remote, currentCommit, remoteBranchName);
+            return;
         }
-        if (pushCommitList == null || pushCommitList.isEmpty()) {
-            exitWithError("Please pull down remote changes before pushing.");
-        } else {
-            dealPush(pushCommitList, currentCommit.getId(), remoteBranchName);
+        Commit remoteBranch = getRemoteBranchHeadByName(remoteBranchName);
+        if (remoteBranch != null) {
+            // 远程分支头必须是当前提交的祖先
+            List<Commit> pushCommitList = getCommitList(currentCommit, remoteBranch);
+            if (pushCommitList == null || pushCommitList.isEmpty()) {
+                exitWithError("Please pull down remote changes before pushing.");
+            }
         }
+        // 只推送远程仓库缺少的提交及对象
+        dealPush(currentCommit.getId(), remoteBranchName);
     }
 
 
     public static void doFetch(String remoteName, String remoteBranchName) {
-        remoteBranchCheck(remoteName);
+        String remote = remoteBranchCheck(remoteName);
+        if (RemoteClient.isUrl(remote)) {
+            dealRemoteFetch(remote, remoteBranchName, remoteName);
+            return;
+        }
         Commit remoteBranch = getRemoteBranchHeadByName(remoteBranchName);
-
-        List<Commit> fetchCommitList = null;
         if (remoteBranch == null) {
             exitWithError("That remote does not have that branch.");
-        } else {
-            fetchCommitList = getCommitList(remoteBranch);
-        }
-        if (fetchCommitList != null && !fetchCommitList.isEmpty()) {
-            dealFetch(fetchCommitList, remoteBranch.getId(), remoteBranchName, remoteName);
         }
+        // 只拉取本地缺少的提交及对象
+        dealFetch(remoteBranch.getId(), remoteBranchName, remoteName);
     }
 
 
@@ -434,4 +480,269 @@ public class Repository {
         doFetch(remoteName, remoteBranchName);
         doMerge(remoteName + "/" + remoteBranchName);
     }
+
+
+    public static void doServe(String port) {
+        int threads = getConfig().getInt(Config.PARALLELISM, Runtime.getRuntime().availableProcessors());
+        GitletServer server = new GitletServer(GITLET_DIR);
+        try {
+            int bound = server.start(Integer.parseInt(port), threads);
+            message("Serving on gitlet://127.0.0.1:%d", bound);
+            server.await();
+        } catch (NumberFormatException e) {
+            exitWithError("Incorrect operands.");
+        } catch (IOException e) {
+            exitWithError(String.format("Failed to listen on port %s.", port));
+        } catch (InterruptedException e) {
+            server.stop();
+        }
+    }
+
+
+    public static void doDaemon(String operation) {
+        if (operation.equals("run")) {
+            if (Daemon.isServing()) {
+                exitWithError("A daemon is already running.");
+            }
+            Daemon.run();
+        } else if (operation.equals("stop")) {
+            Daemon.stop();
+        } else {
+            exitWithError("Incorrect operands.");
+        }
+    }
+
+
+    public static void doGc(String[] args) {
+        boolean dryRun = false;
+        int days = GC_PRUNE_DAYS;
+        for (int i = 1; i < args.length; i++) {
+            if (args[i].equals("--dry-run")) {
+                dryRun = true;
+            } else if (args[i].equals("--prune=now")) {
+                days = 0;
+            } else if (args[i].matches("--prune=\\d{1,5}")) {
+                days = Integer.parseInt(args[i].substring("--prune=".length()));
+            } else {
+                exitWithError("Incorrect operands.");
+            }
+        }
+        long before = OBJECT_STORE.diskUsage();
+        GarbageCollector gc = new GarbageCollector(OBJECT_STORE,
+                getConfig().getInt(Config.PARALLELISM, Runtime.getRuntime().availableProcessors()));
+        try {
+            gc.mark(getAllRefHeads(), getStage().getAddStage().values());
+        } catch (GitletException e) {
+            exitWithError(e.getMessage());
+        }
+        gc.sweep(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days));
+        message("Reachable: %d commits, %d trees, %d blobs.", gc.getMarkedCount(ObjectType.COMMIT),
+                gc.getMarkedCount(ObjectType.TREE), gc.getMarkedCount(ObjectType.BLOB));
+        if (gc.getRecentCount() > 0) {
+            message("Kept %d unreachable objects newer than %d days.", gc.getRecentCount(), days);
+        }
+        String garbage = String.format("%d commits, %d trees, %d blobs, %d files in total (%s)",
+                gc.getGarbageCount(ObjectType.COMMIT), gc.getGarbageCount(ObjectType.TREE),
+                gc.getGarbageCount(ObjectType.BLOB), gc.getGarbageCount(), formatSize(gc.getGarbageBytes()));
+        if (dryRun) {
+            message("Would remove %s.", garbage);
+            message("Object store size: %s.", formatSize(before));
+            return;
+        }
+        gc.remove();
+        Refs.pack(GITLET_DIR);
+        // 提交图和提交信息索引中可能有已删除的提交，重新生成
+        writeCommitGraph();
+        join(GITLET_DIR, MESSAGE_INDEX_NAME).delete();
+        MessageIndex.load(join(GITLET_DIR, MESSAGE_INDEX_NAME), OBJECT_STORE);
+        message("Removed %s.", garbage);
+        message("Object store size: %s before, %s after.", formatSize(before), formatSize(OBJECT_STORE.diskUsage()));
+    }
+
+
+    /**
+     * 格式化字节数
+     */
+    private static String formatSize(long bytes) {
+        if (bytes < 1024) {
+            return bytes + " B";
+        } else if (bytes < 1024 * 1024) {
+            return String.format("%.1f KiB", bytes / 1024.0);
+        }
+        return String.format("%.1f MiB", bytes / (1024.0 * 1024.0));
+    }
+
+
+    public static void doRepack() {
+        int count = OBJECT_STORE.repack();
+        message("Packed %d objects.", count);
+    }
+
+
+    public static void doPackRefs() {
+        message("Packed %d refs.", Refs.pack(GITLET_DIR));
+    }
+
+
+    public static void doCountObjects() {
+        List<String> chunks = OBJECT_STORE.listIds(ObjectType.CHUNK);
+        message("Objects: %d commits, %d trees, %d blobs, %d chunks.", OBJECT_STORE.listIds(ObjectType.COMMIT).size(),
+                OBJECT_STORE.listIds(ObjectType.TREE).size(), OBJECT_STORE.listIds(ObjectType.BLOB).size(),
+                chunks.size());
+        int deltas = 0;
+        int chunked = 0;
+        long content = 0;
+        long stored = 0;
+        long deltaContent = 0;
+        long deltaStored = 0;
+        long chunkedContent = 0;
+        for (String id : OBJECT_STORE.listIds(ObjectType.BLOB)) {
+            long size = OBJECT_STORE.size(ObjectType.BLOB, id);
+            long storedSize = OBJECT_STORE.storedSize(ObjectType.BLOB, id);
+            content += size;
+            stored += storedSize;
+            if (OBJECT_STORE.deltaBase(id) != null) {
+                deltas++;
+                deltaContent += size;
+                deltaStored += storedSize;
+            } else if (!OBJECT_STORE.chunkIds(id).isEmpty()) {
+                chunked++;
+                chunkedContent += size;
+            }
+        }
+        long chunkStored = 0;
+        for (String id : chunks) {
+            chunkStored += OBJECT_STORE.storedSize(ObjectType.CHUNK, id);
+        }
+        stored += chunkStored;
+        message("Blob content: %s, stored: %s.", formatSize(content), formatSize(stored));
+        message("Deltas: %d blobs, %s saved.", deltas, formatSize(deltaContent - deltaStored));
+        message("Chunked: %d blobs, %s saved.", chunked, formatSize(chunkedContent - chunkStored));
+    }
+
+
+    /**
+     * 无参数时比较当前提交与工作目录，一个参数时比较指定提交与工作目录，两个参数时比较两个提交
+     */
+    public static void doDiff(String[] args) {
+        Commit from = args.length > 1 ? resolveCommit(args[1]) : getCurrentCommit();
+        Commit to = args.length > 2 ? resolveCommit(args[2]) : null;
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), STREAM_BUFFER_SIZE);
+        try {
+            if (to != null) {
+                printCommitDiff(out, from, to);
+            } else {
+                Stage stage = getStage();
+                printWorkTreeDiff(out, from, stage);
+                if (stage.isStatsChanged()) {
+                    saveStage(stage);
+                }
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw error("Failed to write diff.");
+        }
+    }
+
+
+    public static void doMigrate() {
+        int count = OBJECT_STORE.rewriteCommits(data -> {
+            if (!ObjectCodec.isOutdatedCommit(data)) {
+                return data;
+            }
+            Commit commit = ObjectCodec.decodeCommit(data);
+            commit.setTree(OBJECT_STORE.writeTree(CWD, commit.getBlobs()));
+            return ObjectCodec.encodeCommit(commit);
+        });
+        // 读取时兼容旧格式，保存时总是写成新格式
+        saveStage(getStage());
+        message("Migrated %d commits.", count);
+    }
+
+
+    public static void doCommitGraph(String operation) {
+        if (!operation.equals("write")) {
+            exitWithError("Incorrect operands.");
+        }
+        writeCommitGraph();
+    }
+
+
+    public static void doConfig(String[] args) {
+        Config config = getConfig();
+        Map<String, String> settings = config.getSettings();
+        if (args.length == 2) {
+            if (settings.containsKey(args[1])) {
+                message(settings.get(args[1]));
+            }
+            return;
+        }
+        if (args[1].equals(Config.PARALLELISM)) {
+            checkIntSetting(args[1], args[2], 1, Integer.MAX_VALUE);
+        } else if (args[1].equals(Config.BUNDLE_COMPRESSION)) {
+            checkIntSetting(args[1], args[2], 0, 9);
+        } else if (args[1].equals(Config.TRANSFER_BUNDLE)) {
+            checkIntSetting(args[1], args[2], 0, 1);
+        } else if (args[1].equals(Config.DELTA_DEPTH)) {
+            checkIntSetting(args[1], args[2], 0, 50);
+        } else if (args[1].equals(Config.COMPRESSION)) {
+            checkIntSetting(args[1], args[2], 0, 9);
+        } else if (args[1].equals(Config.CHUNK_THRESHOLD)) {
+            checkIntSetting(args[1], args[2], 0, Integer.MAX_VALUE);
+        }
+        settings.put(args[1], args[2]);
+        saveConfig(config);
+        // 常驻进程中对象库已经读取过配置
+        OBJECT_STORE.reloadConfig();
+    }
+
+
+    /**
+     * 校验整数配置项的取值范围
+     */
+    private static void checkIntSetting(String key, String value, int min, int max) {
+        try {
+            int v = Integer.parseInt(value);
+            if (v < min || v > max) {
+                exitWithError(String.format("Invalid value for %s.", key));
+            }
+        } catch (NumberFormatException e) {
+            exitWithError(String.format("Invalid value for %s.", key));
+        }
+    }
+
+
+    public static void doBundle(String[] args) {
+        if (args[1].equals("create") && args.length == 4) {
+            Commit head = getBranchHeadByName(args[3]);
+            if (head == null) {
+                exitWithError("A branch with that name does not exist.");
+            }
+            // bundle 包含分支的全部历史
+            Negotiator negotiator = new Negotiator(OBJECT_STORE, getCommitGraph());
+            TransferPlan plan = TransferPlan.build(OBJECT_STORE, null, negotiator.findMissingCommits(head.getId()));
+            Bundle.write(getBundleFile(args[2]), args[3], head.getId(), plan,
+                    getConfig().getInt(Config.BUNDLE_COMPRESSION, 0));
+        } else if (args[1].equals("unbundle") && args.length == 3) {
+            File file = getBundleFile(args[2]);
+            if (!file.exists()) {
+                exitWithError("Bundle file does not exist.");
+            }
+            Bundle bundle = null;
+            try {
+                bundle = Bundle.read(file, OBJECT_STORE);
+            } catch (GitletException e) {
+                exitWithError(e.getMessage());
+            }
+            getCommitGraph().add(OBJECT_STORE, getCommitById(bundle.getHead()));
+            updateMessageIndex(GITLET_DIR, OBJECT_STORE, readCommits(OBJECT_STORE, bundle.getCommitIds()));
+            // 与 fetch 一样更新到远程跟踪分支 bundle/<分支名>，由用户自行合并
+            String branch = bundle.getBranch();
+            File remoteDir = join(REMOTES_DIR, "bundle");
+            createDirectory(remoteDir);
+            updateBranch(bundle.getHead(), join(remoteDir, branch.substring(branch.lastIndexOf('/') + 1)));
+        } else {
+            exitWithError("Incorrect operands.");
+        }
+    }
 }
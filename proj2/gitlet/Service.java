@@ -2,13 +2,17 @@ package gitlet;
 
 
 import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.TimeUnit;
 
 import static gitlet.Utils.*;
-import static gitlet.Utils.writeObject;
 
 /**
  * @description: 业务处理
@@ -22,23 +26,44 @@ public class Service {
     public static final File OBJECTS_DIR = join(GITLET_DIR, "objects");
     public static final File COMMITS_DIR = join(OBJECTS_DIR, "commits");
     public static final File BLOBS_DIR = join(OBJECTS_DIR, "blobs");
+    public static final File TREES_DIR = join(OBJECTS_DIR, "trees");
+    public static final File PACK_DIR = join(OBJECTS_DIR, "pack");
     public static final File REFS_DIR = join(GITLET_DIR, "refs");
     public static final File HEADS_DIR = join(REFS_DIR, "heads");
     public static final File REMOTES_DIR = join(REFS_DIR, "remotes");
     public static final File INDEX_FILE = join(GITLET_DIR, "index");
     public static final File HEAD_FILE = join(GITLET_DIR, "HEAD");
     public static final File CONFIG_FILE = join(GITLET_DIR, "config");
+    public static final String MESSAGE_INDEX_NAME = "message-index";
+    /**
+     * diff 输出的上下文行数
+     */
+    public static final int DIFF_CONTEXT = 3;
+    /**
+     * diff 逐行比较的文件大小上限，超过时不读取内容，只提示不同
+     */
+    public static final long DIFF_MAX_SIZE = 8 * 1024 * 1024;
+    public static final ObjectStore OBJECT_STORE = new ObjectStore(OBJECTS_DIR);
 
     static File REMOTE_CWD;
     static File REMOTE_GITLET_DIR;
     static File REMOTE_OBJECTS_DIR;
-    static File REMOTE_COMMITS_DIR;
-    static File REMOTE_BLOBS_DIR;
     static File REMOTE_REFS_DIR;
     static File REMOTE_HEADS_DIR;
     static File REMOTE_INDEX_FILE;
     static File REMOTE_HEAD_FILE;
     static File REMOTE_CONFIG_FILE;
+    static ObjectStore REMOTE_OBJECT_STORE;
+
+    /**
+     * 本地提交图，首次使用时加载
+     */
+    private static CommitGraph commitGraph;
+
+    /**
+     * 工作目录扫描器，首次使用时创建
+     */
+    private static WorkTreeScanner workTreeScanner;
 
 
     /**
@@ -49,30 +74,69 @@ public class Service {
         REMOTE_CWD = join(remoteDir.getParent());
         REMOTE_GITLET_DIR = remoteDir;
         REMOTE_OBJECTS_DIR = join(REMOTE_GITLET_DIR, "objects");
-        REMOTE_COMMITS_DIR = join(REMOTE_OBJECTS_DIR, "commits");
-        REMOTE_BLOBS_DIR = join(REMOTE_OBJECTS_DIR, "blobs");
         REMOTE_REFS_DIR = join(REMOTE_GITLET_DIR, "refs");
         REMOTE_HEADS_DIR = join(REMOTE_REFS_DIR, "heads");
         REMOTE_INDEX_FILE = join(REMOTE_GITLET_DIR, "index");
         REMOTE_HEAD_FILE = join(REMOTE_GITLET_DIR, "HEAD");
         REMOTE_CONFIG_FILE = join(REMOTE_GITLET_DIR, "config");
+        REMOTE_OBJECT_STORE = new ObjectStore(REMOTE_OBJECTS_DIR);
     }
 
 
     /**
-     * 保存提交对象
+     * 保存提交对象，文件索引按目录拆分为树对象保存
      * @param commit 提交对象
      */
     public static void saveCommit(Commit commit) {
-        String id = commit.getId();
+        if (commit.getTree() == null) {
+            commit.setTree(OBJECT_STORE.writeTree(CWD, commit.getBlobs()));
+        }
+        OBJECT_STORE.write(ObjectType.COMMIT, commit.getId(), ObjectCodec.encodeCommit(commit));
+    }
+
+
+    /**
+     * 获取本地提交图
+     * @return 提交图对象
+     */
+    public static CommitGraph getCommitGraph() {
+        if (commitGraph == null || commitGraph.isStale()) {
+            commitGraph = CommitGraph.load(GITLET_DIR);
+        }
+        return commitGraph;
+    }
+
 
-        File prefix = join(COMMITS_DIR, id.substring(0, 2));
-        createDirectory(prefix);
+    /**
+     * 丢弃缓存的仓库状态，常驻进程中命令异常结束后调用
+     */
+    public static void resetState() {
+        commitGraph = null;
+    }
 
-        File commitFile = join(prefix, id.substring(2));
-        createFile(commitFile);
-        // 文件内容
-        writeObject(commitFile, commit);
+
+    /**
+     * 重新生成本地提交图
+     */
+    public static void writeCommitGraph() {
+        commitGraph = CommitGraph.write(GITLET_DIR, OBJECT_STORE);
+    }
+
+
+    /**
+     * 将提交加入提交信息索引
+     * @param gitletDir 仓库的.gitlet目录
+     * @param store 仓库的对象库
+     * @param commits 新增的提交
+     */
+    public static void updateMessageIndex(File gitletDir, ObjectStore store, List<Commit> commits) {
+        File indexFile = join(gitletDir, MESSAGE_INDEX_NAME);
+        if (!indexFile.exists()) {
+            // 重建时对象库中已包含这些提交
+            MessageIndex.load(indexFile, store);
+            return;
+        }
+        MessageIndex.load(indexFile, store).add(commits);
     }
 
 
@@ -84,8 +148,8 @@ public class Service {
      */
     public static File saveBranch(String branchName, String commitId) {
         File branch = join(HEADS_DIR, branchName);
-        createFile(branch);
-        writeContents(branch, commitId);
+        Refs.write(branch, commitId);
+        Refs.packIfNeeded(HEADS_DIR);
         return branch;
     }
 
@@ -95,16 +159,24 @@ public class Service {
      * @param source 源文件
      */
     public static void saveBlob(File source, String blobId) {
-        File dir = join(BLOBS_DIR, blobId.substring(0, 2));
-        File blobFile = join(dir, blobId.substring(2));
-        // 前缀目录不存在就先创建目录
-        if (!dir.exists()) {
-            createDirectory(dir);
-        }
-        // 当前blob不存在则创建新blob
-        if (!blobFile.exists()) {
-            copyFile(source, blobFile);
-        }
+        // 当前blob不存在则创建新blob（包括已打包的blob）
+        OBJECT_STORE.writeFile(ObjectType.BLOB, blobId, source);
+    }
+
+
+    /**
+     * 普通文件转存为blob，计算哈希与写入blob在同一次读取中完成；
+     * 新blob尽可能存储为对上一版本的增量，增量链的最大深度取自配置项core.deltaDepth
+     * @param source 源文件
+     * @param stage 暂存区对象，记录源文件的状态缓存
+     * @param baseId 同一文件上一版本的blob id，可以为null
+     * @return blob id
+     */
+    public static String saveBlob(File source, Stage stage, String baseId) {
+        int maxDepth = getConfig().getInt(Config.DELTA_DEPTH, Config.DEFAULT_DELTA_DEPTH);
+        String blobId = OBJECT_STORE.writeBlob(source.getName(), source, baseId, maxDepth);
+        recordFileStat(source, blobId, stage);
+        return blobId;
     }
 
 
@@ -113,7 +185,7 @@ public class Service {
      * @param stage 暂存区对象
      */
     public static void saveStage(Stage stage) {
-        writeObject(INDEX_FILE, stage);
+        writeContents(INDEX_FILE, (Object) ObjectCodec.encodeStage(stage));
     }
 
 
@@ -148,19 +220,17 @@ public class Service {
      * @param branch 分支文件
      */
     public static void updateBranch(String commitId, File branch) {
-        if (!branch.exists()) {
-            createFile(branch);
-        }
-        writeContents(branch, commitId);
+        Refs.write(branch, commitId);
     }
 
 
     /**
-     * 更新commit对象中blob的工作目录
+     * 更新commit对象中blob的工作目录，提交对象可能来自缓存，因此返回新的对象而不修改原对象
      * @param targetCWD 目标地址
      * @param commit 提交对象
+     * @return 更新后的提交对象
      */
-    public static void updateBlobsPathInCommit(File targetCWD, Commit commit) {
+    public static Commit updateBlobsPathInCommit(File targetCWD, Commit commit) {
         Map<String, String> newBlobs = new TreeMap<>();
         Map<String, String> blobs = commit.getBlobs();
         for (String path : blobs.keySet()) {
@@ -168,7 +238,13 @@ public class Service {
             String blobId = blobs.get(path);
             newBlobs.put(join(targetCWD, filename).getPath(), blobId);
         }
-        commit.setBlobs(newBlobs);
+        Commit res = new Commit();
+        res.setId(commit.getId());
+        res.setMessage(commit.getMessage());
+        res.setCreateTime(commit.getCreateTime());
+        res.setParents(commit.getParents());
+        res.setBlobs(newBlobs);
+        return res;
     }
 
 
@@ -184,12 +260,41 @@ public class Service {
 
 
     /**
-     * 获取所有分支文件名
-     * @return 分支文件名集合
+     * 获取所有分支名（包括 packed-refs 中的分支）
+     * @return 分支名集合（有序）
      */
     public static List<String> getAllBranches() {
-        List<String> branches = plainFilenamesIn(HEADS_DIR);
-        return branches == null ? new ArrayList<>() : branches;
+        return Refs.list(HEADS_DIR);
+    }
+
+
+    /**
+     * 获取所有本地分支和远程跟踪分支指向的提交id
+     * @return 提交id集合
+     */
+    public static Set<String> getAllRefHeads() {
+        return new TreeSet<>(Refs.readAll(GITLET_DIR).values());
+    }
+
+
+    /**
+     * 从对象库中读取提交
+     * @param store 对象库
+     * @param commitId 完整的提交id
+     * @return 存在：提交对象，不存在：null
+     */
+    public static Commit readCommit(ObjectStore store, String commitId) {
+        return store.readCommit(commitId);
+    }
+
+
+    /**
+     * 向标准错误输出对象缓存的命中情况
+     */
+    public static void printCacheStats() {
+        System.err.println("commit cache: " + OBJECT_STORE.getCommitCache());
+        System.err.println("blob cache: " + OBJECT_STORE.getBlobCache());
+        System.err.println("delta base cache: " + OBJECT_STORE.getDeltaBaseCache());
     }
 
 
@@ -198,23 +303,21 @@ public class Service {
      * @param branchName 分支名
      * @return 存在：提交对象，不存在：null
      */
-    public static Commit getBranchHeadByName(File headsDir, File commitsDir, String branchName) {
-        File branchFile = join(headsDir, branchName);
-        if (!branchFile.exists()) {
+    public static Commit getBranchHeadByName(File headsDir, ObjectStore store, String branchName) {
+        String commitId = Refs.read(join(headsDir, branchName));
+        if (commitId == null) {
             return null;
         }
-        String commitId = readContentsAsString(branchFile);
-        File headCommit = join(commitsDir, commitId.substring(0, 2), commitId.substring(2));
-        return readObject(headCommit, Commit.class);
+        return readCommit(store, commitId);
     }
 
 
     public static Commit getBranchHeadByName(String branchName) {
         String[] s = branchName.split("/");
         if (s.length > 1) {
-            return getBranchHeadByName(join(REMOTES_DIR, s[0]), COMMITS_DIR, s[1]);
+            return getBranchHeadByName(join(REMOTES_DIR, s[0]), OBJECT_STORE, s[1]);
         }
-        return getBranchHeadByName(HEADS_DIR, COMMITS_DIR, branchName);
+        return getBranchHeadByName(HEADS_DIR, OBJECT_STORE, branchName);
     }
 
 
@@ -224,7 +327,7 @@ public class Service {
      * @return 存在：提交对象，不存在：null
      */
     public static Commit getRemoteBranchHeadByName(String branchName) {
-        return getBranchHeadByName(REMOTE_HEADS_DIR, REMOTE_COMMITS_DIR, branchName);
+        return getBranchHeadByName(REMOTE_HEADS_DIR, REMOTE_OBJECT_STORE, branchName);
     }
 
 
@@ -236,9 +339,7 @@ public class Service {
         // 获取当前head的位置
         String head = readContentsAsString(HEAD_FILE);
         File branch = join(GITLET_DIR, head.substring(5));
-        head = readContentsAsString(branch);
-        File currentCommit = join(COMMITS_DIR, head.substring(0, 2), head.substring(2));
-        return readObject(currentCommit, Commit.class);
+        return readCommit(OBJECT_STORE, Refs.read(branch));
     }
 
 
@@ -248,45 +349,29 @@ public class Service {
      * @return 当前提交对象
      */
     public static Commit getCurrentCommit(File currentBranch) {
-        String head = readContentsAsString(currentBranch);
-        File currentCommit = join(COMMITS_DIR, head.substring(0, 2), head.substring(2));
-        return readObject(currentCommit, Commit.class);
+        return readCommit(OBJECT_STORE, Refs.read(currentBranch));
     }
 
 
     /**
      * 获取指定提交对象
-     * @param commitId 提交id
-     * @return 提交对象
+     * @param commitId 提交id，可以是缩写，缩写对应多个提交时报错退出
+     * @return 提交对象，不存在时为null
      */
     public static Commit getCommitById(String commitId) {
-        if (commitId == null || commitId.length() > UID_LENGTH) {
+        if (commitId == null || commitId.length() > UID_LENGTH || commitId.length() < 2) {
             return null;
-        } else if (commitId.length() < UID_LENGTH && commitId.length() > 1) {
-            // 若给定的id长度小于标准长度，则进行前缀匹配
-            File dir = join(COMMITS_DIR, commitId.substring(0, 2));
-            if (dir.exists()) {
-                String a = commitId.substring(2);
-                List<String> names = plainFilenamesIn(dir);
-                if (names == null) {
-                    return null;
-                } else {
-                    List<String> matchList = names.stream()
-                            .filter(t -> t.startsWith(a)).collect(Collectors.toList());
-                    if (matchList.size() != 1) {
-                        return null;
-                    } else {
-                        commitId = commitId.substring(0, 2) + matchList.get(0);
-                    }
-                }
-
+        } else if (commitId.length() < UID_LENGTH) {
+            // 若给定的id长度小于标准长度，则通过提交id索引进行前缀匹配
+            List<String> matchList = OBJECT_STORE.findByPrefix(ObjectType.COMMIT, commitId);
+            if (matchList.isEmpty()) {
+                return null;
+            } else if (matchList.size() > 1) {
+                exitWithError(String.format("Ambiguous commit id %s: %d commits match.", commitId, matchList.size()));
             }
+            commitId = matchList.get(0);
         }
-        File commit = join(COMMITS_DIR, commitId.substring(0, 2), commitId.substring(2));
-        if (!commit.exists()) {
-            return null;
-        }
-        return readObject(commit, Commit.class);
+        return readCommit(OBJECT_STORE, commitId);
     }
 
 
@@ -300,18 +385,29 @@ public class Service {
         if (target.getId().equals(current.getId())) {
             return current;
         }
+        // 优先在提交图的整数数组上查找，缺失的提交会连同祖先一起补入提交图
+        CommitGraph graph = getCommitGraph();
+        graph.add(OBJECT_STORE, current);
+        graph.add(OBJECT_STORE, target);
+        String base = graph.mergeBase(current.getId(), target.getId());
+        if (base != null) {
+            return getCommitById(base);
+        }
         Set<String> hash = new HashSet<>();
         Queue<Commit> queue = new ArrayDeque<>();
         // bfs 遍历当前分支，将所有节点放入哈希表
         queue.offer(current);
+        hash.add(current.getId());
         while (!queue.isEmpty()) {
             Commit c = queue.poll();
-            hash.add(c.getId());
             for (String parent : c.getParents()) {
-                queue.offer(getCommitById(parent));
+                if (hash.add(parent)) {
+                    queue.offer(getCommitById(parent));
+                }
             }
         }
         // bfs 给定分支找到与当前分支的最近公共节点
+        Set<String> visited = new HashSet<>();
         queue.offer(target);
         while (!queue.isEmpty()) {
             Commit c = queue.poll();
@@ -319,7 +415,9 @@ public class Service {
                 return c;
             }
             for (String parent : c.getParents()) {
-                queue.offer(getCommitById(parent));
+                if (visited.add(parent)) {
+                    queue.offer(getCommitById(parent));
+                }
             }
         }
         return new Commit();
@@ -333,6 +431,11 @@ public class Service {
      * @return 提交集合
      */
     public static List<Commit> getCommitList(Commit current, Commit target) {
+        CommitGraph graph = getCommitGraph();
+        if (graph.contains(current.getId())) {
+            List<String> ids = graph.reachable(current.getId(), target.getId());
+            return ids == null ? null : readCommits(OBJECT_STORE, ids);
+        }
         List<Commit> res = new ArrayList<>();
         Queue<Commit> queue = new ArrayDeque<>();
         // bfs 遍历当前分支的历史
@@ -358,6 +461,21 @@ public class Service {
      * @return 提交集合
      */
     public static List<Commit> getCommitList(Commit current) {
+        return getCommitList(OBJECT_STORE, current);
+    }
+
+
+    /**
+     * 获取给定提交所在分支的历史提交
+     * @param store 提交所在的对象库
+     * @param current 当前提交
+     * @return 提交集合
+     */
+    public static List<Commit> getCommitList(ObjectStore store, Commit current) {
+        CommitGraph graph = store == OBJECT_STORE ? getCommitGraph() : CommitGraph.load(REMOTE_GITLET_DIR);
+        if (graph.contains(current.getId())) {
+            return readCommits(store, graph.reachable(current.getId(), null));
+        }
         List<Commit> res = new ArrayList<>();
         Queue<Commit> queue = new ArrayDeque<>();
         queue.offer(current);
@@ -365,37 +483,34 @@ public class Service {
             Commit c = queue.poll();
             res.add(c);
             for (String parent : c.getParents()) {
-                queue.offer(getCommitById(parent));
+                queue.offer(readCommit(store, parent));
             }
         }
         return res;
     }
 
 
+    /**
+     * 批量读取提交
+     * @param store 对象库
+     * @param ids 提交id集合
+     * @return 提交集合
+     */
+    public static List<Commit> readCommits(ObjectStore store, List<String> ids) {
+        List<Commit> res = new ArrayList<>();
+        for (String id : ids) {
+            res.add(readCommit(store, id));
+        }
+        return res;
+    }
+
+
     /**
      * 获取所有的提交id
      * @return id集合
      */
     public static List<String> getAllCommitId() {
-        List<String> res = new ArrayList<>();
-        // 获取commits/下所有的子目录名
-        List<String> commitDir = plainDirectoryIn(COMMITS_DIR);
-        if (commitDir == null) {
-            return res;
-        }
-        for (String dir : commitDir) {
-            // 获取子目录下的所有文件名
-            List<String> commitFileName = plainFilenamesIn(join(COMMITS_DIR, dir));
-            StringBuilder sb = new StringBuilder(dir);
-            if (commitFileName == null) {
-                continue;
-            }
-            // 将目录名与文件名进行拼接
-            for (String fileName: commitFileName) {
-                res.add(sb.append(fileName).toString());
-            }
-        }
-        return res;
+        return OBJECT_STORE.listIds(ObjectType.COMMIT);
     }
 
 
@@ -404,7 +519,45 @@ public class Service {
      * @return 暂存区对象
      */
     public static Stage getStage() {
-        return readObject(INDEX_FILE, Stage.class);
+        Stage stage = ObjectCodec.decodeStage(readContents(INDEX_FILE));
+        try {
+            stage.setIndexTime(Files.getLastModifiedTime(INDEX_FILE.toPath()).to(TimeUnit.NANOSECONDS));
+        } catch (IOException e) {
+            stage.setIndexTime(0);
+        }
+        return stage;
+    }
+
+
+    /**
+     * 获取状态缓存中可信的blob id
+     * @param file 工作目录中的文件
+     * @param stage 暂存区对象
+     * @return 可信时返回缓存的blob id，否则返回null
+     */
+    public static String getCachedBlobId(File file, Stage stage) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return stage.getCachedBlobId(file.getPath(), attrs);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * 记录刚写入工作目录的文件状态
+     * @param file 工作目录中的文件
+     * @param blobId 文件内容对应的blob id
+     * @param stage 暂存区对象
+     */
+    public static void recordFileStat(File file, String blobId, Stage stage) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            stage.getFileStats().put(file.getPath(), new FileStat(attrs, blobId));
+        } catch (IOException e) {
+            stage.getFileStats().remove(file.getPath());
+        }
     }
 
 
@@ -418,19 +571,64 @@ public class Service {
 
 
     /**
-     * 获取工作目录下所有的文件路径
+     * 将单个文件加入添加暂存区
+     * 文件状态未变化且blob已存在时直接使用缓存的blob id，否则流式计算哈希并同时转存blob（以提交中的版本为增量基准）；
+     * 与当前提交中的版本一致时从添加暂存区移除
+     * @param file 文件
+     * @param stage 暂存区对象
+     * @param commitBlobs 当前提交的文件索引
+     */
+    public static void stageFile(File file, Stage stage, Map<String, String> commitBlobs) {
+        String path = file.getPath();
+        String blobId = getCachedBlobId(file, stage);
+        if (blobId == null || !OBJECT_STORE.contains(ObjectType.BLOB, blobId)) {
+            blobId = saveBlob(file, stage, commitBlobs.get(path));
+        }
+        Map<String, String> addStage = stage.getAddStage();
+        // 若当前版本与提交版本一致，则移除暂存区中的文件索引
+        if (commitBlobs.containsKey(path) && commitBlobs.get(path).equals(blobId)) {
+            addStage.remove(path);
+        } else {
+            addStage.put(path, blobId);
+        }
+        // 删除暂存区包含该文件则移除
+        stage.getRemoveStage().remove(path);
+    }
+
+
+    /**
+     * 获取工作目录下所有未被忽略的文件路径（递归子目录）
      * @return 文件路径集合
      */
     public static List<String> getAllFilesInWorkDir() {
-        List<String> res = new ArrayList<>();
-        List<String> filenames = plainFilenamesIn(CWD);
-        if (filenames == null) {
-            return res;
+        return getWorkTreeScanner().listFiles(CWD);
+    }
+
+
+    /**
+     * 获取工作目录扫描器，并行度取自配置项core.parallelism，默认为处理器核数
+     * @return 扫描器对象
+     */
+    public static WorkTreeScanner getWorkTreeScanner() {
+        if (workTreeScanner == null) {
+            int parallelism = Runtime.getRuntime().availableProcessors();
+            if (CONFIG_FILE.exists()) {
+                parallelism = getConfig().getInt(Config.PARALLELISM, parallelism);
+            }
+            workTreeScanner = new WorkTreeScanner(parallelism);
         }
-        for (String filename : filenames) {
-            res.add(join(CWD, filename).getPath());
+        return workTreeScanner;
+    }
+
+
+    /**
+     * 关闭工作目录扫描器的线程池，常驻进程退出时调用
+     */
+    public static void closeWorkTreeScanner() {
+        if (workTreeScanner != null) {
+            workTreeScanner.close();
+            workTreeScanner = null;
         }
-        return res;
     }
 
 
@@ -452,6 +650,37 @@ public class Service {
     }
 
 
+    /**
+     * 沿第一父提交输出修改了指定文件的提交，先用提交图中的修改路径过滤器排除一定没有修改的提交，
+     * 只有可能修改的提交才读取并比较 blob id（排除过滤器的误判）
+     * @param head 起始提交
+     * @param path 文件的绝对路径
+     */
+    public static void printPathLog(Commit head, String path) {
+        CommitGraph graph = getCommitGraph();
+        String key = ChangedPathFilter.key(CWD, path);
+        List<String> chain = graph.firstParentChain(head.getId());
+        if (chain == null) {
+            chain = new ArrayList<>();
+            for (Commit c = head; c != null; c = c.getParents().isEmpty() ? null
+                    : readCommit(OBJECT_STORE, c.getParents().get(0))) {
+                chain.add(c.getId());
+            }
+        }
+        for (String id : chain) {
+            if (!graph.mayChangePath(id, key)) {
+                continue;
+            }
+            Commit commit = readCommit(OBJECT_STORE, id);
+            String parentBlob = commit.getParents().isEmpty() ? null
+                    : readCommit(OBJECT_STORE, commit.getParents().get(0)).getBlobs().get(path);
+            if (!Objects.equals(commit.getBlobs().get(path), parentBlob)) {
+                printCommitLog(commit);
+            }
+        }
+    }
+
+
     /**
      * 排序并打印集合
      * @param list 集合对象
@@ -465,6 +694,18 @@ public class Service {
     }
 
 
+    /**
+     * 判断是否为合法的本地分支名：含 / 的名字表示远程跟踪分支，. 和 .. 会指向分支目录之外
+     * @param branchName 分支名
+     * @return true：合法，false：不合法
+     */
+    public static boolean isValidBranchName(String branchName) {
+        return !branchName.isEmpty() && branchName.indexOf('/') < 0
+                && branchName.indexOf(File.separatorChar) < 0
+                && !branchName.equals(".") && !branchName.equals("..");
+    }
+
+
     /**
      * 判断是否为远程拉取的分支
      * @param file 分支文件
@@ -486,8 +727,8 @@ public class Service {
             Utils.exitWithError("File does not exist in that commit.");
         }
         String blobId = commitBlobs.get(target.getPath());
-        File blobFile = join(BLOBS_DIR, blobId.substring(0, 2), blobId.substring(2));
-        copyFile(blobFile, target);
+        target.getParentFile().mkdirs();
+        OBJECT_STORE.copyTo(ObjectType.BLOB, blobId, target);
     }
 
 
@@ -497,13 +738,17 @@ public class Service {
      * @param blobId id
      */
     public static void checkoutTargetBlobFromCommit(String targetPath, String blobId) {
-        File blobFile = join(BLOBS_DIR, blobId.substring(0, 2), blobId.substring(2));
-        copyFile(blobFile, join(targetPath));
+        File target = join(targetPath);
+        target.getParentFile().mkdirs();
+        OBJECT_STORE.copyTo(ObjectType.BLOB, blobId, target);
     }
 
 
     /**
      * 从提交中检出所有文件并清空暂存区
+     * 当前提交与目标提交之间不同的文件：目标提交中没有的已跟踪文件被删除，新增或内容变化的文件被写出；
+     * 两者相同的文件只与工作目录比对，工作目录中被修改或删除的才重新写出，状态未变化的文件不读取内容，
+     * 切换分支的文件读写量与变化的文件数成正比
      * @param commit 提交对象
      */
     public static void checkoutCommit(Commit commit) {
@@ -511,53 +756,111 @@ public class Service {
         // 获取当前提交
         Commit currentCommit = getCurrentCommit();
         Map<String, String> curBlobs = currentCommit.getBlobs();
-        List<String> allFilesInWorkDir = getAllFilesInWorkDir();
-        // 出现未跟踪文件将被覆盖，报错信息
-        String s = "There is an untracked file in the way; delete it, or add and commit it first.";
-        for (String path : allFilesInWorkDir) {
-            // 未跟踪的文件
-            if (!curBlobs.containsKey(path) && blobs.containsKey(path)) {
-                exitWithError(s);
-            } else {
-                restrictedDelete(path);
+        Set<String> changed = getChangedPaths(currentCommit, commit);
+        // 出现未跟踪文件将被覆盖，报错信息，检查完毕前不改动任何文件
+        for (String path : changed) {
+            if (!curBlobs.containsKey(path) && join(path).exists()) {
+                exitWithError("There is an untracked file in the way; delete it, or add and commit it first.");
             }
         }
-        // blob文件拷贝至工作目录
+        Stage stage = getStage();
+        // 两次提交中相同的文件按状态缓存与工作目录比对，缺失或内容不同的一并写出
+        Set<File> unchanged = new LinkedHashSet<>();
         for (String path : blobs.keySet()) {
+            if (!changed.contains(path)) {
+                unchanged.add(join(path));
+            }
+        }
+        Map<String, String> workBlobIds = getWorkTreeScanner().hash(unchanged, stage);
+        Set<String> toWrite = new TreeSet<>(changed);
+        for (File file : unchanged) {
+            if (!blobs.get(file.getPath()).equals(workBlobIds.get(file.getPath()))) {
+                toWrite.add(file.getPath());
+            }
+        }
+        for (String path : toWrite) {
             String blobId = blobs.get(path);
-            File blobFile = join(BLOBS_DIR, blobId.substring(0, 2), blobId.substring(2));
-            copyFile(blobFile, join(path));
+            if (blobId == null) {
+                deleteWorkFile(path);
+                stage.getFileStats().remove(path);
+            } else {
+                // blob文件拷贝至工作目录，未变化文件的状态缓存仍然有效
+                File file = join(path);
+                file.getParentFile().mkdirs();
+                OBJECT_STORE.copyTo(ObjectType.BLOB, blobId, file);
+                recordFileStat(file, blobId, stage);
+            }
         }
         // 清空暂存区
-        saveStage(new Stage(new TreeMap<>(), new TreeMap<>()));
+        stage.clear();
+        saveStage(stage);
     }
 
 
     /**
-     * 处理文件冲突
+     * 删除工作目录中的文件，所在目录因此变空时一并删除
+     * @param path 文件的绝对路径，须位于工作目录下
+     */
+    public static void deleteWorkFile(String path) {
+        if (!path.startsWith(CWD.getPath() + File.separator)) {
+            return;
+        }
+        File file = join(path);
+        file.delete();
+        File dir = file.getParentFile();
+        while (!dir.equals(CWD) && dir.delete()) {
+            dir = dir.getParentFile();
+        }
+    }
+
+
+    /**
+     * 读取blob内容
+     * @param blobId blob的id
+     * @param path 文件路径
+     * @return 文件内容
+     */
+    public static String readBlobAsString(String blobId, String path) {
+        return new String(OBJECT_STORE.readBlob(blobId, join(path).getName()), StandardCharsets.UTF_8);
+    }
+
+
+    /**
+     * 处理文件冲突，两侧都存在时先按行三路合并，只有重叠的修改才输出冲突标记
+     * @param baseId 分叉点blob的id
      * @param currentId 当前blob的id
      * @param targetId 指定blob的id
      * @param stage 暂存区
      * @param path 最终文件存储路径
      */
-    public static void dealConflicts(String currentId, String targetId, String path, Stage stage) {
+    public static void dealConflicts(String baseId, String currentId, String targetId, String path, Stage stage) {
         String currentContents = "", targetContents = "";
         if (currentId != null) {
-            File currentBlob = join(BLOBS_DIR, currentId.substring(0, 2), currentId.substring(2));
-            currentContents = readContentsAsString(currentBlob);
+            currentContents = readBlobAsString(currentId, path);
         }
         if (targetId != null) {
-            File targetBlob = join(BLOBS_DIR, targetId.substring(0, 2), targetId.substring(2));
-            targetContents = readContentsAsString(targetBlob);
+            targetContents = readBlobAsString(targetId, path);
+        }
+        String sb;
+        boolean conflict = true;
+        if (currentId != null && targetId != null) {
+            LineMerger.Result merged = LineMerger.merge(baseId == null ? "" : readBlobAsString(baseId, path),
+                    currentContents, targetContents);
+            sb = merged.getContent();
+            conflict = merged.getConflicts() > 0;
+        } else {
+            // 一侧被删除，整个文件冲突
+            sb = "<<<<<<< HEAD\n" + currentContents + "=======\n" + targetContents + ">>>>>>>\n";
         }
-        String sb = "<<<<<<< HEAD\n" + currentContents + "=======\n" + targetContents + ">>>>>>>\n";
         File res = join(path);
         writeContents(res, sb);
         String blobId = sha1(res.getName(), sb);
         // 转存blob
         saveBlob(res, blobId);
         stage.getAddStage().put(path, blobId);
-        message("Encountered a merge conflict.");
+        if (conflict) {
+            message("Encountered a merge conflict.");
+        }
     }
 
 
@@ -571,7 +874,8 @@ public class Service {
     public static void dealCommit(Commit cur, Stage stage, String message, List<String> parents) {
         Map<String, String> addStage = stage.getAddStage();
         Map<String, String> removeStage = stage.getRemoveStage();
-        Map<String, String> currentBlobs = cur.getBlobs();
+        // 当前提交可能来自缓存，在副本上修改
+        Map<String, String> currentBlobs = new TreeMap<>(cur.getBlobs());
         if (addStage.isEmpty() && removeStage.isEmpty()) {
             exitWithError("No changes added to the commit.");
         }
@@ -586,10 +890,13 @@ public class Service {
         // 保存提交
         Commit commit = new Commit(message, new Date(), parents, currentBlobs);
         saveCommit(commit);
+        getCommitGraph().add(OBJECT_STORE, commit);
+        updateMessageIndex(GITLET_DIR, OBJECT_STORE, List.of(commit));
         // 更新当前分支
         updateBranch(commit.getId(), getCurrentBranch());
         // 清空暂存区
-        saveStage(new Stage(new TreeMap<>(), new TreeMap<>()));
+        stage.clear();
+        saveStage(stage);
     }
 
 
@@ -612,53 +919,39 @@ public class Service {
         List<String> conflicts = new ArrayList<>();
         // 出现未跟踪文件将被合并覆盖或删除，报错信息
         String s = "There is an untracked file in the way; delete it, or add and commit it first.";
-        for (String path : splitPointBlobs.keySet()) {
-            boolean currentHas = currentBlobs.containsKey(path);
-            boolean targetHas = targetBlobs.containsKey(path);
+        // 只有给定分支相对分叉点发生变化的文件需要处理，其余文件保持当前分支的版本
+        for (String path : getChangedPaths(sp, target)) {
             String spVal = splitPointBlobs.get(path);
             String curVal = currentBlobs.get(path);
             String tarVal = targetBlobs.get(path);
-            if (currentHas && targetHas) {
-                if (spVal.equals(curVal) && !spVal.equals(tarVal)) {
-                    // 分叉点之后给定分支修改的文件而当前分支未修改，将文件检出并暂存。
-                    toCheckout.add(path);
-                } else if (!spVal.equals(curVal) && !spVal.equals(tarVal)
-                        && !curVal.equals(tarVal)) {
-                    // 两个文件的内容都发生了变化且与对方不同，出现冲突
-                    conflicts.add(path);
+            if (tarVal == null) {
+                if (curVal == null) {
+                    continue;
                 }
-            } else if (currentHas) {
                 // 在分支点存在的任何文件，在当前分支未经修改，且在给定分支中不存在，则应被删除（并变为未跟踪状态）。
-                if (spVal.equals(curVal)) {
+                if (curVal.equals(spVal)) {
                     toDelete.add(path);
                 } else {
                     // 一个文件的内容发生了变化而另一个文件被删除，出现冲突
                     conflicts.add(path);
                 }
-            } else if (targetHas && !spVal.equals(tarVal)) {
-                if (join(path).exists()) {
-                    exitWithError(s);
-                }
-                // 一个文件的内容发生了变化而另一个文件被删除，出现冲突
-                conflicts.add(path);
-            }
-        }
-        for (String path : targetBlobs.keySet()) {
-            boolean currentHas = currentBlobs.containsKey(path);
-            boolean splitPointHas = splitPointBlobs.containsKey(path);
-            String curVal = currentBlobs.get(path);
-            String tarVal = targetBlobs.get(path);
-            if (!splitPointHas && !currentHas) {
+            } else if (curVal == null) {
                 if (join(path).exists()) {
                     exitWithError(s);
                 }
-                // 在分叉点不存在而仅在给定分支中存在的任何文件都应被检出并暂存。
-                toCheckout.add(path);
-            } else if (!splitPointHas) {
-                if (!tarVal.equals(curVal)) {
-                    // 该文件在分叉点时不存在，而在给定分支和当前分支中具有不同的内容，出现冲突
+                if (spVal == null) {
+                    // 在分叉点不存在而仅在给定分支中存在的任何文件都应被检出并暂存。
+                    toCheckout.add(path);
+                } else {
+                    // 一个文件的内容发生了变化而另一个文件被删除，出现冲突
                     conflicts.add(path);
                 }
+            } else if (curVal.equals(spVal)) {
+                // 分叉点之后给定分支修改的文件而当前分支未修改，将文件检出并暂存。
+                toCheckout.add(path);
+            } else if (!curVal.equals(tarVal)) {
+                // 两个文件的内容都发生了变化且与对方不同（或分叉点时不存在），按行合并，修改重叠时出现冲突
+                conflicts.add(path);
             }
         }
         // 所有校验结束，执行文件处理
@@ -667,12 +960,211 @@ public class Service {
             addStage.put(path, targetBlobs.get(path));
         }
         for (String path : toDelete) {
-            restrictedDelete(path);
+            deleteWorkFile(path);
             removeStage.put(path, currentBlobs.get(path));
         }
         for (String path : conflicts) {
-            dealConflicts(currentBlobs.get(path), targetBlobs.get(path), path, stage);
+            dealConflicts(splitPointBlobs.get(path), currentBlobs.get(path), targetBlobs.get(path), path, stage);
+        }
+    }
+
+
+    /**
+     * 获取两个提交之间内容不同的文件，两者都有树对象时按树比较并跳过相同的子树
+     * @param a 提交对象
+     * @param b 提交对象
+     * @return 文件路径集合（有序）
+     */
+    public static Set<String> getChangedPaths(Commit a, Commit b) {
+        if (a.getTree() != null && b.getTree() != null) {
+            return OBJECT_STORE.diffTrees(a.getTree(), b.getTree());
+        }
+        Map<String, String> aBlobs = a.getBlobs();
+        Map<String, String> bBlobs = b.getBlobs();
+        Set<String> res = new TreeSet<>();
+        for (String path : aBlobs.keySet()) {
+            if (!aBlobs.get(path).equals(bBlobs.get(path))) {
+                res.add(path);
+            }
+        }
+        for (String path : bBlobs.keySet()) {
+            if (!aBlobs.containsKey(path)) {
+                res.add(path);
+            }
+        }
+        return res;
+    }
+
+
+    /**
+     * 解析命令中的提交参数
+     * @param name 分支名或（缩写的）提交id
+     * @return 提交对象，不存在时报错退出
+     */
+    public static Commit resolveCommit(String name) {
+        Commit commit = getBranchHeadByName(name);
+        if (commit == null) {
+            commit = getCommitById(name);
+        }
+        if (commit == null) {
+            exitWithError("No commit with that id exists.");
+        }
+        return commit;
+    }
+
+
+    /**
+     * 输出两个提交之间的差异，按树比较，只读取blob id不同的文件
+     * @param out 输出
+     * @param from 原提交
+     * @param to 新提交
+     */
+    public static void printCommitDiff(Writer out, Commit from, Commit to) throws IOException {
+        Map<String, String> fromBlobs = from.getBlobs();
+        Map<String, String> toBlobs = to.getBlobs();
+        for (String path : getChangedPaths(from, to)) {
+            String fromId = fromBlobs.get(path);
+            String toId = toBlobs.get(path);
+            if (isTooLargeToDiff(blobSizeOrZero(fromId), blobSizeOrZero(toId))) {
+                printLargeFileDiff(out, path, fromId != null, toId != null);
+            } else {
+                printFileDiff(out, path, readBlobOrNull(fromId, path), readBlobOrNull(toId, path));
+            }
+        }
+    }
+
+
+    /**
+     * 输出提交与工作目录之间的差异，只比较已跟踪或已暂存的文件，状态未变化的文件直接使用缓存的blob id
+     * @param out 输出
+     * @param from 原提交
+     * @param stage 暂存区对象
+     */
+    public static void printWorkTreeDiff(Writer out, Commit from, Stage stage) throws IOException {
+        Map<String, String> fromBlobs = from.getBlobs();
+        Set<String> paths = new TreeSet<>(fromBlobs.keySet());
+        paths.addAll(getCurrentCommit().getBlobs().keySet());
+        paths.addAll(stage.getAddStage().keySet());
+        List<File> toHash = new ArrayList<>();
+        for (String path : paths) {
+            toHash.add(join(path));
+        }
+        Map<String, String> workBlobIds = getWorkTreeScanner().hash(toHash, stage);
+        for (String path : paths) {
+            String fromId = fromBlobs.get(path);
+            File file = join(path);
+            if (!file.exists()) {
+                if (fromId == null) {
+                    continue;
+                }
+                if (isTooLargeToDiff(blobSizeOrZero(fromId), 0)) {
+                    printLargeFileDiff(out, path, true, false);
+                } else {
+                    printFileDiff(out, path, readBlobOrNull(fromId, path), null);
+                }
+            } else if (!workBlobIds.get(path).equals(fromId)) {
+                if (isTooLargeToDiff(blobSizeOrZero(fromId), file.length())) {
+                    printLargeFileDiff(out, path, fromId != null, true);
+                } else {
+                    printFileDiff(out, path, readBlobOrNull(fromId, path), readContents(file));
+                }
+            }
+        }
+    }
+
+
+    private static byte[] readBlobOrNull(String blobId, String path) {
+        return blobId == null ? null : OBJECT_STORE.readBlob(blobId, join(path).getName());
+    }
+
+
+    private static long blobSizeOrZero(String blobId) {
+        return blobId == null ? 0 : Math.max(0, OBJECT_STORE.blobSize(blobId));
+    }
+
+
+    private static boolean isTooLargeToDiff(long oldSize, long newSize) {
+        return oldSize > DIFF_MAX_SIZE || newSize > DIFF_MAX_SIZE;
+    }
+
+
+    /**
+     * 文件超过 DIFF_MAX_SIZE 时不读取内容，只输出文件头并提示不同
+     * @param out 输出
+     * @param path 文件路径
+     * @param oldExists 原文件是否存在
+     * @param newExists 新文件是否存在
+     */
+    private static void printLargeFileDiff(Writer out, String path, boolean oldExists, boolean newExists)
+            throws IOException {
+        String name = displayPath(path);
+        writeDiffHeader(out, name, oldExists, newExists);
+        out.write("Large files " + (oldExists ? "a/" + name : "/dev/null") + " and "
+                + (newExists ? "b/" + name : "/dev/null") + " differ\n");
+    }
+
+
+    private static void writeDiffHeader(Writer out, String name, boolean oldExists, boolean newExists)
+            throws IOException {
+        out.write("diff --git a/" + name + " b/" + name + "\n");
+        if (!oldExists) {
+            out.write("new file\n");
+        } else if (!newExists) {
+            out.write("deleted file\n");
+        }
+    }
+
+
+    /**
+     * 按统一格式输出一个文件的差异，二进制文件只提示不同
+     * @param out 输出
+     * @param path 文件路径
+     * @param oldContent 原内容，文件新增时为null
+     * @param newContent 新内容，文件删除时为null
+     */
+    public static void printFileDiff(Writer out, String path, byte[] oldContent, byte[] newContent)
+            throws IOException {
+        String name = displayPath(path);
+        String oldName = oldContent == null ? "/dev/null" : "a/" + name;
+        String newName = newContent == null ? "/dev/null" : "b/" + name;
+        writeDiffHeader(out, name, oldContent != null, newContent != null);
+        if (isBinary(oldContent) || isBinary(newContent)) {
+            out.write("Binary files " + oldName + " and " + newName + " differ\n");
+            return;
+        }
+        out.write("--- " + oldName + "\n");
+        out.write("+++ " + newName + "\n");
+        List<String> a = Diff.splitLines(oldContent == null ? "" : new String(oldContent, StandardCharsets.UTF_8));
+        List<String> b = Diff.splitLines(newContent == null ? "" : new String(newContent, StandardCharsets.UTF_8));
+        Diff.writeUnified(out, a, b, Diff.diff(a, b), DIFF_CONTEXT);
+    }
+
+
+    /**
+     * 开头 8000 字节中含有 0 字节的内容视为二进制
+     */
+    private static boolean isBinary(byte[] content) {
+        if (content == null) {
+            return false;
+        }
+        for (int i = 0; i < Math.min(content.length, 8000); i++) {
+            if (content[i] == 0) {
+                return true;
+            }
         }
+        return false;
+    }
+
+
+    /**
+     * 获取用于显示的路径：工作目录下的文件显示相对路径，分隔符统一为 /
+     */
+    public static String displayPath(String path) {
+        Path p = Paths.get(path);
+        if (p.startsWith(CWD.toPath())) {
+            p = CWD.toPath().relativize(p);
+        }
+        return p.toString().replace(File.separatorChar, '/');
     }
 
 
@@ -680,109 +1172,160 @@ public class Service {
      * 进行远程分支的检查
      * @param remoteName 远程仓库名
      */
-    public static void remoteBranchCheck(String remoteName) {
+    public static String remoteBranchCheck(String remoteName) {
         Config config = getConfig();
         Map<String, String> remoteConfig = config.getRemoteConfig();
         if (!remoteConfig.containsKey(remoteName)) {
             exitWithError("A remote with that name does not exist.");
         }
         String remoteDirectory = remoteConfig.get(remoteName);
+        if (RemoteClient.isUrl(remoteDirectory)) {
+            // 传输服务地址在连接时校验
+            return remoteDirectory;
+        }
         File dir = join(remoteDirectory);
         if (!dir.exists()) {
             exitWithError("Remote directory not found.");
         }
         initRemoteDirectory(dir);
+        return remoteDirectory;
     }
 
 
     /**
-     * 文件传输
-     * @param sourceCommitsDir 源地址
-     * @param targetCommitsDir 目标地址
-     * @param id 文件id
+     * 判断远程分支头是否为给定提交的祖先
+     * @param head 远程分支头的id，可以为null
+     * @param current 要推送的提交
+     * @return true：可以快进，false：需要先拉取
      */
-    public static void transferFile(File sourceCommitsDir, File targetCommitsDir, String id) {
-        File prefixDir = join(targetCommitsDir, id.substring(0, 2));
-        File source = join(sourceCommitsDir, id.substring(0, 2), id.substring(2));
-        File target = join(prefixDir, id.substring(2));
-        if (!prefixDir.exists()) {
-            createDirectory(prefixDir);
+    public static boolean isFastForward(String head, Commit current) {
+        if (head == null) {
+            return true;
         }
-        if (!target.exists()) {
-            copyFile(source, target);
+        if (!OBJECT_STORE.contains(ObjectType.COMMIT, head)) {
+            return false;
         }
+        List<Commit> pushCommitList = getCommitList(current, readCommit(OBJECT_STORE, head));
+        return pushCommitList != null && !pushCommitList.isEmpty();
     }
 
 
     /**
-     * 传输提交
-     * @param targetDir 目标地址
-     * @param commit 提交对象
+     * 处理远程推送和拉取过程中的对象传输：先协商出接收方缺少的提交，再按传输计划写入，
+     * 每个提交只传输相对其第一个父提交变化的blob，接收方已有的子树整体跳过。
+     * 配置 transfer.bundle 为 1 时，对象经由一个临时 bundle 文件顺序写入，否则逐个复制（或建立硬链接）。
+     * @param negotiator 协商器
+     * @param want 要传输的提交id
+     * @param branchName 分支名
+     * @param source 源对象库
+     * @param target 目标对象库
+     * @return 传输的提交集合
      */
-    public static void transferCommit(File targetDir, Commit commit) {
-        String id = commit.getId();
-        File prefixDir = join(targetDir, id.substring(0, 2));
-        File target = join(prefixDir, id.substring(2));
-        if (!prefixDir.exists()) {
-            createDirectory(prefixDir);
-        }
-        if (!target.exists()) {
-            createFile(target);
-            writeObject(target, commit);
+    public static List<Commit> dealTransfer(Negotiator negotiator, String want, String branchName,
+                                            ObjectStore source, ObjectStore target) {
+        TransferPlan plan = TransferPlan.build(source, target, negotiator.findMissingCommits(want));
+        Config config = getConfig();
+        if (config.getInt(Config.TRANSFER_BUNDLE, 0) == 1) {
+            File bundle = join(target.getObjectsDir(), "tmp-transfer-" + System.nanoTime() + ".bundle");
+            try {
+                Bundle.write(bundle, branchName, want, plan, config.getInt(Config.BUNDLE_COMPRESSION, 0));
+                Bundle.read(bundle, target);
+            } finally {
+                bundle.delete();
+            }
+        } else {
+            plan.transfer(target);
         }
+        return plan.getCommits();
     }
 
 
     /**
-     * 处理远程推送和拉取过程中的文件传输
-     * @param commits 提交集合
-     * @param cwd 目标工作目录
-     * @param commitsDir 存储提交对象的目标地址
-     * @param sourceBlobsDir 存储blob对象的源地址
-     * @param blobsDir 存储blob对象的目标地址
+     * 获取 bundle 文件，相对路径相对于工作目录
+     * @param path 文件路径
+     * @return 文件对象
      */
-    public static void dealTransfer(List<Commit> commits, File cwd, File commitsDir,
-                                    File sourceBlobsDir, File blobsDir) {
-        for (Commit commit : commits) {
-            updateBlobsPathInCommit(cwd, commit);
-            String id = commit.getId();
-            File commitFile = join(commitsDir, id.substring(0, 2), id.substring(2));
-            if (commitFile.exists()) {
-                continue;
-            } else {
-                transferCommit(commitsDir, commit);
-            }
-            Map<String, String> blobs = commit.getBlobs();
-            for (String path : blobs.keySet()) {
-                transferFile(sourceBlobsDir, blobsDir, blobs.get(path));
-            }
-        }
+    public static File getBundleFile(String path) {
+        File file = new File(path);
+        return file.isAbsolute() ? file : join(CWD, path);
     }
 
 
     /**
      * 处理推送过程
-     * @param commits 提交集合
      * @param currentId 当前分支头部提交的id
      * @param branchName 要推送的分支名
      */
-    public static void dealPush(List<Commit> commits, String currentId, String branchName) {
-        dealTransfer(commits, REMOTE_CWD, REMOTE_COMMITS_DIR, BLOBS_DIR, REMOTE_BLOBS_DIR);
+    public static void dealPush(String currentId, String branchName) {
+        CommitGraph remoteGraph = CommitGraph.load(REMOTE_GITLET_DIR);
+        Negotiator negotiator = new Negotiator(OBJECT_STORE, getCommitGraph(), REMOTE_OBJECT_STORE, remoteGraph);
+        List<Commit> commits = dealTransfer(negotiator, currentId, branchName, OBJECT_STORE, REMOTE_OBJECT_STORE);
+        remoteGraph.add(REMOTE_OBJECT_STORE, readCommit(REMOTE_OBJECT_STORE, currentId));
+        updateMessageIndex(REMOTE_GITLET_DIR, REMOTE_OBJECT_STORE, commits);
         updateBranch(currentId, join(REMOTE_HEADS_DIR, branchName));
     }
 
 
     /**
      * 处理拉取过程
-     * @param commits 提交集合
      * @param currentId 要拉取的远程分支头部提交的id
      * @param branchName 远程分支名
      * @param remoteName 远程仓库名
      */
-    public static void dealFetch(List<Commit> commits, String currentId,
-                                 String branchName, String remoteName) {
-        dealTransfer(commits, CWD, COMMITS_DIR, REMOTE_BLOBS_DIR, BLOBS_DIR);
+    public static void dealFetch(String currentId, String branchName, String remoteName) {
+        Negotiator negotiator = new Negotiator(REMOTE_OBJECT_STORE, CommitGraph.load(REMOTE_GITLET_DIR),
+                OBJECT_STORE, getCommitGraph());
+        List<Commit> commits = dealTransfer(negotiator, currentId, branchName, REMOTE_OBJECT_STORE, OBJECT_STORE);
+        getCommitGraph().add(OBJECT_STORE, readCommit(OBJECT_STORE, currentId));
+        updateMessageIndex(GITLET_DIR, OBJECT_STORE, commits);
         updateBranch(currentId, join(REMOTES_DIR, remoteName, branchName));
     }
 
+
+    /**
+     * 经由传输服务推送，远程分支头在协商时取得，更新时由服务端再次比较
+     * @param url 传输服务地址
+     * @param current 要推送的提交
+     * @param branchName 要推送的分支名
+     */
+    public static void dealRemotePush(String url, Commit current, String branchName) {
+        String error = null;
+        try (RemoteClient client = RemoteClient.open(url, CWD)) {
+            if (!client.push(branchName, current.getId(), OBJECT_STORE, getCommitGraph(),
+                    head -> isFastForward(head, current))) {
+                error = "Please pull down remote changes before pushing.";
+            }
+        } catch (GitletException e) {
+            error = e.getMessage();
+        }
+        if (error != null) {
+            exitWithError(error);
+        }
+    }
+
+
+    /**
+     * 经由传输服务拉取
+     * @param url 传输服务地址
+     * @param branchName 远程分支名
+     * @param remoteName 远程仓库名
+     */
+    public static void dealRemoteFetch(String url, String branchName, String remoteName) {
+        Bundle bundle = null;
+        String error = null;
+        try (RemoteClient client = RemoteClient.open(url, CWD)) {
+            bundle = client.fetch(branchName, OBJECT_STORE, getCommitGraph());
+            if (bundle == null) {
+                error = "That remote does not have that branch.";
+            }
+        } catch (GitletException e) {
+            error = e.getMessage();
+        }
+        if (error != null) {
+            exitWithError(error);
+        }
+        getCommitGraph().add(OBJECT_STORE, readCommit(OBJECT_STORE, bundle.getHead()));
+        updateMessageIndex(GITLET_DIR, OBJECT_STORE, readCommits(OBJECT_STORE, bundle.getCommitIds()));
+        updateBranch(bundle.getHead(), join(REMOTES_DIR, remoteName, branchName));
+    }
 }
@@ -1,7 +1,9 @@
 package gitlet;
 
 import java.io.Serializable;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * @description: 暂存区索引，维护暂存区文件的元数据
@@ -10,6 +12,11 @@ import java.util.Map;
  **/
 public class Stage implements Serializable {
 
+    /**
+     * 与加入状态缓存之前的版本保持一致，旧的index文件仍可读取
+     */
+    private static final long serialVersionUID = -1910914048269726099L;
+
     /**
      * 添加暂存区
      */
@@ -20,9 +27,34 @@ public class Stage implements Serializable {
      */
     private Map<String, String> removeStage;
 
+    /**
+     * 工作目录文件的状态缓存（key：文件路径）
+     */
+    private Map<String, FileStat> fileStats;
+
+    /**
+     * index文件的修改时间（纳秒），用于判断状态缓存是否可信，不持久化
+     */
+    private transient long indexTime;
+
+    /**
+     * 本次运行中状态缓存是否有更新，不持久化
+     */
+    private transient boolean statsChanged;
+
     public Stage(Map<String, String> addStage, Map<String, String> removeStage) {
         this.addStage = addStage;
         this.removeStage = removeStage;
+        this.fileStats = new TreeMap<>();
+    }
+
+
+    /**
+     * 清空添加和删除暂存区，保留状态缓存
+     */
+    public void clear() {
+        addStage.clear();
+        removeStage.clear();
     }
 
     public Map<String, String> getAddStage() {
@@ -40,4 +72,42 @@ public class Stage implements Serializable {
     public void setRemoveStage(Map<String, String> removeStage) {
         this.removeStage = removeStage;
     }
+
+    /**
+     * 获取可信的缓存blob id：文件状态与缓存一致，且文件修改早于index写入（排除racy-clean）
+     * @param path 文件路径
+     * @param attrs 文件当前的元数据
+     * @return 可信时返回缓存的blob id，否则返回null
+     */
+    public String getCachedBlobId(String path, BasicFileAttributes attrs) {
+        FileStat cached = getFileStats().get(path);
+        if (cached != null && cached.matches(attrs) && cached.getMtime() < indexTime) {
+            return cached.getBlobId();
+        }
+        return null;
+    }
+
+    public Map<String, FileStat> getFileStats() {
+        if (fileStats == null) {
+            // 旧版本的index没有状态缓存
+            fileStats = new TreeMap<>();
+        }
+        return fileStats;
+    }
+
+    public long getIndexTime() {
+        return indexTime;
+    }
+
+    public void setIndexTime(long indexTime) {
+        this.indexTime = indexTime;
+    }
+
+    public boolean isStatsChanged() {
+        return statsChanged;
+    }
+
+    public void setStatsChanged(boolean statsChanged) {
+        this.statsChanged = statsChanged;
+    }
 }
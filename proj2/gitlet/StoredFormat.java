@@ -0,0 +1,115 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: blob 和块的存储格式，新写入的blob和块以格式标记开头
+ * <pre>
+ * 标记：0x00 'G' 'T' | 存储方式(1) | 是否压缩(1) | 对象id(20)
+ * 存储方式：'R' 原样，'D' 增量（见 {@link Delta}），'M' 块清单（见 {@link Chunker}）
+ * </pre>
+ * 压缩时标记之后为 {@link Compression} 格式，解压后才是原样内容、增量或块清单。
+ * 标记中含有对象自身的id，文件内容即使以相同的字节开头也不会被当作标记（那样的内容须包含自身的哈希）。
+ * 没有标记的是旧版本写入的对象，由对象库按开头的魔数识别并回退校验。
+ * @author: Yhltmxh
+ * @create: 2025-07-30 10:12
+ **/
+public class StoredFormat {
+
+    public static final char RAW = 'R';
+
+    public static final char DELTA = 'D';
+
+    public static final char MANIFEST = 'M';
+
+    private static final byte[] MAGIC = {0, 'G', 'T'};
+
+    /**
+     * 标记长度
+     */
+    public static final int TAG_LENGTH = MAGIC.length + 2 + UID_LENGTH / 2;
+
+    private final char format;
+
+    private final boolean compressed;
+
+    private final int offset;
+
+    private final long length;
+
+    /**
+     * @param format 存储方式
+     * @param compressed 是否压缩
+     * @param offset 压缩头部或存储内容在对象中的起始位置，有标记时为标记长度，旧对象为0
+     * @param length 解压后存储内容的长度
+     */
+    public StoredFormat(char format, boolean compressed, int offset, long length) {
+        this.format = format;
+        this.compressed = compressed;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public char getFormat() {
+        return format;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+
+    /**
+     * 生成格式标记
+     * @param format 存储方式
+     * @param compressed 是否压缩
+     * @param id 对象id
+     * @return 标记
+     */
+    public static byte[] tag(char format, boolean compressed, String id) {
+        ByteBuffer buf = ByteBuffer.allocate(TAG_LENGTH);
+        buf.put(MAGIC);
+        buf.put((byte) format);
+        buf.put((byte) (compressed ? 1 : 0));
+        buf.put(hexToBytes(id));
+        return buf.array();
+    }
+
+
+    /**
+     * 解析对象开头的格式标记
+     * @param stored 对象存储内容的开头部分，至少含标记和压缩头部（对象足够长时）
+     * @param id 对象id
+     * @param storedSize 对象存储内容的长度
+     * @return 有该对象的标记：存储格式，没有：null
+     */
+    public static StoredFormat parse(byte[] stored, String id, long storedSize) {
+        if (stored.length < TAG_LENGTH || !Arrays.equals(stored, 0, MAGIC.length, MAGIC, 0, MAGIC.length)
+                || !Arrays.equals(stored, MAGIC.length + 2, TAG_LENGTH, hexToBytes(id), 0, UID_LENGTH / 2)) {
+            return null;
+        }
+        char format = (char) stored[MAGIC.length];
+        if (format != RAW && format != DELTA && format != MANIFEST) {
+            return null;
+        }
+        if (stored[MAGIC.length + 1] == 0) {
+            return new StoredFormat(format, false, TAG_LENGTH, storedSize - TAG_LENGTH);
+        }
+        byte[] header = Arrays.copyOfRange(stored, TAG_LENGTH, stored.length);
+        if (!Compression.isCompressed(header)) {
+            throw error("Corrupt object %s.", id);
+        }
+        return new StoredFormat(format, true, TAG_LENGTH, Compression.contentLength(header));
+    }
+}
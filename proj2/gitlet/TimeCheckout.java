@@ -0,0 +1,132 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * @description: 检出性能测试，在同一个复制循环中比较流式复制与零拷贝（transferTo）复制大提交中所有blob的吞吐量，
+ * 以及完整检出大提交、在只有一个文件不同的两个分支间切换的耗时（只改写变化的文件，与提交大小无关）
+ * 用法：java gitlet.TimeCheckout [文件数] [单个文件大小(MB)]
+ * 在临时目录中创建仓库，因此必须在 Service 类加载之前设置 user.dir。
+ * @author: Yhltmxh
+ * @create: 2025-07-14 20:12
+ **/
+public class TimeCheckout {
+
+    private static final int ROUNDS = 5;
+
+    private static void printTimingTable(String mode, int files, long bytes, double[] times) {
+        double best = Double.MAX_VALUE;
+        for (double t : times) {
+            best = Math.min(best, t);
+        }
+        double mb = bytes / (1024.0 * 1024.0);
+        System.out.printf("%12s %12d %12.1f %12.3f %12.1f\n", mode, files, mb, best, mb / best);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+        int sizeMb = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        File dir = Files.createTempDirectory("gitlet-checkout").toFile();
+        System.setProperty("user.dir", dir.getPath());
+        timeCheckout(files, sizeMb * 1024 * 1024);
+    }
+
+    public static void timeCheckout(int files, int size) throws IOException {
+        Repository.doInit();
+        String initId = Service.getCurrentCommit().getId();
+        Random random = new Random(61);
+        byte[] data = new byte[size];
+        for (int i = 0; i < files; i++) {
+            random.nextBytes(data);
+            Utils.writeContents(Utils.join(Service.CWD, "file" + i + ".bin"), (Object) data);
+            Repository.doAdd("file" + i + ".bin");
+        }
+        Repository.doCommit("large commit");
+        Commit large = Service.getCurrentCommit();
+        Commit empty = Service.getCommitById(initId);
+        Service.updateBranch(initId, Utils.join(Service.HEADS_DIR, "empty"));
+        random.nextBytes(data);
+        Utils.writeContents(Utils.join(Service.CWD, "file0.bin"), (Object) data);
+        Repository.doAdd("file0.bin");
+        Repository.doCommit("change one file");
+        Commit other = Service.getCurrentCommit();
+        Service.updateBranch(other.getId(), Utils.join(Service.HEADS_DIR, "other"));
+        Service.checkoutCommit(large);
+        Service.updateBranch(large.getId(), Utils.join(Service.HEADS_DIR, "master"));
+        long bytes = (long) files * size;
+
+        System.out.printf("%12s %12s %12s %12s %12s\n", "mode", "files", "MB", "time (s)", "MB/s");
+        System.out.printf("--------------------------------------------------------------------\n");
+        double[] times = new double[ROUNDS];
+        // 两种方式使用同一个循环、同样的源文件和目标文件，只有复制的方式不同
+        switchTo(empty, "empty");
+        timeCopy(large, false, times);
+        printTimingTable("stream", files, bytes, times);
+        timeCopy(large, true, times);
+        printTimingTable("transferTo", files, bytes, times);
+        // 完整的检出（含比对工作目录、写出文件和更新暂存区）
+        for (int r = 0; r < ROUNDS; r++) {
+            switchTo(empty, "empty");
+            long start = System.nanoTime();
+            switchTo(large, "master");
+            times[r] = (System.nanoTime() - start) / 1e9;
+        }
+        printTimingTable("checkout", files, bytes, times);
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            switchTo(other, "other");
+            times[r] = (System.nanoTime() - start) / 1e9;
+            switchTo(large, "master");
+        }
+        printTimingTable("switch", 1, size, times);
+    }
+
+    /**
+     * 将提交中的每个blob（原样存储，跳过格式标记）复制到工作目录中的对应文件，复制完删除
+     * @param zeroCopy true：Utils.copyFile（transferTo），false：经用户态缓冲区复制
+     */
+    private static void timeCopy(Commit commit, boolean zeroCopy, double[] times) throws IOException {
+        for (int r = 0; r < times.length; r++) {
+            long start = System.nanoTime();
+            for (Map.Entry<String, String> e : commit.getBlobs().entrySet()) {
+                File source = Service.OBJECT_STORE.looseFile(ObjectType.BLOB, e.getValue());
+                File target = Utils.join(e.getKey());
+                if (zeroCopy) {
+                    Utils.copyFile(source, StoredFormat.TAG_LENGTH, target);
+                } else {
+                    streamCopy(source, StoredFormat.TAG_LENGTH, target);
+                }
+            }
+            times[r] = (System.nanoTime() - start) / 1e9;
+            for (String path : commit.getBlobs().keySet()) {
+                Utils.join(path).delete();
+            }
+        }
+    }
+
+    private static void switchTo(Commit commit, String branch) {
+        Service.checkoutCommit(commit);
+        Service.updateHead(branch);
+    }
+
+    /**
+     * 作为对照的传统复制：经 64KB 用户态缓冲区读写
+     */
+    private static void streamCopy(File source, long position, File target) throws IOException {
+        try (InputStream in = Files.newInputStream(source.toPath());
+             OutputStream out = Files.newOutputStream(target.toPath())) {
+            in.skipNBytes(position);
+            byte[] buf = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package gitlet;
+
+import java.io.File;
+import java.util.*;
+
+/**
+ * @description: 编码性能测试，比较 Java 序列化与二进制编码读写提交和暂存区的耗时及体积
+ * 二进制格式的提交只记录根树的id，文件索引的解码开销见树对象一行。
+ * 用法：java gitlet.TimeCodec [每个提交的文件数] [提交数]
+ * @author: Yhltmxh
+ * @create: 2025-07-19 15:40
+ **/
+public class TimeCodec {
+
+    private static final int ROUNDS = 5;
+
+    private static void printTimingTable(String mode, int count, long bytes, double[] times) {
+        double best = Double.MAX_VALUE;
+        for (double t : times) {
+            best = Math.min(best, t);
+        }
+        System.out.printf("%16s %10d %12d %12.3f %12.1f\n", mode, count, bytes, best, count / best);
+    }
+
+    public static void main(String[] args) {
+        int files = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int commits = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Random random = new Random(61);
+        Map<String, String> blobs = new TreeMap<>();
+        Stage stage = new Stage(new TreeMap<>(), new TreeMap<>());
+        for (int i = 0; i < files; i++) {
+            String path = "/home/user/projects/gitlet/src/file" + i + ".txt";
+            String id = Utils.sha1(path, String.valueOf(random.nextLong()));
+            blobs.put(path, id);
+            stage.getFileStats().put(path, new FileStat(random.nextLong() & Long.MAX_VALUE,
+                    random.nextInt(1 << 20), "(dev=803,ino=" + i + ")", id));
+        }
+        Commit commit = new Commit("benchmark commit", new Date(),
+                new ArrayList<>(List.of(Utils.sha1("parent"))), blobs);
+        Tree tree = new Tree();
+        for (Map.Entry<String, String> e : blobs.entrySet()) {
+            tree.getBlobs().put(new File(e.getKey()).getName(), e.getValue());
+        }
+        byte[] treeData = ObjectCodec.encodeTree(tree);
+        commit.setTree(Utils.sha1((Object) treeData));
+
+        System.out.printf("%16s %10s %12s %12s %12s\n", "mode", "decodes", "bytes", "time (s)", "decodes/s");
+        System.out.printf("--------------------------------------------------------------------\n");
+        byte[] java = Utils.serialize(commit);
+        byte[] binary = ObjectCodec.encodeCommit(commit);
+        double[] times = new double[ROUNDS];
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < commits; i++) {
+                Utils.deserialize(java, Commit.class);
+            }
+            times[r] = (System.nanoTime() - start) / 1e9;
+        }
+        printTimingTable("commit java", commits, java.length, times);
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < commits; i++) {
+                ObjectCodec.decodeCommit(binary);
+            }
+            times[r] = (System.nanoTime() - start) / 1e9;
+        }
+        printTimingTable("commit binary", commits, binary.length, times);
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < commits; i++) {
+                ObjectCodec.decodeTree(treeData);
+            }
+            times[r] = (System.nanoTime() - start) / 1e9;
+        }
+        printTimingTable("tree binary", commits, treeData.length, times);
+
+        java = Utils.serialize(stage);
+        binary = ObjectCodec.encodeStage(stage);
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < commits; i++) {
+                Utils.deserialize(java, Stage.class);
+            }
+            times[r] = (System.nanoTime() - start) / 1e9;
+        }
+        printTimingTable("index java", commits, java.length, times);
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < commits; i++) {
+                ObjectCodec.decodeStage(binary);
+            }
+            times[r] = (System.nanoTime() - start) / 1e9;
+        }
+        printTimingTable("index binary", commits, binary.length, times);
+    }
+}
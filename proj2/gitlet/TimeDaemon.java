@@ -0,0 +1,84 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @description: 常驻进程性能测试，比较每条命令的平均延迟
+ * jvm：每条命令启动新的 JVM 执行；jvm + daemon：新的 JVM 只负责转发；socket：在本进程内直接转发，即轻量客户端的延迟下限。
+ * 用法：java gitlet.TimeDaemon [命令数] [文件数]
+ * 在临时目录中创建仓库，因此必须在 Service 类加载之前设置 user.dir。
+ * @author: Yhltmxh
+ * @create: 2025-07-24 15:20
+ **/
+public class TimeDaemon {
+
+    private static final String[][] COMMANDS = {{"status"}, {"log"}, {"branch", "b"}, {"rm-branch", "b"}};
+
+    private static void printTimingTable(String mode, int count, double time) {
+        System.out.printf("%16s %10d %12.3f %12.2f\n", mode, count, time, time * 1000 / count);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 40;
+        int files = args.length > 1 ? Integer.parseInt(args[1]) : 200;
+        File dir = Files.createTempDirectory("gitlet-daemon").toFile();
+        System.setProperty("user.dir", dir.getPath());
+        timeDaemon(dir, count, files);
+    }
+
+    public static void timeDaemon(File dir, int count, int files) throws IOException, InterruptedException {
+        Repository.doInit();
+        for (int i = 0; i < files; i++) {
+            Utils.writeContents(Utils.join(dir, "file" + i + ".txt"), "content " + i);
+            Repository.doAdd("file" + i + ".txt");
+            if (i % 20 == 19) {
+                Repository.doCommit("commit " + i);
+            }
+        }
+
+        System.out.printf("%16s %10s %12s %12s\n", "mode", "commands", "time (s)", "ms/command");
+        System.out.printf("-------------------------------------------------------\n");
+        printTimingTable("jvm", count, runProcesses(dir, count));
+
+        Process daemon = start(dir, "daemon", "run");
+        while (!Daemon.SOCKET_FILE.exists()) {
+            Thread.sleep(10);
+        }
+        try {
+            printTimingTable("jvm + daemon", count, runProcesses(dir, count));
+            PrintStream stdout = System.out;
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            long start = System.nanoTime();
+            for (int i = 0; i < count; i++) {
+                Daemon.forward(COMMANDS[i % COMMANDS.length]);
+            }
+            double time = (System.nanoTime() - start) / 1e9;
+            System.setOut(stdout);
+            printTimingTable("socket", count, time);
+        } finally {
+            Daemon.forward(new String[]{"daemon", "stop"});
+            daemon.waitFor();
+        }
+    }
+
+    private static double runProcesses(File dir, int count) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            start(dir, COMMANDS[i % COMMANDS.length]).waitFor();
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static Process start(File dir, String... args) throws IOException {
+        List<String> cmd = new ArrayList<>(List.of("java", "-cp", System.getProperty("java.class.path"), "gitlet.Main"));
+        cmd.addAll(List.of(args));
+        return new ProcessBuilder(cmd).directory(dir).redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD).start();
+    }
+}
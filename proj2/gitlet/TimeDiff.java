@@ -0,0 +1,69 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * @description: diff 吞吐量测试，在不同修改密度下计算大文件两个版本的差异并按统一格式输出（输出丢弃），
+ * 以两个版本的总行数计算每秒处理的行数
+ * 用法：java gitlet.TimeDiff [行数]
+ * @author: Yhltmxh
+ * @create: 2025-07-28 15:36
+ **/
+public class TimeDiff {
+
+    private static final int ROUNDS = 5;
+
+    /**
+     * 每隔多少行修改一行
+     */
+    private static final int[] GAPS = {1000, 100, 10, 3};
+
+    private static void printTimingTable(int gap, int lines, int hunks, double[] times) {
+        double best = Double.MAX_VALUE;
+        for (double t : times) {
+            best = Math.min(best, t);
+        }
+        System.out.printf("%10d %10d %10d %12.3f %14.0f\n", gap, lines, hunks, best, 2 * lines / best);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 500000;
+        Random random = new Random(21);
+        List<String> a = new ArrayList<>(lines);
+        for (int i = 0; i < lines; i++) {
+            a.add("line " + i + " " + Long.toHexString(random.nextLong()) + "\n");
+        }
+        Writer sink = Writer.nullWriter();
+
+        System.out.printf("%10s %10s %10s %12s %14s\n", "gap", "lines", "hunks", "time (s)", "lines/s");
+        System.out.printf("----------------------------------------------------------------\n");
+        for (int gap : GAPS) {
+            // 修改、删除、插入轮流出现
+            List<String> b = new ArrayList<>(lines);
+            for (int i = 0; i < lines; i++) {
+                if (i % gap != gap / 2) {
+                    b.add(a.get(i));
+                } else if (i / gap % 3 == 0) {
+                    b.add("changed " + i + "\n");
+                } else if (i / gap % 3 == 2) {
+                    b.add(a.get(i));
+                    b.add("inserted " + i + "\n");
+                }
+            }
+            double[] times = new double[ROUNDS];
+            int hunks = 0;
+            for (int r = 0; r < ROUNDS; r++) {
+                long start = System.nanoTime();
+                List<Diff.Hunk> res = Diff.diff(a, b);
+                Diff.writeUnified(sink, a, b, res, Service.DIFF_CONTEXT);
+                times[r] = (System.nanoTime() - start) / 1e9;
+                hunks = res.size();
+            }
+            printTimingTable(gap, lines, hunks, times);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * @description: 工作目录遍历性能测试，在临时目录中生成少量源文件和一个很大的 node_modules 目录，
+ * 比较没有忽略规则（遍历全部文件）与 .gitletignore 忽略 node_modules/（进入目录前剪枝）时列出文件的耗时
+ * 用法：java gitlet.TimeIgnore [被忽略的文件数] [源文件数]
+ * @author: Yhltmxh
+ * @create: 2025-07-29 17:40
+ **/
+public class TimeIgnore {
+
+    private static final int ROUNDS = 5;
+
+    /**
+     * 每个目录中的文件数
+     */
+    private static final int FILES_PER_DIR = 100;
+
+    private static void printTimingTable(String mode, int listed, double[] times) {
+        double best = Double.MAX_VALUE;
+        for (double t : times) {
+            best = Math.min(best, t);
+        }
+        System.out.printf("%12s %12d %12.3f\n", mode, listed, best);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int ignored = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int sources = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        File dir = Files.createTempDirectory("gitlet-ignore").toFile();
+        createFiles(Utils.join(dir, "src"), sources);
+        createFiles(Utils.join(dir, "node_modules"), ignored);
+        WorkTreeScanner scanner = new WorkTreeScanner(1);
+        File ignoreFile = Utils.join(dir, IgnoreMatcher.IGNORE_FILE);
+
+        System.out.printf("%12s %12s %12s\n", "mode", "listed", "time (s)");
+        System.out.printf("--------------------------------------\n");
+        double[] times = new double[ROUNDS];
+        int listed = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            listed = scanner.listFiles(dir).size();
+            times[r] = (System.nanoTime() - start) / 1e9;
+        }
+        printTimingTable("no ignore", listed, times);
+        Utils.writeContents(ignoreFile, "# dependencies\nnode_modules/\n*.tmp\n");
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            listed = scanner.listFiles(dir).size();
+            times[r] = (System.nanoTime() - start) / 1e9;
+        }
+        printTimingTable("pruned", listed, times);
+    }
+
+    /**
+     * 在 root 下按每个目录 FILES_PER_DIR 个文件生成 count 个小文件
+     */
+    private static void createFiles(File root, int count) {
+        for (int i = 0; i < count; i++) {
+            File sub = Utils.join(root, "d" + i / FILES_PER_DIR);
+            if (i % FILES_PER_DIR == 0) {
+                sub.mkdirs();
+            }
+            Utils.writeContents(Utils.join(sub, "f" + i + ".js"), String.valueOf(i));
+        }
+    }
+}
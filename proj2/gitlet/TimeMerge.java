@@ -0,0 +1,69 @@
+package gitlet;
+
+import java.util.Random;
+
+/**
+ * @description: 行级三路合并性能测试，在大文件上两侧各修改大量互不重叠的位置（clean），
+ * 以及其中一部分位置两侧修改不同（conflict），输出合并耗时、吞吐量与冲突区域数
+ * 用法：java gitlet.TimeMerge [行数] [每侧修改间隔(行)]
+ * @author: Yhltmxh
+ * @create: 2025-07-28 11:02
+ **/
+public class TimeMerge {
+
+    private static final int ROUNDS = 5;
+
+    private static void printTimingTable(String mode, int lines, int hunks, int conflicts, double[] times) {
+        double best = Double.MAX_VALUE;
+        for (double t : times) {
+            best = Math.min(best, t);
+        }
+        System.out.printf("%10s %10d %10d %10d %12.3f %14.0f\n", mode, lines, hunks, conflicts, best, lines / best);
+    }
+
+    public static void main(String[] args) {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        int gap = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        Random random = new Random(20);
+        String[] base = new String[lines];
+        for (int i = 0; i < lines; i++) {
+            base[i] = "line " + i + " " + Long.toHexString(random.nextLong()) + "\n";
+        }
+        // 当前分支修改每组的第一行，目标分支修改每组的中间行，两侧互不重叠
+        String[] ours = base.clone();
+        String[] theirs = base.clone();
+        String[] overlap = base.clone();
+        int hunks = 0;
+        for (int i = 0; i + gap / 2 < lines; i += gap) {
+            ours[i] = "ours " + i + "\n";
+            theirs[i + gap / 2] = "theirs " + i + "\n";
+            overlap[i + gap / 2] = "theirs " + i + "\n";
+            // 每 10 组有一组两侧修改同一行
+            if ((i / gap) % 10 == 0) {
+                overlap[i] = "other " + i + "\n";
+            }
+            hunks += 2;
+        }
+        String o = String.join("", base);
+        String a = String.join("", ours);
+        String b = String.join("", theirs);
+        String c = String.join("", overlap);
+
+        System.out.printf("%10s %10s %10s %10s %12s %14s\n", "mode", "lines", "hunks", "conflicts", "time (s)", "lines/s");
+        System.out.printf("---------------------------------------------------------------------------\n");
+        double[] times = new double[ROUNDS];
+        int conflicts = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            conflicts = LineMerger.merge(o, a, b).getConflicts();
+            times[r] = (System.nanoTime() - start) / 1e9;
+        }
+        printTimingTable("clean", lines, hunks, conflicts, times);
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            conflicts = LineMerger.merge(o, a, c).getConflicts();
+            times[r] = (System.nanoTime() - start) / 1e9;
+        }
+        printTimingTable("conflict", lines, hunks, conflicts, times);
+    }
+}
@@ -0,0 +1,187 @@
+package gitlet;
+
+import java.util.*;
+
+/**
+ * @description: 传输计划，按写入顺序列出要传输的对象
+ * 每个提交之前依次是它新增的blob、接收方缺少的树（子树在前）和提交本身，
+ * 接收方按顺序写入时，已写入的提交总是完整的。计划可以直接在两个对象库之间执行，也可以写成 bundle 文件。
+ * @author: Yhltmxh
+ * @create: 2025-07-22 09:50
+ **/
+public class TransferPlan {
+
+    /**
+     * 计划中的一个对象，data 不为null时使用其内容，否则从源对象库读取
+     */
+    public static class Entry {
+
+        private final ObjectType type;
+
+        private final String id;
+
+        private final byte[] data;
+
+        Entry(ObjectType type, String id, byte[] data) {
+            this.type = type;
+            this.id = id;
+            this.data = data;
+        }
+
+        public ObjectType getType() {
+            return type;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+    }
+
+    private final ObjectStore source;
+
+    /**
+     * 接收方对象库，为null时（如生成 bundle）视为空库
+     */
+    private final ObjectStore target;
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    private final List<Commit> commits = new ArrayList<>();
+
+    /**
+     * 已加入计划的树id
+     */
+    private final Set<String> plannedTrees = new HashSet<>();
+
+    /**
+     * 已加入计划的blob id
+     */
+    private final Set<String> plannedBlobs = new HashSet<>();
+
+    private TransferPlan(ObjectStore source, ObjectStore target) {
+        this.source = source;
+        this.target = target;
+    }
+
+
+    /**
+     * 生成传输计划，每个提交只包含相对其第一个父提交变化的blob
+     * @param source 源对象库
+     * @param target 接收方对象库，可以为null
+     * @param missing 接收方缺少的提交id，父提交在前
+     * @return 传输计划
+     */
+    public static TransferPlan build(ObjectStore source, ObjectStore target, List<String> missing) {
+        TransferPlan plan = new TransferPlan(source, target);
+        for (String id : missing) {
+            plan.addCommit(Service.readCommit(source, id));
+        }
+        return plan;
+    }
+
+
+    private void addCommit(Commit commit) {
+        commits.add(commit);
+        if (commit.getTree() == null) {
+            // 旧格式的提交没有树，传输全部blob，并按文件索引在内存中生成树和新格式的提交，不写入源对象库
+            for (String blobId : new TreeSet<>(commit.getBlobs().values())) {
+                addBlob(blobId);
+            }
+            Commit copy = Service.updateBlobsPathInCommit(source.getWorkDir(), commit);
+            Map<String, byte[]> trees = new LinkedHashMap<>();
+            copy.setTree(ObjectStore.encodeTree(source.getWorkDir(), copy.getBlobs(), trees));
+            for (Map.Entry<String, byte[]> tree : trees.entrySet()) {
+                addEncodedTree(tree.getKey(), tree.getValue());
+            }
+            entries.add(new Entry(ObjectType.COMMIT, commit.getId(), ObjectCodec.encodeCommit(copy)));
+            return;
+        }
+        String base = null;
+        if (!commit.getParents().isEmpty()) {
+            Commit parent = Service.readCommit(source, commit.getParents().get(0));
+            // 父提交在接收方已存在或在计划中排在前面，与其相同的blob无需传输
+            base = parent.getTree();
+        }
+        Set<String> blobs = new TreeSet<>();
+        source.collectNewBlobs(base, commit.getTree(), blobs);
+        for (String blobId : blobs) {
+            addBlob(blobId);
+        }
+        addTree(commit.getTree(), base);
+        entries.add(new Entry(ObjectType.COMMIT, commit.getId(), null));
+    }
+
+
+    private void addBlob(String blobId) {
+        if (plannedBlobs.add(blobId)) {
+            entries.add(new Entry(ObjectType.BLOB, blobId, null));
+        }
+    }
+
+
+    /**
+     * 加入接收方缺少的树，子树在前，接收方已有的子树整体跳过。
+     * 接收方对象库未知时（bundle、网络传输），父提交已在接收方或排在计划前面，与父提交对应目录相同的子树同样跳过
+     * @param treeId 树id
+     * @param baseId 父提交中对应目录的树id，可以为null
+     */
+    private void addTree(String treeId, String baseId) {
+        if (plannedTrees.contains(treeId)) {
+            return;
+        }
+        if (target != null ? target.contains(ObjectType.TREE, treeId) : treeId.equals(baseId)) {
+            return;
+        }
+        Map<String, String> baseTrees = target != null || baseId == null
+                ? Map.of() : source.readTree(baseId).getTrees();
+        for (Map.Entry<String, String> child : source.readTree(treeId).getTrees().entrySet()) {
+            addTree(child.getValue(), baseTrees.get(child.getKey()));
+        }
+        plannedTrees.add(treeId);
+        entries.add(new Entry(ObjectType.TREE, treeId, null));
+    }
+
+
+    /**
+     * 加入计划中生成的树，接收方已有时跳过
+     */
+    private void addEncodedTree(String treeId, byte[] data) {
+        if (plannedTrees.contains(treeId) || target != null && target.contains(ObjectType.TREE, treeId)) {
+            return;
+        }
+        plannedTrees.add(treeId);
+        entries.add(new Entry(ObjectType.TREE, treeId, data));
+    }
+
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public List<Commit> getCommits() {
+        return commits;
+    }
+
+    public ObjectStore getSource() {
+        return source;
+    }
+
+
+    /**
+     * 直接在两个对象库之间执行计划，松散对象在同一文件系统内建立硬链接
+     * @param dest 接收方对象库
+     */
+    public void transfer(ObjectStore dest) {
+        for (Entry e : entries) {
+            if (e.data != null) {
+                dest.write(e.type, e.id, e.data);
+            } else {
+                source.transfer(e.type, e.id, dest);
+            }
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package gitlet;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * @description: 树对象，记录一个目录下的文件和子目录
+ * 树的id是其编码内容的哈希，内容相同的目录在不同提交之间共享同一个树对象，
+ * 比较两个提交时id相同的子树可以直接跳过。
+ * @author: Yhltmxh
+ * @create: 2025-07-20 14:06
+ **/
+public class Tree {
+
+    /**
+     * 文件名 -> blob id
+     */
+    private final Map<String, String> blobs;
+
+    /**
+     * 子目录名 -> 树id
+     */
+    private final Map<String, String> trees;
+
+    public Tree() {
+        this(new TreeMap<>(), new TreeMap<>());
+    }
+
+    public Tree(Map<String, String> blobs, Map<String, String> trees) {
+        this.blobs = blobs;
+        this.trees = trees;
+    }
+
+    public Map<String, String> getBlobs() {
+        return blobs;
+    }
+
+    public Map<String, String> getTrees() {
+        return trees;
+    }
+
+    public int size() {
+        return blobs.size() + trees.size();
+    }
+}
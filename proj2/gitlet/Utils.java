@@ -1,6 +1,7 @@
 package gitlet;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
@@ -9,10 +10,13 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
@@ -62,6 +66,111 @@ class Utils {
         return sha1(vals.toArray(new Object[vals.size()]));
     }
 
+    /** 流式计算哈希时使用的缓冲区大小 */
+    static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /** 大于该大小的文件按块进行内存映射后计算哈希 */
+    static final long MAP_THRESHOLD = 1024 * 1024;
+
+    /** 单次内存映射的最大字节数 */
+    static final long MAP_CHUNK_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * 流式计算 sha1(name, 文件内容)，结果与 sha1(name, readContents(file)) 相同，
+     * 但内容只经过固定大小的缓冲区或按块映射的内存，不会整个读入堆内存。
+     * 若 copyTo 不为空，计算哈希的同时把内容写入该文件，整个过程只读取源文件一次。
+     * @param name 参与哈希的文件名
+     * @param file 源文件
+     * @param copyTo 同时写入的目标文件，可为null
+     * @return SHA-1 哈希值
+     */
+    static String sha1(String name, File file, File copyTo) {
+        return sha1(name, file, copyTo, 0);
+    }
+
+    /**
+     * 流式计算 sha1(name, 文件内容)，同时把内容写入 copyTo 中从 copyOffset 开始的位置，之前的部分留给调用方填写
+     * @param name 参与哈希的文件名
+     * @param file 源文件
+     * @param copyTo 同时写入的目标文件，可为null
+     * @param copyOffset 内容在目标文件中的起始位置
+     * @return SHA-1 哈希值
+     */
+    static String sha1(String name, File file, File copyTo, long copyOffset) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(name.getBytes(StandardCharsets.UTF_8));
+            try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                 FileChannel out = copyTo == null ? null : FileChannel.open(copyTo.toPath(),
+                         StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                if (out != null) {
+                    out.position(copyOffset);
+                }
+                long size = in.size();
+                if (size > MAP_THRESHOLD) {
+                    for (long pos = 0; pos < size; pos += MAP_CHUNK_SIZE) {
+                        long len = Math.min(MAP_CHUNK_SIZE, size - pos);
+                        MappedByteBuffer chunk = in.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                        md.update(chunk.duplicate());
+                        writeFully(out, chunk);
+                    }
+                } else {
+                    ByteBuffer buf = ByteBuffer.allocate(STREAM_BUFFER_SIZE);
+                    while (in.read(buf) >= 0) {
+                        buf.flip();
+                        md.update(buf.array(), 0, buf.limit());
+                        writeFully(out, buf);
+                        buf.clear();
+                    }
+                }
+            }
+            return bytesToHex(md.digest());
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        } catch (IOException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
+    /** 将缓冲区剩余内容全部写入通道，通道为null时不写入 */
+    private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException {
+        if (out == null) {
+            return;
+        }
+        while (buf.hasRemaining()) {
+            out.write(buf);
+        }
+    }
+
+    /**
+     * 十六进制字符串转字节数组
+     * @param hex 十六进制字符串（长度为偶数）
+     * @return 字节数组
+     */
+    static byte[] hexToBytes(String hex) {
+        byte[] res = new byte[hex.length() / 2];
+        for (int i = 0; i < res.length; i++) {
+            res[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return res;
+    }
+
+    /**
+     * 字节数组转十六进制字符串
+     * @param bytes 字节数组
+     * @return 十六进制字符串
+     */
+    static String bytesToHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] res = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            res[i * 2] = digits[(bytes[i] >> 4) & 0xf];
+            res[i * 2 + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(res);
+    }
+
     /* FILE DELETION */
 
     /** Deletes FILE if it exists and is not a directory.  Returns true
@@ -151,6 +260,22 @@ class Utils {
         }
     }
 
+    /** Return an object of type T deserialized from BYTES, casting it to
+     *  EXPECTEDCLASS.  Throws IllegalArgumentException in case of problems. */
+    static <T extends Serializable> T deserialize(byte[] bytes,
+                                                  Class<T> expectedClass) {
+        try {
+            ObjectInputStream in =
+                new ObjectInputStream(new ByteArrayInputStream(bytes));
+            T result = expectedClass.cast(in.readObject());
+            in.close();
+            return result;
+        } catch (IOException | ClassCastException
+                 | ClassNotFoundException excp) {
+            throw new IllegalArgumentException(excp.getMessage());
+        }
+    }
+
     /** Write OBJ to FILE. */
     static void writeObject(File file, Serializable obj) {
         writeContents(file, serialize(obj));
@@ -268,9 +393,17 @@ class Utils {
      * @param message 错误信息
      */
     static void exitWithError(String message) {
+        if (Daemon.isServing() && !Daemon.isRequestThread()) {
+            // 常驻进程中的其他线程（如线程池）不能结束进程，错误交给发起任务的线程处理
+            throw new GitletException(message);
+        }
         if (message != null && !message.equals("")) {
             System.out.println(message);
         }
+        if (Daemon.isRequestThread()) {
+            // 常驻进程只结束当前命令
+            throw new Daemon.Exit();
+        }
         System.exit(0);
     }
 
@@ -279,7 +412,8 @@ class Utils {
      * @param file 目录
      */
     static void createDirectory(File file) {
-        if (!file.exists() && !file.mkdir()) {
+        // 并发写入对象时目录可能刚被其他线程创建
+        if (!file.exists() && !file.mkdir() && !file.isDirectory()) {
             exitWithError(String.format("Failed to create '%s' directory.", file.getName()));
         }
     }
@@ -300,18 +434,62 @@ class Utils {
 
 
     /**
-     * 复制文件
+     * 复制文件，通过 FileChannel.transferTo 由内核直接在两个文件间搬运数据，不经过用户态缓冲区
      * @param source 源文件
-     * @param target 目标文件
+     * @param target 目标文件，已存在则覆盖
      */
     static void copyFile(File source, File target) {
-        try {
-            Files.copy(source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        copyFile(source, 0, target);
+    }
+
+    /**
+     * 复制文件中从 position 开始的内容
+     * @param source 源文件
+     * @param position 起始位置
+     * @param target 目标文件，已存在则覆盖
+     */
+    static void copyFile(File source, long position, File target) {
+        try (FileChannel in = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target.toPath(), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            transferFully(in, position, in.size() - position, out);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 将源通道中从 position 开始的 count 个字节全部写入目标通道
+     * @param in 源通道
+     * @param position 起始位置
+     * @param count 字节数
+     * @param out 目标通道
+     */
+    static void transferFully(FileChannel in, long position, long count, FileChannel out)
+            throws IOException {
+        while (count > 0) {
+            long n = in.transferTo(position, count, out);
+            if (n <= 0) {
+                throw new IOException("unexpected end of file");
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
+    /**
+     * 为不可变文件（如对象库中的对象）创建硬链接，文件系统不支持或跨设备时回退为复制
+     * @param source 源文件
+     * @param target 目标文件，必须不存在
+     */
+    static void linkOrCopyFile(File source, File target) {
+        try {
+            Files.createLink(target.toPath(), source.toPath());
+        } catch (IOException | UnsupportedOperationException e) {
+            copyFile(source, target);
+        }
+    }
+
     /**
      * 删除文件
      * @param file 文件对象
@@ -0,0 +1,249 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.Semaphore;
+
+import static gitlet.Utils.*;
+
+/**
+ * @description: 工作目录扫描器，使用 fork-join 并行计算文件哈希
+ * 先在调用线程上用状态缓存筛掉未变化的文件，只有需要读取内容的文件才交给线程池；
+ * 每个文件都经固定大小的缓冲区流式计算哈希，大文件也不会撑爆堆内存；同时读取的文件总大小由字节信号量限制，
+ * 多个大文件不会同时争抢磁盘。线程池在扫描器内复用，由 {@link #close()} 关闭。
+ * 列出文件时递归遍历子目录，按 .gitletignore 在进入目录前剪枝。
+ * @author: Yhltmxh
+ * @create: 2025-07-09 16:35
+ **/
+public class WorkTreeScanner {
+
+    /**
+     * 单个任务直接处理的文件数上限，超过则继续拆分
+     */
+    private static final int SPLIT_THRESHOLD = 8;
+
+    private static final String GITLET_DIR_NAME = ".gitlet";
+
+    /**
+     * 信号量的一个许可对应的字节数
+     */
+    private static final int PERMIT_BYTES = STREAM_BUFFER_SIZE;
+
+    /**
+     * 同时读取的文件总大小上限（以许可计），单个文件超过上限时独占全部许可
+     */
+    private static final int MAX_IN_FLIGHT_PERMITS = 64 * 1024 * 1024 / PERMIT_BYTES;
+
+    private final int parallelism;
+
+    private final Semaphore inFlight = new Semaphore(MAX_IN_FLIGHT_PERMITS);
+
+    private ForkJoinPool pool;
+
+    public WorkTreeScanner(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+
+    /**
+     * 关闭线程池，之后再计算哈希时重新创建
+     */
+    public synchronized void close() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null) {
+            pool = new ForkJoinPool(parallelism);
+        }
+        return pool;
+    }
+
+
+    /**
+     * 递归列出工作目录下的所有文件路径（有序），跳过 .gitlet 和被忽略的文件，被忽略的目录不再进入
+     * @param dir 工作目录
+     * @return 文件路径集合
+     */
+    public List<String> listFiles(File dir) {
+        return listFiles(dir, dir);
+    }
+
+
+    /**
+     * 递归列出工作目录中某个目录下的所有文件路径（有序），忽略规则取自工作目录
+     * @param workDir 工作目录
+     * @param dir 工作目录或其下的目录
+     * @return 文件路径集合，目录本身被忽略时为空
+     */
+    public List<String> listFiles(File workDir, File dir) {
+        List<String> res = new ArrayList<>();
+        Path root = workDir.toPath().normalize();
+        Path start = dir.toPath().normalize();
+        IgnoreMatcher.State state = IgnoreMatcher.load(workDir).rootState();
+        if (!start.equals(root)) {
+            for (Path name : root.relativize(start)) {
+                if (state.isIgnored(name.toString(), true)) {
+                    return res;
+                }
+                state = state.enter(name.toString());
+            }
+        }
+        collectFiles(start.toFile(), state, res);
+        Collections.sort(res);
+        return res;
+    }
+
+
+    private static void collectFiles(File dir, IgnoreMatcher.State state, List<String> res) {
+        String[] names = dir.list();
+        if (names == null) {
+            return;
+        }
+        for (String name : names) {
+            if (name.equals(GITLET_DIR_NAME)) {
+                continue;
+            }
+            File file = new File(dir, name);
+            // 先判断是否忽略再进入目录，被忽略的目录下的文件一个也不读取；不跟随目录的符号链接
+            if (Files.isDirectory(file.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+                if (!state.isIgnored(name, true)) {
+                    collectFiles(file, state.enter(name), res);
+                }
+            } else if (file.isFile() && !state.isIgnored(name, false)) {
+                res.add(file.getPath());
+            }
+        }
+    }
+
+
+    /**
+     * 计算一组文件的blob id，不存在的文件不出现在结果中
+     * @param files 文件集合
+     * @param stage 暂存区对象，提供并接收状态缓存
+     * @return 文件路径 -> blob id
+     */
+    public Map<String, String> hash(Collection<File> files, Stage stage) {
+        Map<String, String> res = new TreeMap<>();
+        List<File> toHash = new ArrayList<>();
+        List<BasicFileAttributes> toHashAttrs = new ArrayList<>();
+        Map<String, FileStat> fileStats = stage.getFileStats();
+        for (File file : files) {
+            BasicFileAttributes attrs = readAttributes(file);
+            if (attrs == null || !attrs.isRegularFile()) {
+                continue;
+            }
+            String cached = stage.getCachedBlobId(file.getPath(), attrs);
+            if (cached != null) {
+                res.put(file.getPath(), cached);
+            } else {
+                toHash.add(file);
+                toHashAttrs.add(attrs);
+            }
+        }
+        if (toHash.isEmpty()) {
+            return res;
+        }
+        String[] ids;
+        if (parallelism == 1 || toHash.size() == 1) {
+            ids = new HashTask(toHash, toHashAttrs, 0, toHash.size(), false).compute();
+        } else {
+            ids = getPool().invoke(new HashTask(toHash, toHashAttrs, 0, toHash.size(), true));
+        }
+        // 状态缓存不是线程安全的，统一在调用线程上写回
+        for (int i = 0; i < toHash.size(); i++) {
+            File file = toHash.get(i);
+            res.put(file.getPath(), ids[i]);
+            fileStats.put(file.getPath(), new FileStat(toHashAttrs.get(i), ids[i]));
+        }
+        stage.setStatsChanged(true);
+        return res;
+    }
+
+
+    private static BasicFileAttributes readAttributes(File file) {
+        try {
+            return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+
+    /**
+     * 流式计算单个文件的blob id
+     * @param file 文件
+     * @param size 文件大小，并行时按此申请信号量许可
+     * @param bounded 是否受在途字节数限制
+     */
+    private String hashFile(File file, long size, boolean bounded) {
+        if (!bounded) {
+            return sha1(file.getName(), file, null);
+        }
+        int permits = (int) Math.min(MAX_IN_FLIGHT_PERMITS, Math.max(1, (size + PERMIT_BYTES - 1) / PERMIT_BYTES));
+        inFlight.acquireUninterruptibly(permits);
+        try {
+            return sha1(file.getName(), file, null);
+        } finally {
+            inFlight.release(permits);
+        }
+    }
+
+
+    /**
+     * 二分拆分的哈希任务，结果按输入顺序返回
+     */
+    private class HashTask extends RecursiveTask<String[]> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<File> files;
+
+        private final List<BasicFileAttributes> attrs;
+
+        private final int from;
+
+        private final int to;
+
+        private final boolean bounded;
+
+        HashTask(List<File> files, List<BasicFileAttributes> attrs, int from, int to, boolean bounded) {
+            this.files = files;
+            this.attrs = attrs;
+            this.from = from;
+            this.to = to;
+            this.bounded = bounded;
+        }
+
+        @Override
+        protected String[] compute() {
+            String[] res = new String[to - from];
+            if (to - from <= SPLIT_THRESHOLD) {
+                for (int i = from; i < to; i++) {
+                    res[i - from] = hashFile(files.get(i), attrs.get(i).size(), bounded);
+                }
+                return res;
+            }
+            int mid = (from + to) >>> 1;
+            HashTask left = new HashTask(files, attrs, from, mid, bounded);
+            HashTask right = new HashTask(files, attrs, mid, to, bounded);
+            left.fork();
+            String[] r = right.compute();
+            String[] l = left.join();
+            System.arraycopy(l, 0, res, 0, l.length);
+            System.arraycopy(r, 0, res, l.length, r.length);
+            return res;
+        }
+    }
+}